@@ -0,0 +1,214 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.norconex.importer.doc.ImporterDocument;
+import com.norconex.importer.response.ImporterResponse;
+
+/**
+ * Documents used by benchmarks.  Synthetic documents are generated
+ * from a fixed random seed so every run uses the exact same content.
+ * Real documents are the sample files shipped with the importer site
+ * (their location can be changed with the
+ * "importer.benchmark.corpus" system property).
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public final class BenchmarkCorpus {
+
+    public static final String CORPUS_DIR_PROPERTY =
+            "importer.benchmark.corpus";
+    public static final String DEFAULT_CORPUS_DIR =
+            "../norconex-importer/src/site/resources/examples/books";
+
+    private static final String SAMPLE_NAME =
+            "alice-in-wonderland-book-chapter-1";
+    private static final long SEED = 20141125L;
+    private static final String[] WORDS = {
+        "the", "rabbit", "hole", "went", "straight", "on", "like", "a",
+        "tunnel", "for", "some", "way", "and", "then", "dipped", "suddenly",
+        "down", "so", "that", "Alice", "had", "not", "moment", "to", "think",
+        "about", "stopping", "herself", "before", "she", "found", "falling",
+        "very", "deep", "well", "curious", "importer", "document", "2014-11-25",
+        "Norconex", "metadata", "content", "123", "4567", "Wonderland"
+    };
+
+    private BenchmarkCorpus() {
+        super();
+    }
+
+    /**
+     * Gets a benchmark document content.  Supported names are
+     * "html", "txt" and "csv" for generated documents, and
+     * "alice.(html|pdf|docx|zip)" for sample files.
+     * @param name document name
+     * @param sizeKB approximate size of generated documents, in KB
+     * @return document content
+     * @throws IOException could not read sample file
+     */
+    public static byte[] getDocument(String name, int sizeKB)
+            throws IOException {
+        switch (name) {
+        case "html":
+            return generateHtml(sizeKB).getBytes(StandardCharsets.UTF_8);
+        case "txt":
+            return generateText(sizeKB).getBytes(StandardCharsets.UTF_8);
+        case "csv":
+            return generateCsv(sizeKB * 1024 / 64)
+                    .getBytes(StandardCharsets.UTF_8);
+        default:
+            if (name.startsWith("alice.")) {
+                return getSampleFile(StringUtils.substringAfter(name, "."));
+            }
+            throw new IllegalArgumentException(
+                    "Unsupported benchmark document: " + name);
+        }
+    }
+
+    /**
+     * Gets a file name matching the document name extension, so content
+     * types are detected as they would be for real documents.
+     * @param name document name
+     * @return a document reference
+     */
+    public static String getReference(String name) {
+        if (name.contains(".")) {
+            return SAMPLE_NAME + "." + StringUtils.substringAfter(name, ".");
+        }
+        return "benchmark-document." + name;
+    }
+
+    public static byte[] getSampleFile(String extension) throws IOException {
+        String dir = System.getProperty(
+                CORPUS_DIR_PROPERTY, DEFAULT_CORPUS_DIR);
+        return FileUtils.readFileToByteArray(
+                new File(dir, SAMPLE_NAME + "." + extension));
+    }
+
+    /**
+     * Generates plain text made of sentences and paragraphs.
+     * @param sizeKB approximate size, in KB
+     * @return text
+     */
+    public static String generateText(int sizeKB) {
+        Random random = new Random(SEED);
+        int maxLength = sizeKB * 1024;
+        StringBuilder b = new StringBuilder(maxLength + 100);
+        int wordsInSentence = 0;
+        int sentencesInParagraph = 0;
+        while (b.length() < maxLength) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (wordsInSentence == 0) {
+                b.append(StringUtils.capitalize(word));
+            } else {
+                b.append(' ').append(word);
+            }
+            wordsInSentence++;
+            if (wordsInSentence > 5 + random.nextInt(15)) {
+                b.append(". ");
+                wordsInSentence = 0;
+                sentencesInParagraph++;
+                if (sentencesInParagraph > 2 + random.nextInt(5)) {
+                    b.append("\n\n");
+                    sentencesInParagraph = 0;
+                }
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * Generates an HTML page with headings, paragraphs and links.
+     * @param sizeKB approximate size, in KB
+     * @return HTML
+     */
+    public static String generateHtml(int sizeKB) {
+        StringBuilder b = new StringBuilder(sizeKB * 1200);
+        b.append("<html><head><title>Benchmark Document</title>");
+        b.append("<meta name=\"author\" content=\"Norconex\">");
+        b.append("<meta name=\"keywords\" content=\"rabbit, hole\">");
+        b.append("</head><body>\n");
+        int i = 0;
+        for (String para : StringUtils.splitByWholeSeparator(
+                generateText(sizeKB), "\n\n")) {
+            if (i % 5 == 0) {
+                b.append("<h2>Section ").append(i / 5 + 1).append("</h2>\n");
+            }
+            b.append("<p>").append(para);
+            b.append(" <a href=\"http://example.com/page").append(i);
+            b.append(".html\">link ").append(i).append("</a></p>\n");
+            i++;
+        }
+        b.append("</body></html>");
+        return b.toString();
+    }
+
+    /**
+     * Generates a CSV file with a header row.
+     * @param rows number of rows, excluding the header
+     * @return CSV
+     */
+    public static String generateCsv(int rows) {
+        Random random = new Random(SEED);
+        StringBuilder b = new StringBuilder(rows * 70);
+        b.append("\"clientId\",\"clientName\",\"clientPhone\",\"notes\"\n");
+        for (int i = 0; i < rows; i++) {
+            b.append('"').append(i).append("\",\"");
+            b.append(StringUtils.capitalize(WORDS[random.nextInt(
+                    WORDS.length)])).append(' ');
+            b.append(StringUtils.capitalize(WORDS[random.nextInt(
+                    WORDS.length)])).append("\",\"");
+            b.append(100 + random.nextInt(900)).append('-');
+            b.append(1000 + random.nextInt(9000)).append("\",\"");
+            b.append(WORDS[random.nextInt(WORDS.length)]).append(", ");
+            b.append(WORDS[random.nextInt(WORDS.length)]).append("\"\n");
+        }
+        return b.toString();
+    }
+
+    /**
+     * Deletes any cached content (memory or files) held by a response
+     * and its nested responses.
+     * @param response importer response
+     * @throws IOException could not dispose content
+     */
+    public static void dispose(ImporterResponse response) throws IOException {
+        if (response == null) {
+            return;
+        }
+        dispose(response.getDocument());
+        for (ImporterResponse nested : response.getNestedResponses()) {
+            dispose(nested);
+        }
+    }
+    /**
+     * Deletes any cached content (memory or files) held by a document.
+     * @param doc document
+     * @throws IOException could not dispose content
+     */
+    public static void dispose(ImporterDocument doc) throws IOException {
+        if (doc != null && doc.getContent() != null) {
+            doc.getContent().dispose();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs importer benchmarks with the GC/allocation profiler enabled,
+ * saving results as JSON under "target/jmh-result.json".  
+ * Regular JMH command-line options can be passed as arguments 
+ * (e.g. a regular expression to run only some benchmarks).
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        super();
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        if (cmdOptions.getIncludes().isEmpty()) {
+            builder.include(BenchmarkRunner.class.getPackage().getName() 
+                    + ".*Benchmark.*");
+        }
+        builder.addProfiler(GCProfiler.class);
+        if (!cmdOptions.getResult().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+            builder.result("target/jmh-result.json");
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.norconex.commons.lang.io.CachedStreamFactory;
+import com.norconex.importer.ImporterConfig;
+import com.norconex.importer.doc.ImporterDocument;
+import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.handler.ImporterHandlerException;
+import com.norconex.importer.handler.splitter.SplittableDocument;
+import com.norconex.importer.handler.splitter.impl.CsvSplitter;
+
+/**
+ * Benchmarks {@link CsvSplitter} on generated CSV files.  Each child
+ * document is discarded as soon as it is produced.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvSplitterBenchmark {
+
+    @Param({ "100", "10000" })
+    public int rows;
+
+    @Param({ "false", "true" })
+    public boolean contentColumns;
+
+    private CsvSplitter splitter;
+    private CachedStreamFactory streamFactory;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        splitter = new CsvSplitter();
+        splitter.setUseFirstRowAsFields(true);
+        splitter.setReferenceColumn("clientId");
+        if (contentColumns) {
+            splitter.setContentColumns("clientName", "notes");
+        }
+        content = BenchmarkCorpus.generateCsv(rows).getBytes("UTF-8");
+        streamFactory = new CachedStreamFactory(
+                ImporterConfig.DEFAULT_MAX_FILE_POOL_CACHE_SIZE, 
+                ImporterConfig.DEFAULT_MAX_FILE_CACHE_SIZE);
+    }
+
+    // Uses the list-returning method, available in all importer versions.
+    @Benchmark
+    public void splitDocument(Blackhole blackhole) 
+            throws ImporterHandlerException, IOException {
+        SplittableDocument doc = new SplittableDocument("benchmark.csv", 
+                new ByteArrayInputStream(content), new ImporterMetadata());
+        List<ImporterDocument> childDocs = splitter.splitDocument(
+                doc, new NullOutputStream(), streamFactory, false);
+        for (ImporterDocument childDoc : childDocs) {
+            blackhole.consume(childDoc.getMetadata());
+            BenchmarkCorpus.dispose(childDoc);
+        }
+    }
+}
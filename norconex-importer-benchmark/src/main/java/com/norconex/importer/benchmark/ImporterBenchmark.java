@@ -0,0 +1,83 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.norconex.importer.Importer;
+import com.norconex.importer.ImporterException;
+import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.response.ImporterResponse;
+
+/**
+ * End-to-end benchmark of {@link Importer#importDocument(
+ * java.io.InputStream, com.norconex.commons.lang.file.ContentType,
+ * String, com.norconex.commons.lang.map.Properties, String)}
+ * with a default configuration: content type detection, parsing
+ * and importing of embedded documents.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImporterBenchmark {
+
+    @Param({ "html", "txt", "csv",
+        "alice.html", "alice.pdf", "alice.docx", "alice.zip" })
+    public String document;
+
+    @Param({ "100" })
+    public int sizeKB;
+
+    private Importer importer;
+    private byte[] content;
+    private String reference;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        importer = new Importer();
+        content = BenchmarkCorpus.getDocument(document, sizeKB);
+        reference = BenchmarkCorpus.getReference(document);
+    }
+
+    @Benchmark
+    public ImporterResponse importDocument() 
+            throws ImporterException, IOException {
+        ImporterResponse response = importer.importDocument(
+                new ByteArrayInputStream(content), null, null,
+                new ImporterMetadata(), reference);
+        BenchmarkCorpus.dispose(response);
+        return response;
+    }
+}
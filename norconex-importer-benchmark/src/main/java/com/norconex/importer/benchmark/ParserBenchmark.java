@@ -0,0 +1,137 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.norconex.commons.lang.file.ContentType;
+import com.norconex.commons.lang.io.CachedStreamFactory;
+import com.norconex.importer.ImporterConfig;
+import com.norconex.importer.doc.ImporterDocument;
+import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.parser.DocumentParserException;
+import com.norconex.importer.parser.impl.AbstractTikaParser;
+import com.norconex.importer.parser.impl.FallbackParser;
+import com.norconex.importer.parser.impl.HTMLParser;
+import com.norconex.importer.parser.impl.PDFParser;
+
+/**
+ * Benchmarks each {@link AbstractTikaParser} implementation on its own,
+ * with the documents it normally handles.  Extracted text is discarded.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+
+    // parser:document
+    @Param({ "HTMLParser:html", "HTMLParser:alice.html", 
+        "PDFParser:alice.pdf", "FallbackParser:alice.docx", 
+        "FallbackParser:txt", "FallbackParser:alice.zip" })
+    public String parserDocument;
+
+    @Param({ "false", "true" })
+    public boolean splitEmbedded;
+
+    private AbstractTikaParser parser;
+    private ContentType contentType;
+    private CachedStreamFactory streamFactory;
+    private byte[] content;
+    private String reference;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String[] parts = parserDocument.split(":");
+        parser = createParser(parts[0]);
+        parser.setSplitEmbedded(splitEmbedded);
+        content = BenchmarkCorpus.getDocument(parts[1], 100);
+        reference = BenchmarkCorpus.getReference(parts[1]);
+        contentType = getContentType(parts[1]);
+        streamFactory = new CachedStreamFactory(
+                ImporterConfig.DEFAULT_MAX_FILE_POOL_CACHE_SIZE, 
+                ImporterConfig.DEFAULT_MAX_FILE_CACHE_SIZE);
+    }
+
+    @Benchmark
+    public List<ImporterDocument> parseDocument()
+            throws DocumentParserException, IOException {
+        ImporterDocument doc = new ImporterDocument(reference,
+                streamFactory.newInputStream(
+                        new ByteArrayInputStream(content)),
+                new ImporterMetadata());
+        doc.setContentType(contentType);
+        List<ImporterDocument> embeddedDocs = 
+                parser.parseDocument(doc, new NullWriter());
+        BenchmarkCorpus.dispose(doc);
+        if (embeddedDocs != null) {
+            for (ImporterDocument embeddedDoc : embeddedDocs) {
+                BenchmarkCorpus.dispose(embeddedDoc);
+            }
+        }
+        return embeddedDocs;
+    }
+
+    private AbstractTikaParser createParser(String name) {
+        switch (name) {
+        case "HTMLParser":
+            return new HTMLParser();
+        case "PDFParser":
+            return new PDFParser();
+        case "FallbackParser":
+            return new FallbackParser();
+        default:
+            throw new IllegalArgumentException("Unsupported parser: " + name);
+        }
+    }
+
+    private ContentType getContentType(String document) {
+        String ext = document.replaceFirst(".*\\.", "");
+        switch (ext) {
+        case "html":
+            return ContentType.HTML;
+        case "pdf":
+            return ContentType.PDF;
+        case "docx":
+            return ContentType.valueOf("application/vnd.openxmlformats-"
+                    + "officedocument.wordprocessingml.document");
+        case "zip":
+            return ContentType.valueOf("application/zip");
+        default:
+            return ContentType.valueOf("text/plain");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.handler.IImporterHandler;
+import com.norconex.importer.handler.ImporterHandlerException;
+import com.norconex.importer.handler.tagger.IDocumentTagger;
+import com.norconex.importer.handler.tagger.impl.LanguageTagger;
+import com.norconex.importer.handler.tagger.impl.TextBetweenTagger;
+import com.norconex.importer.handler.tagger.impl.TextStatisticsTagger;
+import com.norconex.importer.handler.transformer.IDocumentTransformer;
+import com.norconex.importer.handler.transformer.impl.ReduceConsecutivesTransformer;
+import com.norconex.importer.handler.transformer.impl.ReplaceTransformer;
+import com.norconex.importer.handler.transformer.impl.StripAfterTransformer;
+import com.norconex.importer.handler.transformer.impl.StripBeforeTransformer;
+import com.norconex.importer.handler.transformer.impl.StripBetweenTransformer;
+
+/**
+ * Benchmarks the text handlers extending 
+ * {@link com.norconex.importer.handler.transformer.AbstractStringTransformer}
+ * and {@link com.norconex.importer.handler.tagger.AbstractStringTagger}
+ * on generated text of different sizes (as post-parse handlers).
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StringHandlerBenchmark {
+
+    @Param({ "ReplaceTransformer", "ReduceConsecutivesTransformer",
+        "StripBetweenTransformer", "StripBeforeTransformer",
+        "StripAfterTransformer", "TextBetweenTagger", 
+        "TextStatisticsTagger", "LanguageTagger" })
+    public String handlerName;
+
+    @Param({ "10", "1000" })
+    public int sizeKB;
+
+    private IImporterHandler handler;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        handler = createHandler(handlerName);
+        content = BenchmarkCorpus.getDocument("txt", sizeKB);
+    }
+
+    @Benchmark
+    public ImporterMetadata handleDocument() throws ImporterHandlerException {
+        ImporterMetadata metadata = new ImporterMetadata();
+        ByteArrayInputStream input = new ByteArrayInputStream(content);
+        if (handler instanceof IDocumentTransformer) {
+            ((IDocumentTransformer) handler).transformDocument(
+                    "benchmark.txt", input, new NullOutputStream(), 
+                    metadata, true);
+        } else {
+            ((IDocumentTagger) handler).tagDocument(
+                    "benchmark.txt", input, metadata, true);
+        }
+        return metadata;
+    }
+
+    private IImporterHandler createHandler(String name) {
+        switch (name) {
+        case "ReplaceTransformer":
+            ReplaceTransformer replace = new ReplaceTransformer();
+            replace.addReplacement("rabbit", "hare");
+            replace.addReplacement("Alice", "Bob");
+            replace.addReplacement("\\d{3}", "###");
+            return replace;
+        case "ReduceConsecutivesTransformer":
+            ReduceConsecutivesTransformer reduce = 
+                    new ReduceConsecutivesTransformer();
+            reduce.setReductions(" ", "\n", "the ");
+            return reduce;
+        case "StripBetweenTransformer":
+            StripBetweenTransformer stripBetween = 
+                    new StripBetweenTransformer();
+            stripBetween.addStripEndpoints("rabbit", "hole");
+            stripBetween.addStripEndpoints("down", "well");
+            return stripBetween;
+        case "StripBeforeTransformer":
+            StripBeforeTransformer stripBefore = new StripBeforeTransformer();
+            stripBefore.setStripBeforeRegex("Wonderland");
+            return stripBefore;
+        case "StripAfterTransformer":
+            StripAfterTransformer stripAfter = new StripAfterTransformer();
+            stripAfter.setStripAfterRegex("Wonderland");
+            return stripAfter;
+        case "TextBetweenTagger":
+            TextBetweenTagger textBetween = new TextBetweenTagger();
+            textBetween.addTextEndpoints("between", "rabbit", "hole");
+            return textBetween;
+        case "TextStatisticsTagger":
+            return new TextStatisticsTagger();
+        case "LanguageTagger":
+            return new LanguageTagger();
+        default:
+            throw new IllegalArgumentException(
+                    "Unsupported handler: " + name);
+        }
+    }
+}
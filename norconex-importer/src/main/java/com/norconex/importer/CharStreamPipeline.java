@@ -0,0 +1,335 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.handler.ImporterHandlerException;
+import com.norconex.importer.handler.transformer.AbstractCharStreamTransformer;
+import com.norconex.importer.metrics.ComponentMetrics;
+import com.norconex.importer.util.BufferMemoryBudget;
+
+/**
+ * Runs consecutive character stream transformers in a single pass.
+ * Each transformer runs in its own thread and writes to a small bounded
+ * buffer the next transformer reads from, so the content is never held
+ * in full between two transformers, nor encoded and decoded again.
+ * The last transformer runs in the calling thread.
+ * <p />
+ * Since metadata is not thread-safe, each transformer gets its own copy 
+ * of the document metadata.  Changes made to each copy are applied
+ * to the document metadata once all transformers are done, in 
+ * transformer order.  A transformer therefore does not see metadata 
+ * changes made by the other transformers of the same pipeline.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+final class CharStreamPipeline {
+
+    // Size in characters of the buffer between two transformers
+    private static final int PIPE_SIZE = 8 * 1024;
+
+    private final ExecutorService executor;
+
+    public CharStreamPipeline(ExecutorService executor) {
+        super();
+        this.executor = executor;
+    }
+
+    /**
+     * Transforms the content through all given transformers, in order.
+     * Transformers must have been found applicable to the document
+     * beforehand.
+     * @param reference document reference
+     * @param input content to transform
+     * @param output transformed content (flushed, not closed)
+     * @param metadata document metadata
+     * @param parsed if the document was parsed already
+     * @param transformers transformers to chain
+     * @param metrics metrics of each transformer
+     * @throws ImporterHandlerException problem transforming the content
+     */
+    public void transform(String reference, Reader input, Writer output,
+            ImporterMetadata metadata, boolean parsed,
+            List<AbstractCharStreamTransformer> transformers,
+            List<ComponentMetrics> metrics)
+            throws ImporterHandlerException {
+        int last = transformers.size() - 1;
+        Map<String, List<String>> metaBefore = ParseCache.snapshot(metadata);
+        ImporterMetadata.Snapshot metaSnapshot = metadata.snapshot();
+        List<ImporterMetadata> stageMetadata = new ArrayList<>(last + 1);
+        for (int i = 0; i <= last; i++) {
+            stageMetadata.add(new ImporterMetadata(metaSnapshot));
+        }
+        
+        List<Future<Void>> futures = new ArrayList<>(last);
+        Reader stageInput = input;
+        for (int i = 0; i < last; i++) {
+            CharPipe pipe = new CharPipe(PIPE_SIZE);
+            // Buffered, since transformers often read one character
+            // at a time
+            futures.add(executor.submit(new Stage(reference, stageInput,
+                    new BufferedWriter(pipe.writer), stageMetadata.get(i),
+                    parsed, transformers.get(i), metrics.get(i), i > 0, 
+                    true)));
+            stageInput = new BufferedReader(pipe.reader);
+        }
+        Throwable error = null;
+        try {
+            new Stage(reference, stageInput, output, stageMetadata.get(last),
+                    parsed, transformers.get(last), metrics.get(last), 
+                    last > 0, false).call();
+        } catch (ImporterHandlerException | RuntimeException e) {
+            error = e;
+        } finally {
+            // Other stages are always waited for, so none is still 
+            // reading the content once returning, even on failure.
+            error = awaitStages(futures, error);
+        }
+        if (error != null) {
+            throw toHandlerException(error);
+        }
+        for (ImporterMetadata stageMeta : stageMetadata) {
+            applyChanges(metaBefore, stageMeta, metadata);
+        }
+    }
+
+    // Returns the given error, or else the first stage error, if any
+    private Throwable awaitStages(
+            List<Future<Void>> futures, Throwable error) {
+        Throwable firstError = error;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (firstError == null) {
+                    firstError = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (firstError == null) {
+                    firstError = new ImporterHandlerException(
+                            "Interrupted while transforming content.", e);
+                }
+            }
+        }
+        return firstError;
+    }
+
+    private void applyChanges(Map<String, List<String>> before,
+            ImporterMetadata after, ImporterMetadata target) {
+        for (String field : before.keySet()) {
+            if (!after.containsKey(field)) {
+                target.remove(field);
+            }
+        }
+        for (Entry<String, List<String>> en : 
+                ParseCache.diff(before, after).entrySet()) {
+            target.put(en.getKey(), en.getValue());
+        }
+    }
+
+    private ImporterHandlerException toHandlerException(Throwable e) {
+        if (e instanceof ImporterHandlerException) {
+            return (ImporterHandlerException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new ImporterHandlerException(
+                "Could not transform content.", e);
+    }
+
+    // A transformer execution, closing its pipe ends when done so
+    // the transformers before and after it are never left waiting.
+    private static class Stage implements Callable<Void> {
+        private final String reference;
+        private final Reader input;
+        private final Writer output;
+        private final ImporterMetadata metadata;
+        private final boolean parsed;
+        private final AbstractCharStreamTransformer transformer;
+        private final ComponentMetrics metrics;
+        private final boolean closeInput;
+        private final boolean closeOutput;
+        private final BufferMemoryBudget budget = 
+                BufferMemoryBudget.getCurrent();
+        public Stage(String reference, Reader input, Writer output,
+                ImporterMetadata metadata, boolean parsed,
+                AbstractCharStreamTransformer transformer,
+                ComponentMetrics metrics, 
+                boolean closeInput, boolean closeOutput) {
+            super();
+            this.reference = reference;
+            this.input = input;
+            this.output = output;
+            this.metadata = metadata;
+            this.parsed = parsed;
+            this.transformer = transformer;
+            this.metrics = metrics;
+            this.closeInput = closeInput;
+            this.closeOutput = closeOutput;
+        }
+        @Override
+        public Void call() throws ImporterHandlerException {
+            long startTime = System.nanoTime();
+            BufferMemoryBudget previousBudget = BufferMemoryBudget.bind(budget);
+            try {
+                transformer.transformApplicableDocument(
+                        reference, input, output, metadata, parsed);
+            } finally {
+                BufferMemoryBudget.bind(previousBudget);
+                if (closeInput) {
+                    IOUtils.closeQuietly(input);
+                }
+                if (closeOutput) {
+                    IOUtils.closeQuietly(output);
+                }
+                metrics.record(System.nanoTime() - startTime, 0, 0, false);
+            }
+            return null;
+        }
+    }
+
+    // Bounded circular buffer of characters between a writing thread
+    // and a reading thread.  Contrary to PipedReader/PipedWriter, it
+    // does not poll and does not bind to the threads using it.
+    // Characters written once the reader is closed are discarded, as
+    // a transformer may stop reading before the end of its input.
+    private static class CharPipe {
+        private final char[] buffer;
+        private int readPos;
+        private int count;
+        private boolean writerClosed;
+        private boolean readerClosed;
+        private final PipeReader reader = new PipeReader();
+        private final PipeWriter writer = new PipeWriter();
+
+        public CharPipe(int size) {
+            super();
+            this.buffer = new char[size];
+        }
+
+        private synchronized void write(char[] cbuf, int off, int len)
+                throws IOException {
+            if (writerClosed) {
+                throw new IOException("Pipe writer closed.");
+            }
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                while (count == buffer.length && !readerClosed) {
+                    await();
+                }
+                if (readerClosed) {
+                    return;
+                }
+                int writePos = (readPos + count) % buffer.length;
+                int n = Math.min(remaining, Math.min(
+                        buffer.length - count, buffer.length - writePos));
+                System.arraycopy(cbuf, offset, buffer, writePos, n);
+                count += n;
+                offset += n;
+                remaining -= n;
+                notifyAll();
+            }
+        }
+        private synchronized int read(char[] cbuf, int off, int len)
+                throws IOException {
+            if (readerClosed) {
+                throw new IOException("Pipe reader closed.");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (count == 0 && !writerClosed) {
+                await();
+            }
+            if (count == 0) {
+                return -1;
+            }
+            int n = Math.min(len, Math.min(count, buffer.length - readPos));
+            System.arraycopy(buffer, readPos, cbuf, off, n);
+            readPos = (readPos + n) % buffer.length;
+            count -= n;
+            notifyAll();
+            return n;
+        }
+        private synchronized void closeWriter() {
+            writerClosed = true;
+            notifyAll();
+        }
+        private synchronized void closeReader() {
+            readerClosed = true;
+            count = 0;
+            notifyAll();
+        }
+        private void await() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                        "Interrupted while waiting on transformer pipe.");
+            }
+        }
+
+        private class PipeReader extends Reader {
+            @Override
+            public int read(char[] cbuf, int off, int len)
+                    throws IOException {
+                return CharPipe.this.read(cbuf, off, len);
+            }
+            @Override
+            public void close() {
+                closeReader();
+            }
+        }
+        private class PipeWriter extends Writer {
+            @Override
+            public void write(char[] cbuf, int off, int len)
+                    throws IOException {
+                CharPipe.this.write(cbuf, off, len);
+            }
+            @Override
+            public void flush() {
+                // nothing is held outside the shared buffer
+            }
+            @Override
+            public void close() {
+                closeWriter();
+            }
+        }
+    }
+}
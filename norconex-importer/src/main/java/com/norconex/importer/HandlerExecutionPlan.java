@@ -0,0 +1,162 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.norconex.importer.handler.IImporterHandler;
+import com.norconex.importer.handler.filter.IDocumentFilter;
+import com.norconex.importer.handler.filter.IOnMatchFilter;
+import com.norconex.importer.handler.filter.OnMatch;
+import com.norconex.importer.handler.splitter.IDocumentSplitter;
+import com.norconex.importer.handler.tagger.IDocumentTagger;
+import com.norconex.importer.handler.transformer.AbstractCharStreamTransformer;
+import com.norconex.importer.handler.transformer.IDocumentTransformer;
+import com.norconex.importer.metrics.ComponentMetrics;
+import com.norconex.importer.metrics.ImporterMetrics;
+
+/**
+ * Immutable, pre-resolved view of a handler chain, so the kind of each
+ * handler is not figured out again for every document imported.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+final class HandlerExecutionPlan {
+
+    enum Kind { TAGGER, TRANSFORMER, SPLITTER, FILTER, UNSUPPORTED }
+
+    private final IImporterHandler[] handlers;
+    private final Kind[] kinds;
+    private final boolean[] includeFilters;
+    private final ComponentMetrics[] handlerMetrics;
+    private final int[] fusedRunEnds;
+    private final boolean hasIncludeFilters;
+
+    public HandlerExecutionPlan(IImporterHandler[] handlers, 
+            String chainName, ImporterMetrics metrics, 
+            boolean fuseCharStreamTransformers) {
+        super();
+        if (handlers == null) {
+            this.handlers = new IImporterHandler[] {};
+        } else {
+            this.handlers = ArrayUtils.clone(handlers);
+        }
+        this.kinds = new Kind[this.handlers.length];
+        this.includeFilters = new boolean[this.handlers.length];
+        this.handlerMetrics = new ComponentMetrics[this.handlers.length];
+        boolean includes = false;
+        for (int i = 0; i < this.handlers.length; i++) {
+            IImporterHandler h = this.handlers[i];
+            kinds[i] = resolveKind(h);
+            handlerMetrics[i] = metrics.getHandlerMetrics(
+                    chainName + "." + i + "." + getHandlerName(h));
+            if (kinds[i] == Kind.FILTER && h instanceof IOnMatchFilter
+                    && ((IOnMatchFilter) h).getOnMatch() == OnMatch.INCLUDE) {
+                includeFilters[i] = true;
+                includes = true;
+            }
+        }
+        this.hasIncludeFilters = includes;
+        this.fusedRunEnds = new int[this.handlers.length];
+        for (int i = this.handlers.length - 1; i >= 0; i--) {
+            if (fuseCharStreamTransformers && isCharStreamTransformer(i)
+                    && i + 1 < this.handlers.length
+                    && isCharStreamTransformer(i + 1)) {
+                fusedRunEnds[i] = fusedRunEnds[i + 1];
+            } else {
+                fusedRunEnds[i] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Whether this plan was created for the given handlers (same
+     * instances, in the same order).
+     * @param otherHandlers handlers
+     * @return <code>true</code> if this plan is for the given handlers
+     */
+    public boolean isFor(IImporterHandler[] otherHandlers) {
+        int length = ArrayUtils.getLength(otherHandlers);
+        if (length != handlers.length) {
+            return false;
+        }
+        for (int i = 0; i < handlers.length; i++) {
+            if (otherHandlers[i] != handlers[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return handlers.length;
+    }
+    public IImporterHandler getHandler(int index) {
+        return handlers[index];
+    }
+    public Kind getKind(int index) {
+        return kinds[index];
+    }
+    public boolean isIncludeFilter(int index) {
+        return includeFilters[index];
+    }
+    public ComponentMetrics getMetrics(int index) {
+        return handlerMetrics[index];
+    }
+    public boolean hasIncludeFilters() {
+        return hasIncludeFilters;
+    }
+    /**
+     * Gets the end index (exclusive) of consecutive character stream 
+     * transformers to execute in a single pass, starting at the given
+     * index.  When there is nothing to fuse, <code>index + 1</code> 
+     * is returned.
+     * @param index handler index
+     * @return end index of fused handlers (exclusive)
+     */
+    public int getFusedRunEnd(int index) {
+        return fusedRunEnds[index];
+    }
+
+    private boolean isCharStreamTransformer(int index) {
+        return kinds[index] == Kind.TRANSFORMER 
+                && handlers[index] instanceof AbstractCharStreamTransformer;
+    }
+
+    private static String getHandlerName(IImporterHandler h) {
+        if (h == null) {
+            return "null";
+        }
+        String name = h.getClass().getSimpleName();
+        if (StringUtils.isBlank(name)) {
+            name = h.getClass().getName();
+        }
+        return name;
+    }
+
+    private static Kind resolveKind(IImporterHandler h) {
+        if (h instanceof IDocumentTagger) {
+            return Kind.TAGGER;
+        } else if (h instanceof IDocumentTransformer) {
+            return Kind.TRANSFORMER;
+        } else if (h instanceof IDocumentSplitter) {
+            return Kind.SPLITTER;
+        } else if (h instanceof IDocumentFilter) {
+            return Kind.FILTER;
+        }
+        return Kind.UNSUPPORTED;
+    }
+}
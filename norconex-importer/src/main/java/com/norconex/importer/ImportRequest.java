@@ -0,0 +1,135 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.commons.lang.file.ContentType;
+import com.norconex.commons.lang.map.Properties;
+
+/**
+ * Holds the arguments of a single document import, so documents can be
+ * submitted to the {@link Importer} in batches or asynchronously.
+ * A request holds either a file or an input stream, never both.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ * @see Importer#importDocuments(Iterable)
+ */
+public class ImportRequest {
+
+    private final File file;
+    private final InputStream input;
+    private final ContentType contentType;
+    private final String contentEncoding;
+    private final Properties metadata;
+    private final String reference;
+
+    /**
+     * Creates a request for importing a file.
+     * @param file document input
+     * @param metadata the document starting metadata
+     */
+    public ImportRequest(File file, Properties metadata) {
+        this(file, null, null, metadata, null);
+    }
+    /**
+     * Creates a request for importing a file.
+     * @param file document input
+     * @param contentType document content-type
+     * @param contentEncoding document content encoding
+     * @param metadata the document starting metadata
+     * @param reference document reference (defaults to file path when
+     *        <code>null</code>)
+     */
+    public ImportRequest(File file, ContentType contentType,
+            String contentEncoding, Properties metadata, String reference) {
+        super();
+        if (file == null) {
+            throw new IllegalArgumentException(
+                    "'file' argument cannot be null.");
+        }
+        this.file = file;
+        this.input = null;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.metadata = metadata;
+        this.reference = reference;
+    }
+    /**
+     * Creates a request for importing an input stream.
+     * @param input document input
+     * @param metadata the document starting metadata
+     * @param reference document reference (e.g. URL, file path, etc)
+     */
+    public ImportRequest(
+            InputStream input, Properties metadata, String reference) {
+        this(input, null, null, metadata, reference);
+    }
+    /**
+     * Creates a request for importing an input stream.
+     * @param input document input
+     * @param contentType document content-type
+     * @param contentEncoding document content encoding
+     * @param metadata the document starting metadata
+     * @param reference document reference (e.g. URL, file path, etc)
+     */
+    public ImportRequest(InputStream input, ContentType contentType,
+            String contentEncoding, Properties metadata, String reference) {
+        super();
+        if (input == null) {
+            throw new IllegalArgumentException(
+                    "'input' argument cannot be null.");
+        }
+        this.file = null;
+        this.input = input;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.metadata = metadata;
+        this.reference = reference;
+    }
+
+    public File getFile() {
+        return file;
+    }
+    public InputStream getInput() {
+        return input;
+    }
+    public ContentType getContentType() {
+        return contentType;
+    }
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+    public Properties getMetadata() {
+        return metadata;
+    }
+    public String getReference() {
+        return reference;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+            .append("file", file)
+            .append("contentType", contentType)
+            .append("contentEncoding", contentEncoding)
+            .append("reference", reference)
+            .toString();
+    }
+}
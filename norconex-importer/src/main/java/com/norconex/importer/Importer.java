@@ -20,18 +20,42 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.CharEncoding;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.file.ContentFamily;
 import com.norconex.commons.lang.file.ContentType;
 import com.norconex.commons.lang.io.CachedInputStream;
@@ -39,27 +63,47 @@ import com.norconex.commons.lang.io.CachedOutputStream;
 import com.norconex.commons.lang.io.CachedStreamFactory;
 import com.norconex.commons.lang.map.Properties;
 import com.norconex.importer.doc.ContentTypeDetector;
+import com.norconex.importer.doc.IChildDocumentConsumer;
 import com.norconex.importer.doc.ImporterDocument;
 import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.doc.NestedDocumentGuard;
+import com.norconex.importer.doc.NestedDocumentLimitException;
 import com.norconex.importer.handler.IImporterHandler;
 import com.norconex.importer.handler.ImporterHandlerException;
 import com.norconex.importer.handler.filter.IDocumentFilter;
-import com.norconex.importer.handler.filter.IOnMatchFilter;
-import com.norconex.importer.handler.filter.OnMatch;
 import com.norconex.importer.handler.splitter.IDocumentSplitter;
+import com.norconex.importer.handler.splitter.IStreamingDocumentSplitter;
 import com.norconex.importer.handler.splitter.SplittableDocument;
 import com.norconex.importer.handler.tagger.IDocumentTagger;
+import com.norconex.importer.handler.transformer.AbstractCharStreamTransformer;
 import com.norconex.importer.handler.transformer.IDocumentTransformer;
+import com.norconex.importer.metrics.ComponentMetrics;
+import com.norconex.importer.metrics.ImporterMetrics;
 import com.norconex.importer.parser.DocumentParserException;
 import com.norconex.importer.parser.IDocumentParser;
 import com.norconex.importer.parser.IDocumentParserFactory;
+import com.norconex.importer.parser.IStreamingDocumentParser;
+import com.norconex.importer.parser.impl.AbstractTikaParser;
 import com.norconex.importer.response.IImporterResponseProcessor;
 import com.norconex.importer.response.ImporterResponse;
 import com.norconex.importer.response.ImporterStatus;
 import com.norconex.importer.response.ImporterStatus.Status;
+import com.norconex.importer.util.BufferMemoryBudget;
 
 /**
  * Principal class responsible for importing documents.
+ * <p />
+ * An importer instance can be shared by multiple threads, provided the
+ * configured handlers and parsers are thread-safe (the ones shipped 
+ * with the importer are, once configured).  As of 2.1.0, documents can
+ * also be imported in batch using the importer's own threads 
+ * (see {@link #importDocuments(Iterable)}).  In such case, invoke 
+ * {@link #shutdown()} when done with the importer to release them.
+ * The same goes for asynchronous imports 
+ * (see {@link #importDocumentAsync(ImportRequest)}).
+ * <p />
+ * Execution statistics are gathered for every document imported
+ * (see {@link #getMetrics()}).
  * @author Pascal Essiembre
  */
 public class Importer {
@@ -73,6 +117,14 @@ public class Importer {
 	private final ContentTypeDetector contentTypeDetector =
 	        new ContentTypeDetector();
 	private final CachedStreamFactory streamFactory;
+	private ExecutorService executor;
+	private ForkJoinPool nestedImportPool;
+	private ExecutorService pipelineExecutor;
+	private volatile HandlerExecutionPlan preParsePlan;
+	private volatile HandlerExecutionPlan postParsePlan;
+	private final ImporterMetrics metrics = new ImporterMetrics();
+	private final ParseCache parseCache;
+	private final BufferMemoryBudget bufferMemoryBudget;
     
     /**
      * Creates a new importer with default configuration.
@@ -106,6 +158,18 @@ public class Importer {
                 this.importerConfig.getMaxFilePoolCacheSize(),
                 this.importerConfig.getMaxFileCacheSize(),
                 this.importerConfig.getTempDir());
+        if (this.importerConfig.isRegisterMetricsMBean()) {
+            metrics.registerMBean();
+        }
+        if (this.importerConfig.getParseCacheDir() != null) {
+            parseCache = new ParseCache(
+                    this.importerConfig.getParseCacheDir(),
+                    this.importerConfig.getParseCacheMaxSize());
+        } else {
+            parseCache = null;
+        }
+        bufferMemoryBudget = new BufferMemoryBudget(
+                this.importerConfig.getMaxBufferMemory());
     }
 
     /**
@@ -121,6 +185,187 @@ public class Importer {
         return streamFactory;
     }
     
+    /**
+     * Gets the execution statistics gathered by this importer.
+     * @return importer metrics
+     * @since 2.1.0
+     */
+    public ImporterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Releases threads created by this importer for concurrent imports,
+     * if any, and unregisters its metrics MBean, if registered. 
+     * Imports already submitted are completed first.  The importer 
+     * can still be used afterwards (new threads are created as needed).
+     * @since 2.1.0
+     */
+    public synchronized void shutdown() {
+        metrics.unregisterMBean();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (nestedImportPool != null) {
+            nestedImportPool.shutdown();
+            nestedImportPool = null;
+        }
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdown();
+            pipelineExecutor = null;
+        }
+    }
+
+    /**
+     * Imports a batch of documents concurrently, using this importer's 
+     * own threads.  The maximum number of documents being imported
+     * at once is defined by {@link ImporterConfig#getMaxConcurrentImports()}.
+     * @param requests documents to import
+     * @return importer responses, in order of completion
+     * @see #importDocuments(Iterable, ExecutorService, int)
+     * @since 2.1.0
+     */
+    public Iterator<ImporterResponse> importDocuments(
+            Iterable<ImportRequest> requests) {
+        return importDocuments(requests, getExecutor(), 
+                importerConfig.getMaxConcurrentImports());
+    }
+    /**
+     * Imports a batch of documents concurrently, using the supplied
+     * executor.  Documents are read from the supplied requests only when
+     * there is room for them, so no more than <code>maxInFlight</code> 
+     * documents are being imported (or waiting to be returned) at any 
+     * given time.  Importing starts as soon as this method is invoked and 
+     * is driven by iterating over the returned responses, which are 
+     * returned as they complete (not necessarily in the order they were 
+     * requested).  
+     * A document failing to import is returned as a response holding an 
+     * error status, it never interrupts the batch.
+     * @param requests documents to import
+     * @param executor executor running the imports
+     * @param maxInFlight maximum number of documents being imported at once
+     * @return importer responses, in order of completion
+     * @since 2.1.0
+     */
+    public Iterator<ImporterResponse> importDocuments(
+            Iterable<ImportRequest> requests, 
+            ExecutorService executor, int maxInFlight) {
+        if (requests == null) {
+            throw new IllegalArgumentException(
+                    "'requests' argument cannot be null.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException(
+                    "'executor' argument cannot be null.");
+        }
+        return new ImportBatchIterator(
+                requests.iterator(), executor, Math.max(1, maxInFlight));
+    }
+
+    /**
+     * Imports a document asynchronously, using this importer's own threads.
+     * @param input document input
+     * @param metadata the document starting metadata
+     * @param reference document reference (e.g. URL, file path, etc)
+     * @return the pending importer output
+     * @see #importDocumentAsync(ImportRequest, ExecutorService)
+     * @since 2.1.0
+     */
+    public Future<ImporterResponse> importDocumentAsync(
+            InputStream input, Properties metadata, String reference) {
+        return importDocumentAsync(
+                new ImportRequest(input, metadata, reference));
+    }
+    /**
+     * Imports a document asynchronously, using this importer's own threads.
+     * @param file document input
+     * @param metadata the document starting metadata
+     * @return the pending importer output
+     * @see #importDocumentAsync(ImportRequest, ExecutorService)
+     * @since 2.1.0
+     */
+    public Future<ImporterResponse> importDocumentAsync(
+            File file, Properties metadata) {
+        return importDocumentAsync(new ImportRequest(file, metadata));
+    }
+    /**
+     * Imports a document asynchronously, using this importer's own threads.
+     * At most {@link ImporterConfig#getMaxConcurrentImports()} documents
+     * are imported at once, other ones are queued until a thread 
+     * is available.
+     * @param request document import request
+     * @return the pending importer output
+     * @see #importDocumentAsync(ImportRequest, ExecutorService)
+     * @since 2.1.0
+     */
+    public Future<ImporterResponse> importDocumentAsync(
+            ImportRequest request) {
+        return importDocumentAsync(request, getExecutor());
+    }
+    /**
+     * Imports a document asynchronously, using the supplied executor.
+     * The calling thread returns immediately, leaving the document 
+     * parsing and handling to the executor.  When the request holds
+     * an input stream, it must not be closed until the import completes.
+     * A document failing to import results in a response holding an 
+     * error status rather than an execution exception.
+     * @param request document import request
+     * @param executor executor running the import
+     * @return the pending importer output
+     * @since 2.1.0
+     */
+    public Future<ImporterResponse> importDocumentAsync(
+            final ImportRequest request, ExecutorService executor) {
+        if (request == null) {
+            throw new IllegalArgumentException(
+                    "'request' argument cannot be null.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException(
+                    "'executor' argument cannot be null.");
+        }
+        return executor.submit(new Callable<ImporterResponse>() {
+            @Override
+            public ImporterResponse call() {
+                return importDocument(request);
+            }
+        });
+    }
+    
+    /**
+     * Imports a document according to the importer configuration.
+     * Problems importing the document are reported in the returned 
+     * response status.
+     * @param request document import request
+     * @return importer output
+     * @since 2.1.0
+     */
+    public ImporterResponse importDocument(ImportRequest request) {
+        String reference = request.getReference();
+        try {
+            if (request.getFile() != null) {
+                return importDocument(request.getFile(), 
+                        request.getContentType(), 
+                        request.getContentEncoding(), 
+                        request.getMetadata(), reference);
+            }
+            return importDocument(request.getInput(), 
+                    request.getContentType(), request.getContentEncoding(), 
+                    request.getMetadata(), reference);
+        } catch (ImporterException e) {
+            if (StringUtils.isBlank(reference) && request.getFile() != null) {
+                reference = request.getFile().getAbsolutePath();
+            }
+            LOG.debug("Could not import " + reference, e);
+            return new ImporterResponse(reference, new ImporterStatus(e));
+        } catch (RuntimeException e) {
+            LOG.error("Could not import " + reference, e);
+            return new ImporterResponse(reference, new ImporterStatus(
+                    new ImporterException("Could not import document.", e)));
+        }
+    }
+    
     /**
      * Imports a document according to the importer configuration.
      * @param input document input
@@ -197,18 +442,15 @@ public class Importer {
         }
     }
 
-    //TODO pass ImportDocument instead?   Accept one as argument?
     private ImporterResponse doImportDocument(final InputStream input, 
             ContentType contentType, String contentEncoding,
-            Properties metadata, String reference) throws ImporterException {           
+            Properties metadata, String reference)
+                    throws ImporterException {           
+        long startTime = System.nanoTime();
         
         //--- Input ---
-        BufferedInputStream bufInput = null;
-        if (input instanceof BufferedInputStream) {
-            bufInput = (BufferedInputStream) input;
-        } else {
-            bufInput = new BufferedInputStream(input);
-        }
+        CountingInputStream countingInput = new CountingInputStream(input);
+        BufferedInputStream bufInput = new BufferedInputStream(countingInput);
 
         //--- Reference ---
         if (StringUtils.isBlank(reference)) {
@@ -219,15 +461,7 @@ public class Importer {
         ContentType safeContentType = contentType;
         if (safeContentType == null 
                 || StringUtils.isBlank(safeContentType.toString())) {
-            try {
-                safeContentType = 
-                        contentTypeDetector.detect(bufInput, reference);
-            } catch (IOException e) {
-                LOG.error("Could not detect content type. Defaulting to "
-                        + "\"application/octet-stream\".", e);
-                safeContentType = 
-                        ContentType.valueOf("application/octet-stream");
-            }
+            safeContentType = detectContentType(bufInput, reference);
         }
         
         //--- Metadata ---
@@ -237,6 +471,72 @@ public class Importer {
         } else {
             meta = new ImporterMetadata(metadata);
         }
+
+        CachedInputStream content = streamFactory.newInputStream(bufInput);
+        ImporterDocument document = 
+                new ImporterDocument(reference, content, meta);
+        document.setContentType(safeContentType);
+        document.setContentEncoding(contentEncoding);
+        NestedDocumentGuard guard = new NestedDocumentGuard(
+                importerConfig.getMaxNestedDepth(), 
+                importerConfig.getMaxNestedChildren(), 
+                importerConfig.getMaxNestedExpandedSize(), 
+                importerConfig.getMaxNestedCompressionRatio());
+        return importCachedDocument(
+                document, guard, startTime, countingInput);
+    }
+
+    // Child documents content is already cached by the parser or splitter
+    // that created them.  It is imported as is rather than read and
+    // cached a second time.
+    private ImporterResponse doImportDocument(ImporterDocument document, 
+            NestedDocumentGuard guard) throws ImporterException {
+        long startTime = System.nanoTime();
+        
+        //--- Reference ---
+        if (StringUtils.isBlank(document.getReference())) {
+            throw new ImporterException("The document reference was not set.");
+        }
+
+        //--- Content Type ---
+        ContentType contentType = document.getContentType();
+        if (contentType == null 
+                || StringUtils.isBlank(contentType.toString())) {
+            // getContent() rewinds the content, before and after detection
+            document.setContentType(detectContentType(
+                    document.getContent(), document.getReference()));
+        }
+        return importCachedDocument(document, guard, startTime, null);
+    }
+
+    private ContentType detectContentType(
+            InputStream input, String reference) {
+        long detectStart = System.nanoTime();
+        ContentType contentType = null;
+        try {
+            contentType = contentTypeDetector.detect(input, reference);
+        } catch (IOException e) {
+            LOG.error("Could not detect content type. Defaulting to "
+                    + "\"application/octet-stream\".", e);
+            contentType = ContentType.valueOf("application/octet-stream");
+        }
+        metrics.getPhaseMetrics(ImporterMetrics.PHASE_DETECTION).record(
+                System.nanoTime() - detectStart, 0, 0, false);
+        return contentType;
+    }
+
+    // Bytes read are only counted for the importer input (child documents
+    // content is part of their parent input).  Documents exceeding a nested
+    // document limit are rejected, whether or not the exception thrown
+    // made it through the parser or splitter that extracted children.
+    private ImporterResponse importCachedDocument(ImporterDocument document,
+            NestedDocumentGuard guard, long startTime, 
+            CountingInputStream countingInput) throws ImporterException {
+        String reference = document.getReference();
+        ContentType safeContentType = document.getContentType();
+        
+        //--- Metadata ---
+        ImporterMetadata meta = document.getMetadata();
         meta.setReference(reference);
         meta.setString(ImporterMetadata.DOC_CONTENT_TYPE, 
                 safeContentType.toString()); 
@@ -249,14 +549,27 @@ public class Importer {
         
         //--- Document Handling ---
         try {
-            List<ImporterDocument> nestedDocs = new ArrayList<>();
-            CachedInputStream content = streamFactory.newInputStream(bufInput);
-            ImporterDocument document = 
-                    new ImporterDocument(reference, content, meta);
-            document.setContentType(safeContentType);
-            document.setContentEncoding(contentEncoding);
+            ChildImporter childImporter = new ChildImporter(guard);
             
-            ImporterStatus filterStatus = importDocument(document, nestedDocs);
+            ImporterStatus filterStatus = null;
+            BufferMemoryBudget previousBudget = 
+                    BufferMemoryBudget.bind(bufferMemoryBudget);
+            NestedDocumentGuard previousGuard = NestedDocumentGuard.bind(guard);
+            try {
+                filterStatus = importDocument(document, childImporter);
+            } catch (IOException | ImporterException | RuntimeException e) {
+                if (!guard.isExceeded()) {
+                    throw e;
+                }
+                LOG.debug("Nested document limit exceeded: " + reference, e);
+            } finally {
+                NestedDocumentGuard.bind(previousGuard);
+                BufferMemoryBudget.bind(previousBudget);
+            }
+            if (guard.isExceeded()) {
+                filterStatus = new ImporterStatus(
+                        Status.REJECTED, guard.getExceededMessage());
+            }
             
             ImporterResponse response = null;
             if (filterStatus.isRejected()) {
@@ -264,23 +577,33 @@ public class Importer {
             } else {
                 response = new ImporterResponse(document);
             }
-            for (ImporterDocument childDoc : nestedDocs) {
-                ImporterResponse nestedResponse = importDocument(
-                        childDoc.getContent(),
-                        childDoc.getContentType(), 
-                        childDoc.getContentEncoding(),
-                        childDoc.getMetadata(), 
-                        childDoc.getReference());
+            for (ImporterResponse nestedResponse : 
+                    childImporter.getResponses()) {
                 if (nestedResponse != null) {
                     response.addNestedResponse(nestedResponse);
                 }
             }
             
             //--- Response Processor ---
-            if (response.getParentResponse() == null && ArrayUtils.isNotEmpty(
+            if (guard.getDepth() == 0 && ArrayUtils.isNotEmpty(
                     importerConfig.getResponseProcessors())) {
                 processResponse(response);
-            }            
+            }
+            long bytesIn = 0;
+            if (countingInput != null) {
+                bytesIn = countingInput.getByteCount();
+            }
+            if (guard.getDepth() == 0) {
+                metrics.getPhaseMetrics(ImporterMetrics.PHASE_DOCUMENT).record(
+                        System.nanoTime() - startTime, bytesIn, 0, 
+                        filterStatus.isRejected());
+            } else {
+                // Nested documents time excludes their own children
+                metrics.getPhaseMetrics(
+                        ImporterMetrics.PHASE_NESTED_DOCUMENT).record(
+                                childImporter.nanoTime() - startTime, 0, 0,
+                                filterStatus.isRejected());
+            }
             return response;
         } catch (IOException e) {
             throw new ImporterException(
@@ -288,14 +611,30 @@ public class Importer {
         }
     }
     
+    private ImporterResponse importNestedDocument(
+            ImporterDocument childDoc, NestedDocumentGuard guard) {
+        try {
+            return doImportDocument(childDoc, guard);
+        } catch (ImporterException e) {
+            LOG.debug("Could not import " + childDoc.getReference(), e);
+            return new ImporterResponse(
+                    childDoc.getReference(), new ImporterStatus(e));
+        }
+    }
+    
+    // Phase times exclude the time spent importing child documents
+    // extracted during the phase.
     private ImporterStatus importDocument(
-            ImporterDocument document, List<ImporterDocument> nestedDocs)
+            ImporterDocument document, ChildImporter childImporter)
                     throws IOException, ImporterException {
         ImporterStatus filterStatus = null;
 
         //--- Pre-handlers ---
-        filterStatus = executeHandlers(document, nestedDocs, 
-                importerConfig.getPreParseHandlers(), false);
+        long phaseStart = childImporter.nanoTime();
+        filterStatus = executeHandlers(
+                document, childImporter, getPreParsePlan(), false);
+        recordPhase(ImporterMetrics.PHASE_PRE_PARSE, 
+                childImporter.nanoTime() - phaseStart, filterStatus);
         if (!filterStatus.isSuccess()) {
             return filterStatus;
         }
@@ -303,11 +642,17 @@ public class Importer {
         //--- Parse ---
         //TODO make parse just another handler in the chain?  Eliminating
         //the need for pre and post handlers?
-        parseDocument(document, nestedDocs);
+        phaseStart = childImporter.nanoTime();
+        parseDocument(document, childImporter);
+        recordPhase(ImporterMetrics.PHASE_PARSE, 
+                childImporter.nanoTime() - phaseStart, null);
 
         //--- Post-handlers ---
-        filterStatus = executeHandlers(document, nestedDocs, 
-                importerConfig.getPostParseHandlers(), true);
+        phaseStart = childImporter.nanoTime();
+        filterStatus = executeHandlers(
+                document, childImporter, getPostParsePlan(), true);
+        recordPhase(ImporterMetrics.PHASE_POST_PARSE, 
+                childImporter.nanoTime() - phaseStart, filterStatus);
         if (!filterStatus.isSuccess()) {
             return filterStatus;
         }
@@ -316,6 +661,12 @@ public class Importer {
     }
     
     
+    private void recordPhase(
+            String phase, long elapsedTime, ImporterStatus status) {
+        metrics.getPhaseMetrics(phase).record(elapsedTime,
+                0, 0, status != null && status.isRejected());
+    }
+    
     private void processResponse(ImporterResponse response) {
         IImporterResponseProcessor[] procs = 
                 importerConfig.getResponseProcessors();
@@ -324,43 +675,73 @@ public class Importer {
         }
     }
     
+    private HandlerExecutionPlan getPreParsePlan() {
+        IImporterHandler[] handlers = importerConfig.getPreParseHandlers();
+        HandlerExecutionPlan plan = preParsePlan;
+        if (plan == null || !plan.isFor(handlers)) {
+            plan = new HandlerExecutionPlan(
+                    handlers, ImporterMetrics.PHASE_PRE_PARSE, metrics,
+                    importerConfig.isFuseCharStreamTransformers());
+            preParsePlan = plan;
+        }
+        return plan;
+    }
+    private HandlerExecutionPlan getPostParsePlan() {
+        IImporterHandler[] handlers = importerConfig.getPostParseHandlers();
+        HandlerExecutionPlan plan = postParsePlan;
+        if (plan == null || !plan.isFor(handlers)) {
+            plan = new HandlerExecutionPlan(
+                    handlers, ImporterMetrics.PHASE_POST_PARSE, metrics,
+                    importerConfig.isFuseCharStreamTransformers());
+            postParsePlan = plan;
+        }
+        return plan;
+    }
+    
     private ImporterStatus executeHandlers(
-            ImporterDocument doc, List<ImporterDocument> childDocsHolder,
-            IImporterHandler[] handlers, boolean parsed)
+            ImporterDocument doc, ChildImporter childImporter,
+            HandlerExecutionPlan plan, boolean parsed)
             throws IOException, ImporterException {
-        if (handlers == null) {
-            return PASSING_FILTER_STATUS;
-        }
-        
-        IncludeMatchResolver includeResolver = new IncludeMatchResolver();
-        for (IImporterHandler h : handlers) {
-            if (h instanceof IDocumentTagger) {
-                tagDocument(doc, (IDocumentTagger) h, parsed);
-            } else if (h instanceof IDocumentTransformer) {
-                transformDocument(doc, (IDocumentTransformer) h, parsed);
-            } else if (h instanceof IDocumentSplitter) {
-                childDocsHolder.addAll(
-                        splitDocument(doc, (IDocumentSplitter) h, parsed));
-            } else if (h instanceof IDocumentFilter) {
+        boolean atLeastOneIncludeMatch = false;
+        for (int i = 0; i < plan.size(); i++) {
+            IImporterHandler h = plan.getHandler(i);
+            ComponentMetrics m = plan.getMetrics(i);
+            switch (plan.getKind(i)) {
+            case TAGGER:
+                tagDocument(doc, (IDocumentTagger) h, parsed, m);
+                break;
+            case TRANSFORMER:
+                int fusedEnd = plan.getFusedRunEnd(i);
+                if (fusedEnd - i > 1) {
+                    transformDocument(doc, plan, i, fusedEnd, parsed);
+                    i = fusedEnd - 1;
+                } else {
+                    transformDocument(
+                            doc, (IDocumentTransformer) h, parsed, m);
+                }
+                break;
+            case SPLITTER:
+                splitDocument(doc, (IDocumentSplitter) h, 
+                        parsed, childImporter, m);
+                break;
+            case FILTER:
                 IDocumentFilter filter = (IDocumentFilter) h;
-                boolean accepted = acceptDocument(doc, filter, parsed);
-                if (isMatchIncludeFilter((IOnMatchFilter) h)) {
-                    includeResolver.hasIncludes = true;
+                boolean accepted = acceptDocument(doc, filter, parsed, m);
+                if (plan.isIncludeFilter(i)) {
                     if (accepted) {
-                        includeResolver.atLeastOneIncludeMatch = true;
+                        atLeastOneIncludeMatch = true;
                     }
-                    continue;
-                }
-                // Deal with exclude and non-OnMatch filters
-                if (!accepted){
+                } else if (!accepted) {
+                    // Deal with exclude and non-OnMatch filters
                     return new ImporterStatus(filter);
                 }
-            } else {
+                break;
+            default:
                 LOG.error("Unsupported Import Handler: " + h);
             }
         }
         
-        if (!includeResolver.passes()) {
+        if (plan.hasIncludeFilters() && !atLeastOneIncludeMatch) {
             return new ImporterStatus(Status.REJECTED,
                     "None of the filters with onMatch being INCLUDE got "
                   + "matched.");
@@ -368,24 +749,8 @@ public class Importer {
         return PASSING_FILTER_STATUS;
     }
     
-    private static class IncludeMatchResolver {
-        private boolean hasIncludes = false;
-        private boolean atLeastOneIncludeMatch = false;
-        public boolean passes() {
-            if (hasIncludes && !atLeastOneIncludeMatch) {
-                return false;
-            }
-            return true;
-        }
-    }
-    
-    
-    private boolean isMatchIncludeFilter(IOnMatchFilter filter) {
-        return OnMatch.INCLUDE == filter.getOnMatch();
-    }
-    
     private void parseDocument(
-            ImporterDocument doc, List<ImporterDocument> embeddedDocs)
+            ImporterDocument doc, ChildImporter childImporter)
             throws IOException, ImporterException {
         
         IDocumentParserFactory factory = importerConfig.getParserFactory();
@@ -397,31 +762,50 @@ public class Importer {
             return;
         }
         
+        //--- Parse Cache ---
+        String cacheKey = null;
+        Map<String, List<String>> metaBeforeParse = null;
+        ChildDocumentCounter childCounter = null;
+        IChildDocumentConsumer childConsumer = childImporter;
+        String parserIdentity = null;
+        if (parseCache != null) {
+            parserIdentity = getParserIdentity(parser);
+        }
+        if (parserIdentity != null) {
+            cacheKey = ParseCache.createKey(doc.getContent(), parserIdentity 
+                  + "|" + doc.getContentType() + "|" 
+                  + doc.getContentEncoding());
+            doc.getContent().rewind();
+            if (loadCachedParse(doc, cacheKey)) {
+                return;
+            }
+            metaBeforeParse = ParseCache.snapshot(doc.getMetadata());
+            childCounter = new ChildDocumentCounter(childConsumer);
+            childConsumer = childCounter;
+        }
+        
+        long startTime = childImporter.nanoTime();
         CachedOutputStream out = createOutputStream();
+        CountingOutputStream countingOut = new CountingOutputStream(out);
         OutputStreamWriter output = new OutputStreamWriter(
-                out, CharEncoding.UTF_8);
+                countingOut, CharEncoding.UTF_8);
 
         try {
-            List<ImporterDocument> nestedDocs = 
-                    parser.parseDocument(doc, output);
-            if (doc.getContentType() == null) {
-                String ct = doc.getMetadata().getString(
-                                ImporterMetadata.DOC_CONTENT_TYPE);
-                if (StringUtils.isNotBlank(ct)) {
-                    doc.setContentType(ContentType.valueOf(ct));
-                }
-            }
-            if (StringUtils.isBlank(doc.getContentEncoding())) {
-                doc.setContentEncoding(doc.getMetadata().getString(
-                        ImporterMetadata.DOC_CONTENT_ENCODING));
-            }
-            if (nestedDocs != null) {
-                embeddedDocs.addAll(nestedDocs);
+            if (parser instanceof IStreamingDocumentParser) {
+                ((IStreamingDocumentParser) parser).parseDocument(
+                        doc, output, childConsumer);
+            } else {
+                consumeChildDocuments(
+                        parser.parseDocument(doc, output), childConsumer);
             }
+            applyParsedContentTypeAndEncoding(doc);
         } catch (DocumentParserException e) {
             IOUtils.closeQuietly(out);
             throw e;
         }
+        metrics.getParserMetrics(parser.getClass().getSimpleName()).record(
+                childImporter.nanoTime() - startTime, 0, 
+                countingOut.getByteCount(), false);
         
         if (out.isCacheEmpty()) {
             if (LOG.isDebugEnabled()) {
@@ -442,21 +826,101 @@ public class Importer {
             }
             doc.setContent(newInputStream);
         }
+        
+        // Documents with children are not cached, since children
+        // would not be extracted again on a cache hit.
+        if (cacheKey != null && childCounter.count == 0) {
+            parseCache.put(cacheKey, ParseCache.diff(
+                    metaBeforeParse, doc.getMetadata()), doc.getContent());
+            doc.getContent().rewind();
+        }
+    }
+    
+    // Identifies a parser and its configuration in a way that is the same
+    // across restarts, or null if it cannot be (parsing is then not
+    // cached).
+    private String getParserIdentity(IDocumentParser parser) {
+        String className = parser.getClass().getName();
+        if (parser instanceof IXMLConfigurable) {
+            StringWriter xml = new StringWriter();
+            try {
+                ((IXMLConfigurable) parser).saveToXML(xml);
+            } catch (IOException e) {
+                LOG.debug("Could not obtain parser configuration, "
+                        + "parsing will not be cached: " + className, e);
+                return null;
+            }
+            return className + "|" + xml;
+        }
+        if (parser instanceof AbstractTikaParser) {
+            return className + "|" + parser;
+        }
+        return null;
+    }
+    
+    private boolean loadCachedParse(ImporterDocument doc, String cacheKey)
+            throws IOException {
+        ParseCache.CachedResult cached = parseCache.get(cacheKey);
+        if (cached == null) {
+            return false;
+        }
+        CachedOutputStream out = createOutputStream();
+        CachedInputStream newInputStream = null;
+        try {
+            IOUtils.copy(cached.getText(), out);
+            newInputStream = out.getInputStream();
+        } finally {
+            IOUtils.closeQuietly(cached.getText());
+            IOUtils.closeQuietly(out);
+        }
+        for (Entry<String, List<String>> en : 
+                cached.getMetadata().entrySet()) {
+            List<String> values = en.getValue();
+            doc.getMetadata().setString(
+                    en.getKey(), values.toArray(new String[values.size()]));
+        }
+        applyParsedContentTypeAndEncoding(doc);
+        doc.getContent().dispose();
+        doc.setContent(newInputStream);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Parsing result obtained from cache for: " 
+                    + doc.getReference());
+        }
+        return true;
+    }
+    
+    private void applyParsedContentTypeAndEncoding(ImporterDocument doc) {
+        if (doc.getContentType() == null) {
+            String ct = doc.getMetadata().getString(
+                            ImporterMetadata.DOC_CONTENT_TYPE);
+            if (StringUtils.isNotBlank(ct)) {
+                doc.setContentType(ContentType.valueOf(ct));
+            }
+        }
+        if (StringUtils.isBlank(doc.getContentEncoding())) {
+            doc.setContentEncoding(doc.getMetadata().getString(
+                    ImporterMetadata.DOC_CONTENT_ENCODING));
+        }
     }
 
     private void tagDocument(ImporterDocument doc, IDocumentTagger tagger,
-            boolean parsed) throws ImporterHandlerException {
-        tagger.tagDocument(doc.getReference(), 
-                doc.getContent(), doc.getMetadata(), parsed);
+            boolean parsed, ComponentMetrics m) 
+                    throws ImporterHandlerException {
+        long startTime = System.nanoTime();
+        CountingInputStream in = new CountingInputStream(doc.getContent());
+        tagger.tagDocument(doc.getReference(), in, doc.getMetadata(), parsed);
+        m.record(System.nanoTime() - startTime, in.getByteCount(), 0, false);
     }
     
-    private boolean acceptDocument(
-            ImporterDocument doc, IDocumentFilter filter, boolean parsed)
+    private boolean acceptDocument(ImporterDocument doc, 
+            IDocumentFilter filter, boolean parsed, ComponentMetrics m)
             throws ImporterHandlerException {
-        
+        long startTime = System.nanoTime();
+        CountingInputStream in = new CountingInputStream(doc.getContent());
         boolean accepted = filter.acceptDocument(
-                doc.getReference(),
-                doc.getContent(), doc.getMetadata(), parsed);
+                doc.getReference(), in, doc.getMetadata(), parsed);
+        m.record(System.nanoTime() - startTime, 
+                in.getByteCount(), 0, !accepted);
         doc.getContent().rewind();
         if (!accepted) {
             if (LOG.isDebugEnabled()) {
@@ -468,14 +932,19 @@ public class Importer {
     }
 
     private void transformDocument(ImporterDocument doc, 
-            IDocumentTransformer transformer, boolean parsed) 
-                    throws ImporterHandlerException, IOException {
+            IDocumentTransformer transformer, boolean parsed, 
+            ComponentMetrics m) throws ImporterHandlerException, IOException {
         
+        long startTime = System.nanoTime();
         CachedInputStream  in = doc.getContent();
         CachedOutputStream out = createOutputStream();
+        CountingInputStream countingIn = new CountingInputStream(in);
+        CountingOutputStream countingOut = new CountingOutputStream(out);
         
-        transformer.transformDocument(
-                doc.getReference(), in, out, doc.getMetadata(), parsed);
+        transformer.transformDocument(doc.getReference(), 
+                countingIn, countingOut, doc.getMetadata(), parsed);
+        m.record(System.nanoTime() - startTime, 
+                countingIn.getByteCount(), countingOut.getByteCount(), false);
 
         CachedInputStream newInputStream = null;
         if (out.isCacheEmpty()) {
@@ -497,18 +966,82 @@ public class Importer {
         doc.setContent(newInputStream);
     }
     
-    private List<ImporterDocument> splitDocument(
-            ImporterDocument doc, IDocumentSplitter h, boolean parsed)
-                    throws ImporterHandlerException, IOException {
+    // Executes consecutive character stream transformers in a single pass.
+    private void transformDocument(ImporterDocument doc, 
+            HandlerExecutionPlan plan, int start, int end, boolean parsed)
+            throws ImporterHandlerException, IOException {
+        List<AbstractCharStreamTransformer> transformers = new ArrayList<>();
+        List<ComponentMetrics> transformerMetrics = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            AbstractCharStreamTransformer t = 
+                    (AbstractCharStreamTransformer) plan.getHandler(i);
+            if (t.isApplicableDocument(
+                    doc.getReference(), doc.getMetadata(), parsed)) {
+                transformers.add(t);
+                transformerMetrics.add(plan.getMetrics(i));
+            }
+        }
+        if (transformers.isEmpty()) {
+            return;
+        }
+        if (transformers.size() == 1) {
+            transformDocument(doc, transformers.get(0), 
+                    parsed, transformerMetrics.get(0));
+            return;
+        }
+
+        CachedInputStream  in = doc.getContent();
+        CachedOutputStream out = createOutputStream();
+        Reader reader = new InputStreamReader(in, CharEncoding.UTF_8);
+        Writer writer = new OutputStreamWriter(out, CharEncoding.UTF_8);
+        new CharStreamPipeline(getPipelineExecutor()).transform(
+                doc.getReference(), reader, writer, doc.getMetadata(), 
+                parsed, transformers, transformerMetrics);
+        writer.flush();
+
+        CachedInputStream newInputStream = null;
+        if (out.isCacheEmpty()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Transformers " + transformers 
+                        + " did not return any content for: " 
+                        + doc.getReference());
+            }
+            IOUtils.closeQuietly(out);
+            in.rewind();
+            newInputStream = in;
+        } else {
+            in.dispose();
+            try {
+                newInputStream = out.getInputStream();
+            } finally {
+                IOUtils.closeQuietly(out);
+            }
+        }
+        doc.setContent(newInputStream);
+    }
+    
+    private void splitDocument(ImporterDocument doc, IDocumentSplitter h, 
+            boolean parsed, ChildImporter childImporter, 
+            ComponentMetrics m) throws ImporterHandlerException, IOException {
 
+        long startTime = childImporter.nanoTime();
         CachedInputStream  in = doc.getContent();
         CachedOutputStream out = createOutputStream();
+        CountingInputStream countingIn = new CountingInputStream(in);
+        CountingOutputStream countingOut = new CountingOutputStream(out);
         
         SplittableDocument sdoc = new SplittableDocument(
-                doc.getReference(), in, doc.getMetadata());
+                doc.getReference(), countingIn, doc.getMetadata());
         
-        List<ImporterDocument> childDocs = h.splitDocument(
-                sdoc, out, streamFactory, parsed);
+        if (h instanceof IStreamingDocumentSplitter) {
+            ((IStreamingDocumentSplitter) h).splitDocument(
+                    sdoc, countingOut, streamFactory, parsed, childImporter);
+        } else {
+            consumeChildDocuments(h.splitDocument(
+                    sdoc, countingOut, streamFactory, parsed), childImporter);
+        }
+        m.record(childImporter.nanoTime() - startTime, 
+                countingIn.getByteCount(), countingOut.getByteCount(), false);
         try {
             // If writing was performed, get new content
             if (!out.isCacheEmpty()) {
@@ -518,14 +1051,222 @@ public class Importer {
         } finally {
             IOUtils.closeQuietly(out);
         }
-        
-        if (childDocs == null) {
-            return new ArrayList<ImporterDocument>();
+    }
+    
+    private void consumeChildDocuments(List<ImporterDocument> childDocs,
+            IChildDocumentConsumer childConsumer) {
+        if (childDocs != null) {
+            for (ImporterDocument childDoc : childDocs) {
+                childConsumer.consumeChildDocument(childDoc);
+            }
         }
-        return childDocs;
     }
     
     private CachedOutputStream createOutputStream() {
         return streamFactory.newOuputStream();
     }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Math.max(1, 
+                    importerConfig.getMaxConcurrentImports()), 
+                    new ImporterThreadFactory());
+        }
+        return executor;
+    }
+    
+    // Threads are only blocked on each other's pipes, so the pool is not
+    // bounded (one thread per fused transformer being executed).
+    private synchronized ExecutorService getPipelineExecutor() {
+        if (pipelineExecutor == null) {
+            pipelineExecutor = Executors.newCachedThreadPool(
+                    new ImporterThreadFactory());
+        }
+        return pipelineExecutor;
+    }
+    
+    private synchronized ForkJoinPool getNestedImportPool() {
+        if (nestedImportPool == null) {
+            nestedImportPool = new ForkJoinPool(
+                    importerConfig.getMaxNestedImportThreads());
+        }
+        return nestedImportPool;
+    }
+    
+    private static class ChildDocumentCounter 
+            implements IChildDocumentConsumer {
+        private final IChildDocumentConsumer delegate;
+        private int count;
+        public ChildDocumentCounter(IChildDocumentConsumer delegate) {
+            super();
+            this.delegate = delegate;
+        }
+        @Override
+        public void consumeChildDocument(ImporterDocument childDoc) {
+            count++;
+            delegate.consumeChildDocument(childDoc);
+        }
+    }
+    
+    // Imports child documents as they are produced by splitters and 
+    // parsers, rather than once they have all been extracted.  When
+    // nested imports are multi-threaded, only a bounded number of child
+    // documents are in flight at once, so extraction cannot run too far
+    // ahead of importing.  Responses are kept in the same order as the 
+    // child documents, regardless of the order in which they complete.
+    // Children are counted against the parent document guard, each
+    // child being imported with its own guard. Time spent importing
+    // children (or waiting for them) is tracked so it can be excluded 
+    // from the parent document metrics.
+    private class ChildImporter implements IChildDocumentConsumer {
+        private final NestedDocumentGuard guard;
+        private final int threads;
+        private long importTime;
+        private final List<ImporterResponse> responses = new ArrayList<>();
+        private final LinkedList<NestedImportTask> inFlight = 
+                new LinkedList<>();
+        public ChildImporter(NestedDocumentGuard guard) {
+            super();
+            this.guard = guard;
+            this.threads = importerConfig.getMaxNestedImportThreads();
+        }
+        // Current time, minus the time spent importing children.
+        public long nanoTime() {
+            return System.nanoTime() - importTime;
+        }
+        @Override
+        public void consumeChildDocument(ImporterDocument childDoc) {
+            long startTime = System.nanoTime();
+            try {
+                importChildDocument(childDoc);
+            } finally {
+                importTime += System.nanoTime() - startTime;
+            }
+        }
+        private void importChildDocument(ImporterDocument childDoc) {
+            try {
+                guard.addChild();
+            } catch (NestedDocumentLimitException e) {
+                childDoc.getContent().dispose();
+                throw e;
+            }
+            NestedDocumentGuard childGuard = guard.newChildGuard();
+            if (threads < 2) {
+                responses.add(importNestedDocument(childDoc, childGuard));
+                return;
+            }
+            if (inFlight.size() >= threads * 2) {
+                responses.add(inFlight.removeFirst().join());
+            }
+            NestedImportTask task = new NestedImportTask(childDoc, childGuard);
+            ForkJoinPool pool = getNestedImportPool();
+            if (ForkJoinTask.getPool() == pool) {
+                // Deeper levels: fork in the same pool. Joining threads
+                // execute pending tasks instead of blocking.
+                task.fork();
+            } else {
+                pool.execute(task);
+            }
+            inFlight.add(task);
+        }
+        public List<ImporterResponse> getResponses() {
+            long startTime = System.nanoTime();
+            while (!inFlight.isEmpty()) {
+                responses.add(inFlight.removeFirst().join());
+            }
+            importTime += System.nanoTime() - startTime;
+            return responses;
+        }
+    }
+    
+    private class NestedImportTask extends RecursiveTask<ImporterResponse> {
+        private static final long serialVersionUID = 1L;
+        private ImporterDocument childDoc;
+        private final NestedDocumentGuard guard;
+        public NestedImportTask(
+                ImporterDocument childDoc, NestedDocumentGuard guard) {
+            super();
+            this.childDoc = childDoc;
+            this.guard = guard;
+        }
+        @Override
+        protected ImporterResponse compute() {
+            try {
+                return importNestedDocument(childDoc, guard);
+            } finally {
+                // do not hold on to the document once imported
+                childDoc = null;
+            }
+        }
+    }
+    
+    private static class ImporterThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+        private final AtomicInteger threadCount = new AtomicInteger();
+        private final int poolNumber = POOL_COUNT.incrementAndGet();
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "importer-" + poolNumber 
+                    + "-thread-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
+    private class ImportBatchIterator implements Iterator<ImporterResponse> {
+        private final Iterator<ImportRequest> requests;
+        private final CompletionService<ImporterResponse> completion;
+        private final int maxInFlight;
+        private int inFlight;
+        public ImportBatchIterator(Iterator<ImportRequest> requests,
+                ExecutorService executor, int maxInFlight) {
+            super();
+            this.requests = requests;
+            this.completion = 
+                    new ExecutorCompletionService<ImporterResponse>(executor);
+            this.maxInFlight = maxInFlight;
+            submitRequests();
+        }
+        @Override
+        public synchronized boolean hasNext() {
+            return inFlight > 0;
+        }
+        @Override
+        public synchronized ImporterResponse next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException(
+                        "No more documents to import.");
+            }
+            try {
+                Future<ImporterResponse> future = completion.take();
+                inFlight--;
+                submitRequests();
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImporterRuntimeException(
+                        "Interrupted while waiting for imported documents.", e);
+            } catch (ExecutionException e) {
+                throw new ImporterRuntimeException(
+                        "Could not import document.", e.getCause());
+            }
+        }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "Cannot remove imported documents.");
+        }
+        private void submitRequests() {
+            while (inFlight < maxInFlight && requests.hasNext()) {
+                final ImportRequest request = requests.next();
+                completion.submit(new Callable<ImporterResponse>() {
+                    @Override
+                    public ImporterResponse call() {
+                        return importDocument(request);
+                    }
+                });
+                inFlight++;
+            }
+        }
+    }
 }
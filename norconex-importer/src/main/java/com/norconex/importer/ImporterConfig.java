@@ -30,6 +30,7 @@ import org.apache.commons.configuration.tree.ExpressionEngine;
 import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
@@ -38,10 +39,13 @@ import com.norconex.commons.lang.config.ConfigurationUtil;
 import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.unit.DataUnit;
 import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+import com.norconex.importer.doc.NestedDocumentGuard;
 import com.norconex.importer.handler.IImporterHandler;
+import com.norconex.importer.handler.transformer.AbstractCharStreamTransformer;
 import com.norconex.importer.parser.GenericDocumentParserFactory;
 import com.norconex.importer.parser.IDocumentParserFactory;
 import com.norconex.importer.response.IImporterResponseProcessor;
+import com.norconex.importer.util.BufferMemoryBudget;
 
 /**
  * Importer configuration.
@@ -58,6 +62,11 @@ public class ImporterConfig implements IXMLConfigurable {
             (int) DataUnit.MB.toBytes(1);
     public static final int DEFAULT_MAX_FILE_POOL_CACHE_SIZE = 
             (int) DataUnit.MB.toBytes(10);
+    public static final int DEFAULT_MAX_CONCURRENT_IMPORTS = 
+            Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_MAX_NESTED_IMPORT_THREADS = 1;
+    public static final long DEFAULT_PARSE_CACHE_MAX_SIZE = 
+            DataUnit.GB.toBytes(1);
     
     private IDocumentParserFactory documentParserFactory = 
             new GenericDocumentParserFactory();
@@ -69,6 +78,17 @@ public class ImporterConfig implements IXMLConfigurable {
     private File tempDir = new File(DEFAULT_TEMP_DIR_PATH);
     private int maxFileCacheSize = DEFAULT_MAX_FILE_CACHE_SIZE;
     private int maxFilePoolCacheSize = DEFAULT_MAX_FILE_POOL_CACHE_SIZE;
+    private int maxConcurrentImports = DEFAULT_MAX_CONCURRENT_IMPORTS;
+    private int maxNestedImportThreads = DEFAULT_MAX_NESTED_IMPORT_THREADS;
+    private boolean registerMetricsMBean;
+    private File parseCacheDir;
+    private long parseCacheMaxSize = DEFAULT_PARSE_CACHE_MAX_SIZE;
+    private boolean fuseCharStreamTransformers;
+    private long maxBufferMemory = BufferMemoryBudget.getDefaultMaxSize();
+    private int maxNestedDepth = -1;
+    private int maxNestedChildren = -1;
+    private long maxNestedExpandedSize = -1;
+    private double maxNestedCompressionRatio = -1;
     
     
     public IDocumentParserFactory getParserFactory() {
@@ -120,6 +140,263 @@ public class ImporterConfig implements IXMLConfigurable {
     public void setMaxFilePoolCacheSize(int maxFilePoolCacheSize) {
         this.maxFilePoolCacheSize = maxFilePoolCacheSize;
     }
+
+    /**
+     * Gets the maximum number of documents imported at the same time
+     * when importing in batch or asynchronously with the importer's own 
+     * threads.
+     * @return maximum number of concurrent imports
+     * @since 2.1.0
+     */
+    public int getMaxConcurrentImports() {
+        return maxConcurrentImports;
+    }
+    /**
+     * Sets the maximum number of documents imported at the same time
+     * when importing in batch or asynchronously with the importer's own 
+     * threads.  Default is the number of available processors.
+     * @param maxConcurrentImports maximum number of concurrent imports
+     * @since 2.1.0
+     */
+    public void setMaxConcurrentImports(int maxConcurrentImports) {
+        this.maxConcurrentImports = maxConcurrentImports;
+    }
+
+    /**
+     * Gets the maximum number of threads used to import nested documents
+     * (embedded or split documents) in parallel.
+     * @return maximum number of threads for nested documents
+     * @since 2.1.0
+     */
+    public int getMaxNestedImportThreads() {
+        return maxNestedImportThreads;
+    }
+    /**
+     * Sets the maximum number of threads used to import nested documents
+     * (embedded or split documents) in parallel.  The threads are shared
+     * by all nesting levels: nested documents of nested documents are 
+     * executed by the same threads. Nested responses are always 
+     * returned in the same order as their documents were extracted.
+     * Default is 1, which imports nested documents sequentially, 
+     * on the calling thread.
+     * @param maxNestedImportThreads maximum number of threads for nested 
+     *        documents
+     * @since 2.1.0
+     */
+    public void setMaxNestedImportThreads(int maxNestedImportThreads) {
+        this.maxNestedImportThreads = maxNestedImportThreads;
+    }
+
+    /**
+     * Gets whether the importer metrics are registered as a JMX MBean.
+     * @return <code>true</code> if registered as an MBean
+     * @since 2.1.0
+     */
+    public boolean isRegisterMetricsMBean() {
+        return registerMetricsMBean;
+    }
+    /**
+     * Sets whether to register the importer metrics as a JMX MBean
+     * when the importer is created (unregistered on 
+     * {@link Importer#shutdown()}).  Metrics are always available 
+     * with {@link Importer#getMetrics()}.  Default is <code>false</code>.
+     * @param registerMetricsMBean <code>true</code> to register as an MBean
+     * @since 2.1.0
+     */
+    public void setRegisterMetricsMBean(boolean registerMetricsMBean) {
+        this.registerMetricsMBean = registerMetricsMBean;
+    }
+
+    /**
+     * Gets the directory where parsing results are cached.
+     * @return parse cache directory, or <code>null</code> if disabled
+     * @since 2.1.0
+     */
+    public File getParseCacheDir() {
+        return parseCacheDir;
+    }
+    /**
+     * Sets the directory where parsing results (extracted text and 
+     * metadata) are cached, so documents with the same content are not
+     * parsed again, even after a restart.  Results are cached by content
+     * digest and parser configuration.  Documents having embedded 
+     * documents extracted as separate documents are not cached.
+     * Only parsers with a configuration that can be identified 
+     * across restarts have their results cached: parsers extending
+     * {@link com.norconex.importer.parser.impl.AbstractTikaParser} and 
+     * parsers implementing {@link IXMLConfigurable} (identified by their
+     * XML configuration).
+     * Default is <code>null</code> (no caching).
+     * @param parseCacheDir parse cache directory
+     * @since 2.1.0
+     */
+    public void setParseCacheDir(File parseCacheDir) {
+        this.parseCacheDir = parseCacheDir;
+    }
+    /**
+     * Gets the maximum size of the parse cache, in bytes.
+     * @return maximum parse cache size
+     * @since 2.1.0
+     */
+    public long getParseCacheMaxSize() {
+        return parseCacheMaxSize;
+    }
+    /**
+     * Sets the maximum size of the parse cache, in bytes.  When exceeded, 
+     * the least recently used entries are deleted.  Default is 1 GB.
+     * @param parseCacheMaxSize maximum parse cache size
+     * @since 2.1.0
+     */
+    public void setParseCacheMaxSize(long parseCacheMaxSize) {
+        this.parseCacheMaxSize = parseCacheMaxSize;
+    }
+
+    /**
+     * Gets whether consecutive character stream transformers are
+     * executed in a single pass.
+     * @return <code>true</code> if fused
+     * @since 2.1.0
+     */
+    public boolean isFuseCharStreamTransformers() {
+        return fuseCharStreamTransformers;
+    }
+    /**
+     * Sets whether consecutive transformers extending 
+     * {@link AbstractCharStreamTransformer} are executed in a single pass,
+     * each one streaming its output to the next one through a small 
+     * buffer (each in its own thread), instead of writing the full
+     * transformed content before the next transformer reads it back.
+     * When enabled:
+     * <ul>
+     *   <li>The "restrictTo" conditions of all fused transformers are
+     *       evaluated before the first one runs.  They do not see
+     *       metadata changes made by fused transformers before them.</li>
+     *   <li>Since fused transformers run concurrently, each one modifies
+     *       its own copy of the metadata.  Changes are applied to the 
+     *       document once they are all done, in transformer order.
+     *       Fused transformers do not see each other metadata changes.
+     *       </li>
+     *   <li>An empty output from fused transformers as a whole keeps 
+     *       the content unchanged (as for a single transformer).</li>
+     * </ul>
+     * Transformers relying on metadata set by other transformers
+     * should not be fused.  Default is <code>false</code>.
+     * @param fuseCharStreamTransformers <code>true</code> to fuse 
+     *        consecutive character stream transformers
+     * @since 2.1.0
+     */
+    public void setFuseCharStreamTransformers(
+            boolean fuseCharStreamTransformers) {
+        this.fuseCharStreamTransformers = fuseCharStreamTransformers;
+    }
+
+    /**
+     * Gets the maximum memory handlers can use to buffer document content,
+     * for all documents being imported.
+     * @return maximum buffer memory, in bytes
+     * @since 2.1.0
+     */
+    public long getMaxBufferMemory() {
+        return maxBufferMemory;
+    }
+    /**
+     * Sets the maximum memory handlers loading content in memory
+     * (e.g. string-based taggers, transformers, and filters) can use
+     * together, for all documents being imported at once.  Each document
+     * can use up to an equal share of it.  Documents bigger than their 
+     * share are processed in chunks.  Default is a quarter of the JVM 
+     * maximum heap size (see {@link BufferMemoryBudget}).
+     * @param maxBufferMemory maximum buffer memory, in bytes
+     * @since 2.1.0
+     */
+    public void setMaxBufferMemory(long maxBufferMemory) {
+        this.maxBufferMemory = maxBufferMemory;
+    }
+
+    /**
+     * Gets the maximum depth of nested documents.
+     * @return maximum nesting depth, or -1 for no maximum
+     * @since 2.1.0
+     */
+    public int getMaxNestedDepth() {
+        return maxNestedDepth;
+    }
+    /**
+     * Sets the maximum depth of nested documents (embedded or split 
+     * documents), the imported document being at depth zero.
+     * A document producing nested documents deeper than this is rejected.
+     * Default is -1 (no maximum).
+     * @param maxNestedDepth maximum nesting depth, or -1 for no maximum
+     * @since 2.1.0
+     */
+    public void setMaxNestedDepth(int maxNestedDepth) {
+        this.maxNestedDepth = maxNestedDepth;
+    }
+    /**
+     * Gets the maximum number of nested documents per document.
+     * @return maximum number of nested documents, or -1 for no maximum
+     * @since 2.1.0
+     */
+    public int getMaxNestedChildren() {
+        return maxNestedChildren;
+    }
+    /**
+     * Sets the maximum number of nested documents (embedded or split
+     * documents) a single document can have.  A document producing more
+     * is rejected.  Default is -1 (no maximum).
+     * @param maxNestedChildren maximum number of nested documents, 
+     *        or -1 for no maximum
+     * @since 2.1.0
+     */
+    public void setMaxNestedChildren(int maxNestedChildren) {
+        this.maxNestedChildren = maxNestedChildren;
+    }
+    /**
+     * Gets the maximum number of bytes extracted as embedded documents
+     * from an imported document.
+     * @return maximum expanded size, or -1 for no maximum
+     * @since 2.1.0
+     */
+    public long getMaxNestedExpandedSize() {
+        return maxNestedExpandedSize;
+    }
+    /**
+     * Sets the maximum number of bytes extracted as embedded documents 
+     * from an imported document, all nesting levels combined.  
+     * Extraction stops as soon as it is exceeded, and the document 
+     * being extracted is rejected.  Default is -1 (no maximum).
+     * @param maxNestedExpandedSize maximum expanded size in bytes,
+     *        or -1 for no maximum
+     * @since 2.1.0
+     */
+    public void setMaxNestedExpandedSize(long maxNestedExpandedSize) {
+        this.maxNestedExpandedSize = maxNestedExpandedSize;
+    }
+    /**
+     * Gets the maximum compression ratio of documents with embedded 
+     * documents.
+     * @return maximum compression ratio, or -1 for no maximum
+     * @since 2.1.0
+     */
+    public double getMaxNestedCompressionRatio() {
+        return maxNestedCompressionRatio;
+    }
+    /**
+     * Sets the maximum number of bytes extracted as embedded documents
+     * for each byte read from their parent document (e.g. 100 for a zip
+     * file expanding to more than 100 times its size).  Only checked
+     * once more than {@link NestedDocumentGuard#MIN_RATIO_CHECK_SIZE} 
+     * bytes were extracted from the same document.  Extraction stops as 
+     * soon as it is exceeded, and the parent document is rejected.
+     * Default is -1 (no maximum).
+     * @param maxNestedCompressionRatio maximum compression ratio, 
+     *        or -1 for no maximum
+     * @since 2.1.0
+     */
+    public void setMaxNestedCompressionRatio(
+            double maxNestedCompressionRatio) {
+        this.maxNestedCompressionRatio = maxNestedCompressionRatio;
+    }
     @Override
     public void loadFromXML(Reader in) throws IOException {
         if (in == null) {
@@ -137,6 +414,42 @@ public class ImporterConfig implements IXMLConfigurable {
             //--- File Pool Mem Cache Size ------------------------------------------
             setMaxFilePoolCacheSize(xml.getInt("maxFilePoolCacheSize", 
                     ImporterConfig.DEFAULT_MAX_FILE_POOL_CACHE_SIZE));
+
+            //--- Max Concurrent Imports ---------------------------------------
+            setMaxConcurrentImports(xml.getInt("maxConcurrentImports", 
+                    ImporterConfig.DEFAULT_MAX_CONCURRENT_IMPORTS));
+
+            //--- Max Nested Import Threads ------------------------------------
+            setMaxNestedImportThreads(xml.getInt("maxNestedImportThreads", 
+                    ImporterConfig.DEFAULT_MAX_NESTED_IMPORT_THREADS));
+
+            //--- Register Metrics MBean ---------------------------------------
+            setRegisterMetricsMBean(
+                    xml.getBoolean("registerMetricsMBean", false));
+
+            //--- Parse Cache --------------------------------------------------
+            String cacheDir = xml.getString("parseCacheDir", null);
+            if (StringUtils.isNotBlank(cacheDir)) {
+                setParseCacheDir(new File(cacheDir));
+            }
+            setParseCacheMaxSize(xml.getLong("parseCacheMaxSize", 
+                    ImporterConfig.DEFAULT_PARSE_CACHE_MAX_SIZE));
+
+            //--- Fuse Character Stream Transformers ---------------------------
+            setFuseCharStreamTransformers(
+                    xml.getBoolean("fuseCharStreamTransformers", false));
+
+            //--- Max Buffer Memory --------------------------------------------
+            setMaxBufferMemory(xml.getLong("maxBufferMemory", 
+                    BufferMemoryBudget.getDefaultMaxSize()));
+
+            //--- Nested Document Limits ---------------------------------------
+            setMaxNestedDepth(xml.getInt("maxNestedDepth", -1));
+            setMaxNestedChildren(xml.getInt("maxNestedChildren", -1));
+            setMaxNestedExpandedSize(
+                    xml.getLong("maxNestedExpandedSize", -1));
+            setMaxNestedCompressionRatio(
+                    xml.getDouble("maxNestedCompressionRatio", -1));
             
             //--- Pre-Import Handlers ------------------------------------------
             setPreParseHandlers(loadImportHandlers(xml, "preParseHandlers"));
@@ -205,6 +518,29 @@ public class ImporterConfig implements IXMLConfigurable {
                     "maxFileCacheSize", getMaxFileCacheSize());
             writer.writeElementInteger(
                     "maxFilePoolCacheSize", getMaxFilePoolCacheSize());
+            writer.writeElementInteger(
+                    "maxConcurrentImports", getMaxConcurrentImports());
+            writer.writeElementInteger(
+                    "maxNestedImportThreads", getMaxNestedImportThreads());
+            writer.writeElementString("registerMetricsMBean", 
+                    Boolean.toString(isRegisterMetricsMBean()));
+            if (getParseCacheDir() != null) {
+                writer.writeElementString(
+                        "parseCacheDir", getParseCacheDir().toString());
+            }
+            writer.writeElementString("parseCacheMaxSize", 
+                    Long.toString(getParseCacheMaxSize()));
+            writer.writeElementString("fuseCharStreamTransformers", 
+                    Boolean.toString(isFuseCharStreamTransformers()));
+            writer.writeElementString("maxBufferMemory", 
+                    Long.toString(getMaxBufferMemory()));
+            writer.writeElementInteger("maxNestedDepth", getMaxNestedDepth());
+            writer.writeElementInteger(
+                    "maxNestedChildren", getMaxNestedChildren());
+            writer.writeElementString("maxNestedExpandedSize", 
+                    Long.toString(getMaxNestedExpandedSize()));
+            writer.writeElementString("maxNestedCompressionRatio", 
+                    Double.toString(getMaxNestedCompressionRatio()));
             writer.flush();
             
             writeHandlers(out, "preParseHandlers", getPreParseHandlers());
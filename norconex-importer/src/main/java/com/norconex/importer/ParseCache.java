@@ -0,0 +1,295 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.norconex.importer.doc.ImporterMetadata;
+
+/**
+ * On-disk cache of parsing results (extracted text and the metadata
+ * added by the parser), keyed by a digest of the document content
+ * combined with the parser identity.  The total size of cached entries
+ * is bounded, evicting the least recently used entries first. The
+ * usage order survives restarts since it is based on file modification
+ * dates.
+ * <p />
+ * Each entry is a single file: the length of the serialized metadata,
+ * the serialized metadata, then the extracted text.  Entries are written
+ * to a temporary file first, then moved, so partial entries are never
+ * read.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+class ParseCache {
+
+    private static final Logger LOG = LogManager.getLogger(ParseCache.class);
+
+    private static final String ENTRY_EXTENSION = ".parse";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private final File dir;
+    private final long maxSize;
+    // file sizes, by key, in access order
+    private final LinkedHashMap<String, Long> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    public ParseCache(File dir, long maxSize) {
+        super();
+        this.dir = dir;
+        this.maxSize = maxSize;
+        try {
+            FileUtils.forceMkdir(dir);
+        } catch (IOException e) {
+            throw new ImporterRuntimeException(
+                    "Cannot create parse cache directory: " + dir, e);
+        }
+        loadEntries();
+    }
+
+    /**
+     * Creates a cache key for the given content and parser.
+     * @param content document content (read fully, not rewound)
+     * @param parserIdentity parser class and configuration
+     * @return cache key
+     * @throws IOException could not read content
+     */
+    public static String createKey(InputStream content, String parserIdentity)
+            throws IOException {
+        return DigestUtils.sha1Hex(DigestUtils.sha1Hex(content)
+                + "|" + parserIdentity);
+    }
+
+    /**
+     * Gets a cached parsing result.
+     * @param key cache key
+     * @return cached result or <code>null</code> if not cached
+     */
+    public CachedResult get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        File file = getFile(key);
+        file.setLastModified(System.currentTimeMillis());
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            byte[] metaBytes = new byte[in.readInt()];
+            in.readFully(metaBytes);
+            ObjectInputStream metaIn = new ObjectInputStream(
+                    new ByteArrayInputStream(metaBytes));
+            @SuppressWarnings("unchecked")
+            Map<String, List<String>> meta =
+                    (Map<String, List<String>>) metaIn.readObject();
+            return new CachedResult(meta, in);
+        } catch (FileNotFoundException e) {
+            // evicted by another thread in between
+            IOUtils.closeQuietly(in);
+            return null;
+        } catch (IOException | ClassNotFoundException e) {
+            IOUtils.closeQuietly(in);
+            LOG.warn("Invalid parse cache entry, deleting it: " + file, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Caches a parsing result.
+     * @param key cache key
+     * @param metadata metadata added or modified by the parser
+     * @param text extracted text (not closed)
+     */
+    public void put(String key, Map<String, List<String>> metadata,
+            InputStream text) {
+        File tempFile = new File(dir, key + "-"
+                + Thread.currentThread().getId() + TEMP_EXTENSION);
+        DataOutputStream out = null;
+        try {
+            ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+            ObjectOutputStream metaOut = new ObjectOutputStream(metaBytes);
+            metaOut.writeObject(new HashMap<>(metadata));
+            metaOut.close();
+
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)));
+            out.writeInt(metaBytes.size());
+            metaBytes.writeTo(out);
+            IOUtils.copy(text, out);
+            out.close();
+            long size = tempFile.length();
+            if (size > maxSize) {
+                FileUtils.deleteQuietly(tempFile);
+                return;
+            }
+            Files.move(tempFile.toPath(), getFile(key).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                Long previous = entries.put(key, size);
+                if (previous != null) {
+                    totalSize -= previous;
+                }
+                totalSize += size;
+                evict();
+            }
+        } catch (IOException e) {
+            IOUtils.closeQuietly(out);
+            FileUtils.deleteQuietly(tempFile);
+            LOG.warn("Could not cache parsing result.", e);
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalSize -= size;
+        }
+        FileUtils.deleteQuietly(getFile(key));
+    }
+
+    // must be called while synchronized
+    private void evict() {
+        Iterator<Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalSize > maxSize && it.hasNext()) {
+            Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalSize -= eldest.getValue();
+            FileUtils.deleteQuietly(getFile(eldest.getKey()));
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(dir, key + ENTRY_EXTENSION);
+    }
+
+    private synchronized void loadEntries() {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                if (file.getName().endsWith(TEMP_EXTENSION)) {
+                    // leftover from an interrupted write
+                    FileUtils.deleteQuietly(file);
+                    return false;
+                }
+                return file.isFile()
+                        && file.getName().endsWith(ENTRY_EXTENSION);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            long size = file.length();
+            entries.put(name.substring(
+                    0, name.length() - ENTRY_EXTENSION.length()), size);
+            totalSize += size;
+        }
+        evict();
+    }
+
+    /**
+     * Metadata differences computed from a before-parsing snapshot.
+     * Only added or modified fields are kept (parsers do not remove any).
+     * @param before metadata snapshot taken before parsing
+     * @param after metadata after parsing
+     * @return modified fields
+     */
+    public static Map<String, List<String>> diff(
+            Map<String, List<String>> before, ImporterMetadata after) {
+        Map<String, List<String>> diff = new HashMap<>();
+        for (Entry<String, List<String>> en : after.entrySet()) {
+            List<String> oldValues = before.get(en.getKey());
+            if (oldValues == null || !oldValues.equals(en.getValue())) {
+                diff.put(en.getKey(), new ArrayList<>(en.getValue()));
+            }
+        }
+        return diff;
+    }
+    /**
+     * Takes a copy of metadata to later find what changed.
+     * @param metadata metadata
+     * @return copy of metadata
+     */
+    public static Map<String, List<String>> snapshot(
+            ImporterMetadata metadata) {
+        Map<String, List<String>> snapshot = new HashMap<>();
+        for (Entry<String, List<String>> en : metadata.entrySet()) {
+            snapshot.put(en.getKey(), new ArrayList<>(en.getValue()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * A cached parsing result.  The text stream must be closed when done.
+     */
+    public static class CachedResult {
+        private final Map<String, List<String>> metadata;
+        private final InputStream text;
+        public CachedResult(
+                Map<String, List<String>> metadata, InputStream text) {
+            super();
+            this.metadata = metadata;
+            this.text = text;
+        }
+        public Map<String, List<String>> getMetadata() {
+            return metadata;
+        }
+        public InputStream getText() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.doc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Child document consumer keeping all child documents it receives in a list, 
+ * for use where a list of documents is expected.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class ChildDocumentCollector implements IChildDocumentConsumer {
+
+    private final List<ImporterDocument> childDocs = new ArrayList<>();
+
+    @Override
+    public void consumeChildDocument(ImporterDocument childDoc) {
+        childDocs.add(childDoc);
+    }
+
+    /**
+     * Gets the child documents collected so far.
+     * @return child documents (never <code>null</code>)
+     */
+    public List<ImporterDocument> getChildDocuments() {
+        return childDocs;
+    }
+}
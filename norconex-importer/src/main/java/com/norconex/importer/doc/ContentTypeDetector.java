@@ -17,38 +17,76 @@ package com.norconex.importer.doc;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
-import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
-import org.apache.tika.mime.MediaType;
 
 import com.norconex.commons.lang.file.ContentType;
+import com.norconex.importer.ImporterRuntimeException;
 
 /**
  * Detects content types.  This class is thread-safe.
+ * <p />
+ * Since 2.1.0, the underlying Tika detector is created once and shared
+ * by all instances.  Common file types (PDF, HTML, Office, plain text)
+ * are first checked against their expected "magic" bytes.  When the
+ * file extension and content signature agree, the content type is
+ * returned without going through the full Tika detection chain.
  * @author Pascal Essiembre
  * @since 2.0.0
  */
 public class ContentTypeDetector {
 
-    private static final Logger LOG = 
+    private static final Logger LOG =
             LogManager.getLogger(ContentTypeDetector.class);
-    
-    private final Pattern extPattern = Pattern.compile("^.*(\\.[A-z0-9]+).*");
-    
-    private TikaConfig tikaConfig;
+
+    private static final Pattern EXTENSION_PATTERN =
+            Pattern.compile("^.*(\\.[A-z0-9]+).*");
+
+    // Number of bytes read to check content signatures
+    private static final int SIGNATURE_LENGTH = 512;
+
+    private static final byte[] PDF_MAGIC = bytes("%PDF-");
+    private static final byte[] ZIP_MAGIC = { 'P', 'K', 3, 4 };
+    private static final byte[] OLE2_MAGIC = {
+        (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+        (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1
+    };
+
+    // Content types that can be resolved by their extension, once the
+    // content signature matches, keyed by lower-case extension.
+    private static final Map<String, FastType> FAST_TYPES = new HashMap<>();
+    static {
+        addFastType(Signature.PDF, "application/pdf", "pdf");
+        addFastType(Signature.HTML, "text/html", "html", "htm");
+        addFastType(Signature.TEXT, "text/plain", "txt");
+        addFastType(Signature.OLE2, "application/msword", "doc");
+        addFastType(Signature.OLE2, "application/vnd.ms-excel", "xls");
+        addFastType(Signature.OLE2, "application/vnd.ms-powerpoint", "ppt");
+        addFastType(Signature.ZIP, "application/vnd.openxmlformats-"
+                + "officedocument.wordprocessingml.document", "docx");
+        addFastType(Signature.ZIP, "application/vnd.openxmlformats-"
+                + "officedocument.spreadsheetml.sheet", "xlsx");
+        addFastType(Signature.ZIP, "application/vnd.openxmlformats-"
+                + "officedocument.presentationml.presentation", "pptx");
+    }
 
     public ContentTypeDetector() {
         super();
     }
-    
+
     public ContentType detect(File file) throws IOException {
         return detect(file, file.getName());
     }
@@ -58,57 +96,228 @@ public class ContentTypeDetector {
         if (StringUtils.isBlank(safeFileName)) {
             safeFileName = file.getName();
         }
-        return doDetect(TikaInputStream.get(file), safeFileName);
+        try (InputStream is = TikaInputStream.get(file)) {
+            return doDetect(is, safeFileName);
+        }
     }
     public ContentType detect(InputStream content)
             throws IOException {
-        Tika tika = new Tika();
-        String contentType = tika.detect(content);
+        InputStream is = markable(content);
+        String contentType = null;
+        if (startsWith(readSignature(is), PDF_MAGIC)) {
+            contentType = "application/pdf";
+        } else {
+            contentType = getDetector().detect(is, new Metadata()).toString();
+        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Detected \"" + contentType
                     + "\" content-type for input stream.");
         }
-        return ContentType.valueOf(contentType);        
+        return ContentType.valueOf(contentType);
     }
     public ContentType detect(InputStream content, String fileName)
             throws IOException {
-        return doDetect(content, fileName);
+        return doDetect(markable(content), fileName);
     }
-    
-    private TikaConfig getTikaConfig() throws IOException {
-        if (tikaConfig == null) {
-            try {
-                initTikaConfig();
-                this.tikaConfig = new TikaConfig();
-            } catch (TikaException | IOException e) {
-                throw new IOException("Could not create Tika Configuration "
-                        + "for content type detector.", e);
-            }
+
+    private ContentType doDetect(
+            InputStream is, String fileName) throws IOException {
+        String extension = null;
+        Matcher m = EXTENSION_PATTERN.matcher(fileName);
+        if (m.matches()) {
+            extension = m.group(1);
+        }
+        String contentType = detectFast(is, extension);
+        if (contentType == null) {
+            Metadata meta = new Metadata();
+            meta.set(Metadata.RESOURCE_NAME_KEY, "file:///detect"
+                    + StringUtils.defaultString(extension, fileName));
+            contentType = getDetector().detect(is, meta).toString();
         }
-        return tikaConfig;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Detected \"" + contentType
+                    + "\" content-type for: " + fileName);
+        }
+        return ContentType.valueOf(contentType);
+    }
+
+    private String detectFast(InputStream is, String extension)
+            throws IOException {
+        if (extension == null) {
+            return null;
+        }
+        FastType fastType = FAST_TYPES.get(
+                extension.substring(1).toLowerCase(Locale.ENGLISH));
+        if (fastType != null && fastType.signature.matches(
+                readSignature(is))) {
+            return fastType.contentType;
+        }
+        return null;
     }
-    private synchronized void initTikaConfig() throws IOException {
-        if (tikaConfig != null) {
-            return;
+
+    private InputStream markable(InputStream is) {
+        if (is.markSupported()) {
+            return is;
         }
+        return TikaInputStream.get(is);
+    }
+
+    private byte[] readSignature(InputStream is) throws IOException {
+        byte[] buf = new byte[SIGNATURE_LENGTH];
+        is.mark(SIGNATURE_LENGTH);
+        int total = 0;
         try {
-            this.tikaConfig = new TikaConfig();
-        } catch (TikaException | IOException e) {
-            throw new IOException("Could not create Tika Configuration "
-                    + "for content type detector.", e);
+            int read = 0;
+            while (total < buf.length
+                    && (read = is.read(buf, total, buf.length - total)) != -1) {
+                total += read;
+            }
+        } finally {
+            is.reset();
+        }
+        if (total == buf.length) {
+            return buf;
         }
+        byte[] sig = new byte[total];
+        System.arraycopy(buf, 0, sig, 0, total);
+        return sig;
     }
-    
-    private ContentType doDetect(
-            InputStream is, String fileName) throws IOException {
-        Metadata meta = new Metadata();
-        String extension = extPattern.matcher(fileName).replaceFirst("$1");
-        meta.set(Metadata.RESOURCE_NAME_KEY, "file:///detect" + extension);
-        MediaType media = getTikaConfig().getDetector().detect(is, meta);
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Detected \"" + media.toString()
-                    + "\" content-type for: " + fileName);
+
+    private static Detector getDetector() {
+        return DetectorHolder.DETECTOR;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        return startsWith(bytes, 0, prefix);
+    }
+    private static boolean startsWith(
+            byte[] bytes, int offset, byte[] prefix) {
+        if (bytes.length - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static boolean startsWithIgnoreCase(
+            byte[] bytes, int offset, String prefix) {
+        if (bytes.length - offset < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toLowerCase((char) bytes[offset + i])
+                    != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    // Skips a UTF-8 byte order mark and leading white spaces
+    private static int skipWhitespaces(byte[] bytes) {
+        int i = 0;
+        if (bytes.length >= 3 && bytes[0] == (byte) 0xEF
+                && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+            i = 3;
+        }
+        while (i < bytes.length && Character.isWhitespace((char) bytes[i])) {
+            i++;
+        }
+        return i;
+    }
+    private static byte[] bytes(String ascii) {
+        byte[] b = new byte[ascii.length()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) ascii.charAt(i);
+        }
+        return b;
+    }
+    private static void addFastType(
+            Signature signature, String contentType, String... extensions) {
+        FastType fastType = new FastType(signature, contentType);
+        for (String ext : extensions) {
+            FAST_TYPES.put(ext, fastType);
+        }
+    }
+
+    private static class FastType {
+        private final Signature signature;
+        private final String contentType;
+        public FastType(Signature signature, String contentType) {
+            super();
+            this.signature = signature;
+            this.contentType = contentType;
+        }
+    }
+
+    private enum Signature {
+        PDF {
+            @Override
+            boolean matches(byte[] bytes) {
+                return startsWith(bytes, PDF_MAGIC);
+            }
+        },
+        ZIP {
+            @Override
+            boolean matches(byte[] bytes) {
+                return startsWith(bytes, ZIP_MAGIC);
+            }
+        },
+        OLE2 {
+            @Override
+            boolean matches(byte[] bytes) {
+                return startsWith(bytes, OLE2_MAGIC);
+            }
+        },
+        HTML {
+            @Override
+            boolean matches(byte[] bytes) {
+                int i = skipWhitespaces(bytes);
+                if (!startsWithIgnoreCase(bytes, i, "<!doctype html")
+                        && !startsWithIgnoreCase(bytes, i, "<html")) {
+                    return false;
+                }
+                // XHTML is left to Tika
+                String head = new String(
+                        bytes, StandardCharsets.ISO_8859_1);
+                return !StringUtils.containsIgnoreCase(head, "xhtml")
+                        && !StringUtils.containsIgnoreCase(head, "xmlns");
+            }
+        },
+        // Plain text without markup or binary characters.  UTF-16 or
+        // other encodings are left to Tika.
+        TEXT {
+            @Override
+            boolean matches(byte[] bytes) {
+                int start = skipWhitespaces(bytes);
+                if (start < bytes.length && bytes[start] == '<') {
+                    return false;
+                }
+                for (int i = start; i < bytes.length; i++) {
+                    byte b = bytes[i];
+                    if (b >= 0 && b < 0x20 && b != '\t'
+                            && b != '\n' && b != '\r' && b != '\f') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+        abstract boolean matches(byte[] bytes);
+    }
+
+    // Loaded on first use only, in a thread-safe way.
+    private static class DetectorHolder {
+        private static final Detector DETECTOR = createDetector();
+        private static Detector createDetector() {
+            try {
+                return new TikaConfig().getDetector();
+            } catch (TikaException | IOException e) {
+                throw new ImporterRuntimeException("Could not create Tika "
+                        + "Configuration for content type detector.", e);
+            }
         }
-        return ContentType.valueOf(media.toString());
     }
 }
@@ -0,0 +1,32 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.doc;
+
+/**
+ * Receives child documents (split or embedded documents) one at a time,
+ * as soon as they are created.  This allows documents with a very large
+ * number of children to be processed without holding them all in memory.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public interface IChildDocumentConsumer {
+
+    /**
+     * Consumes a newly created child document.  Implementations are 
+     * free to process the child document right away or later.
+     * @param childDoc the child document
+     */
+    void consumeChildDocument(ImporterDocument childDoc);
+}
@@ -14,12 +14,31 @@
  */
 package com.norconex.importer.doc;
 
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import com.norconex.commons.lang.map.Properties;
 
 /**
+ * Document metadata.
+ * <p />
+ * Since 2.1.0, metadata can be created on top of a {@link Snapshot} of 
+ * other metadata (e.g. the metadata of a parent document shared by
+ * many child documents).  The snapshot fields are not copied: they are 
+ * shared by all metadata created from the same snapshot, and only fields 
+ * added or modified are stored in each instance. A shared field is 
+ * copied the first time its values are modified.
  * @author Pascal Essiembre
  * @since 2.0.0
  */
@@ -64,6 +83,27 @@ public class ImporterMetadata extends Properties {
     public ImporterMetadata(Map<String, List<String>> map) {
         super(map);
     }
+    /**
+     * Creates metadata initially holding the same fields as the given 
+     * snapshot, without copying them.
+     * @param parent snapshot of parent metadata
+     * @since 2.1.0
+     */
+    public ImporterMetadata(Snapshot parent) {
+        super(new LayeredMap(parent.fields));
+    }
+
+    /**
+     * Takes an immutable snapshot of this metadata fields, to be 
+     * shared by any number of metadata instances created with 
+     * {@link #ImporterMetadata(Snapshot)}.  Changes made to this metadata 
+     * afterwards are not reflected in the snapshot.
+     * @return metadata snapshot
+     * @since 2.1.0
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
     
     public String getLanguage() {
         return getString(DOC_LANGUAGE);
@@ -106,4 +146,236 @@ public class ImporterMetadata extends Properties {
     public void setEmbeddedType(String type) {
         setString(DOC_EMBEDDED_TYPE, type);
     }
+
+    /**
+     * Immutable copy of metadata fields, meant to be shared.
+     * @since 2.1.0
+     */
+    public static final class Snapshot implements Serializable {
+        private static final long serialVersionUID = 4915932541218383409L;
+        private final Map<String, List<String>> fields;
+        private Snapshot(Map<String, List<String>> source) {
+            super();
+            Map<String, List<String>> copy = new HashMap<>(
+                    Math.max(16, source.size() * 4 / 3 + 1));
+            for (Entry<String, List<String>> entry : source.entrySet()) {
+                List<String> values = entry.getValue();
+                if (values != null) {
+                    values = Collections.unmodifiableList(
+                            new ArrayList<>(values));
+                }
+                copy.put(entry.getKey(), values);
+            }
+            this.fields = Collections.unmodifiableMap(copy);
+        }
+        /**
+         * Gets the number of fields in this snapshot.
+         * @return number of fields
+         */
+        public int size() {
+            return fields.size();
+        }
+    }
+
+    // Map layered over shared fields.  Fields added or replaced are 
+    // stored in "own", and shared fields removed are "hidden".  Shared
+    // values are returned wrapped so they get copied only when modified.
+    private static class LayeredMap extends AbstractMap<String, List<String>>
+            implements Serializable {
+        private static final long serialVersionUID = -3853418040588530826L;
+        private final Map<String, List<String>> shared;
+        private final Map<String, List<String>> own = new HashMap<>();
+        private final Set<String> hidden = new HashSet<>();
+
+        public LayeredMap(Map<String, List<String>> shared) {
+            super();
+            this.shared = shared;
+        }
+
+        private boolean isShared(Object key) {
+            return !own.containsKey(key) && !hidden.contains(key)
+                    && shared.containsKey(key);
+        }
+        private List<String> sharedValue(String key) {
+            List<String> values = shared.get(key);
+            if (values == null) {
+                return null;
+            }
+            return new SharedValue(key, values);
+        }
+
+        @Override
+        public int size() {
+            int size = own.size();
+            for (String key : shared.keySet()) {
+                if (isShared(key)) {
+                    size++;
+                }
+            }
+            return size;
+        }
+        @Override
+        public boolean containsKey(Object key) {
+            return own.containsKey(key) || isShared(key);
+        }
+        @Override
+        public List<String> get(Object key) {
+            if (isShared(key)) {
+                return sharedValue((String) key);
+            }
+            return own.get(key);
+        }
+        @Override
+        public List<String> put(String key, List<String> value) {
+            List<String> previous = get(key);
+            List<String> newValue = value;
+            if (newValue instanceof SharedValue) {
+                newValue = new ArrayList<>(newValue);
+            }
+            hidden.remove(key);
+            own.put(key, newValue);
+            return previous;
+        }
+        @Override
+        public List<String> remove(Object key) {
+            List<String> previous = get(key);
+            own.remove(key);
+            if (shared.containsKey(key)) {
+                hidden.add((String) key);
+            }
+            return previous;
+        }
+        @Override
+        public void clear() {
+            own.clear();
+            hidden.addAll(shared.keySet());
+        }
+        @Override
+        public Set<Entry<String, List<String>>> entrySet() {
+            return new AbstractSet<Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Entry<String, List<String>>> iterator() {
+                    return new LayeredIterator();
+                }
+                @Override
+                public int size() {
+                    return LayeredMap.this.size();
+                }
+            };
+        }
+
+        // Own entries first, then shared ones not overridden
+        private class LayeredIterator
+                implements Iterator<Entry<String, List<String>>> {
+            private final Iterator<Entry<String, List<String>>> ownIt =
+                    own.entrySet().iterator();
+            private final Iterator<String> sharedIt =
+                    shared.keySet().iterator();
+            private String nextSharedKey;
+            private String lastKey;
+            private boolean lastOwn;
+            @Override
+            public boolean hasNext() {
+                if (ownIt.hasNext() || nextSharedKey != null) {
+                    return true;
+                }
+                while (sharedIt.hasNext()) {
+                    String key = sharedIt.next();
+                    if (isShared(key)) {
+                        nextSharedKey = key;
+                        return true;
+                    }
+                }
+                return false;
+            }
+            @Override
+            public Entry<String, List<String>> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (ownIt.hasNext()) {
+                    Entry<String, List<String>> entry = ownIt.next();
+                    lastKey = entry.getKey();
+                    lastOwn = true;
+                    return entry;
+                }
+                lastKey = nextSharedKey;
+                lastOwn = false;
+                nextSharedKey = null;
+                return new SharedEntry(lastKey);
+            }
+            @Override
+            public void remove() {
+                if (lastKey == null) {
+                    throw new IllegalStateException();
+                }
+                if (lastOwn) {
+                    ownIt.remove();
+                }
+                if (shared.containsKey(lastKey)) {
+                    hidden.add(lastKey);
+                }
+                lastKey = null;
+            }
+        }
+
+        private class SharedEntry 
+                extends SimpleEntry<String, List<String>> {
+            private static final long serialVersionUID = 1L;
+            public SharedEntry(String key) {
+                super(key, sharedValue(key));
+            }
+            @Override
+            public List<String> setValue(List<String> value) {
+                super.setValue(value);
+                return put(getKey(), value);
+            }
+        }
+
+        // Shared values, copied to own fields on first modification
+        private class SharedValue extends AbstractList<String> {
+            private final String key;
+            private List<String> values;
+            private boolean copied;
+            public SharedValue(String key, List<String> values) {
+                super();
+                this.key = key;
+                this.values = values;
+            }
+            @Override
+            public String get(int index) {
+                return values.get(index);
+            }
+            @Override
+            public int size() {
+                return values.size();
+            }
+            @Override
+            public String set(int index, String element) {
+                return copy().set(index, element);
+            }
+            @Override
+            public void add(int index, String element) {
+                copy().add(index, element);
+                modCount++;
+            }
+            @Override
+            public String remove(int index) {
+                String removed = copy().remove(index);
+                modCount++;
+                return removed;
+            }
+            private List<String> copy() {
+                if (!copied) {
+                    values = new ArrayList<>(values);
+                    copied = true;
+                    // unless the field was replaced or removed meanwhile
+                    if (isShared(key)) {
+                        own.put(key, values);
+                    }
+                }
+                return values;
+            }
+        }
+    }
 }
@@ -0,0 +1,272 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.doc;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+
+import com.norconex.commons.lang.unit.DataUnit;
+
+/**
+ * Limits the nested documents (embedded or split documents) extracted
+ * from a document, to protect against documents expanding to much more
+ * than their own size (e.g. "zip bombs"):
+ * <ul>
+ *   <li>Nesting depth: how deep nested documents can be (the top-level
+ *       document being at depth zero).</li>
+ *   <li>Children: how many nested documents a document can have.</li>
+ *   <li>Expanded size: how many bytes can be extracted from a top-level
+ *       document, all nesting levels combined.</li>
+ *   <li>Compression ratio: how many bytes can be extracted from a
+ *       document for each byte read from it.</li>
+ * </ul>
+ * Limits are checked as nested documents are extracted, so extraction
+ * stops as soon as one is exceeded, before it is fully read.  Once a
+ * limit is exceeded, the guard refuses any further extraction,
+ * throwing a {@link NestedDocumentLimitException}.
+ * <p />
+ * Each document being imported has its own guard, bound to the
+ * thread importing it (see {@link #bind(NestedDocumentGuard)}), which
+ * parsers and splitters can obtain with {@link #getCurrent()}.
+ * This class is thread-safe.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class NestedDocumentGuard {
+
+    /** Bytes extracted from a document before its compression ratio
+     *  is checked, so small documents are never rejected for it. */
+    public static final long MIN_RATIO_CHECK_SIZE = DataUnit.MB.toBytes(1);
+
+    private static final NestedDocumentGuard UNLIMITED =
+            new NestedDocumentGuard(-1, -1, -1, -1);
+    private static final ThreadLocal<NestedDocumentGuard> CURRENT =
+            new ThreadLocal<>();
+
+    private final int maxDepth;
+    private final int maxChildren;
+    private final long maxExpandedSize;
+    private final double maxCompressionRatio;
+    private final int depth;
+    // shared by all documents of a same top-level document
+    private final AtomicLong totalExpandedSize;
+    private final AtomicInteger childCount = new AtomicInteger();
+    private final AtomicLong expandedSize = new AtomicLong();
+    private volatile CountingInputStream input;
+    private volatile String exceededMessage;
+
+    /**
+     * Creates a guard for a top-level document.
+     * @param maxDepth maximum nesting depth, or -1 for no maximum
+     * @param maxChildren maximum number of nested documents per document,
+     *        or -1 for no maximum
+     * @param maxExpandedSize maximum number of bytes extracted from a
+     *        top-level document and its nested documents, or -1 for no
+     *        maximum
+     * @param maxCompressionRatio maximum number of bytes extracted from a
+     *        document for each byte read from it, or -1 for no maximum
+     */
+    public NestedDocumentGuard(int maxDepth, int maxChildren,
+            long maxExpandedSize, double maxCompressionRatio) {
+        super();
+        this.maxDepth = maxDepth;
+        this.maxChildren = maxChildren;
+        this.maxExpandedSize = maxExpandedSize;
+        this.maxCompressionRatio = maxCompressionRatio;
+        this.depth = 0;
+        this.totalExpandedSize = new AtomicLong();
+    }
+    private NestedDocumentGuard(NestedDocumentGuard parent) {
+        super();
+        this.maxDepth = parent.maxDepth;
+        this.maxChildren = parent.maxChildren;
+        this.maxExpandedSize = parent.maxExpandedSize;
+        this.maxCompressionRatio = parent.maxCompressionRatio;
+        this.depth = parent.depth + 1;
+        this.totalExpandedSize = parent.totalExpandedSize;
+    }
+
+    /**
+     * Gets the guard bound to the current thread, or one without limits
+     * if none is bound.
+     * @return nested document guard
+     */
+    public static NestedDocumentGuard getCurrent() {
+        NestedDocumentGuard guard = CURRENT.get();
+        if (guard == null) {
+            return UNLIMITED;
+        }
+        return guard;
+    }
+
+    /**
+     * Binds a guard to the current thread.  Invoke again with the
+     * returned guard when done, to restore the previous one.
+     * @param guard the guard to bind (<code>null</code> to unbind)
+     * @return the guard previously bound, or <code>null</code>
+     */
+    public static NestedDocumentGuard bind(NestedDocumentGuard guard) {
+        NestedDocumentGuard previous = CURRENT.get();
+        if (guard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(guard);
+        }
+        return previous;
+    }
+
+    /**
+     * Creates the guard of a nested document of this guard document.
+     * Expanded sizes are shared with this guard.
+     * @return child document guard
+     */
+    public NestedDocumentGuard newChildGuard() {
+        return new NestedDocumentGuard(this);
+    }
+
+    /**
+     * Gets the nesting depth of this guard document.
+     * @return depth (zero for top-level documents)
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Whether a limit was exceeded by this guard document.
+     * @return <code>true</code> if a limit was exceeded
+     */
+    public boolean isExceeded() {
+        return exceededMessage != null;
+    }
+    /**
+     * Gets a description of the limit exceeded by this guard document.
+     * @return exceeded limit description, or <code>null</code>
+     */
+    public String getExceededMessage() {
+        return exceededMessage;
+    }
+
+    /**
+     * Checks whether a new nested document can be extracted, without
+     * counting it. Meant to be invoked before spending resources on
+     * extracting it.
+     * @throws NestedDocumentLimitException if it cannot be extracted
+     */
+    public void checkNewChild() {
+        checkNotExceeded();
+        if (maxDepth >= 0 && depth >= maxDepth) {
+            throw exceeded("Maximum nested document depth (" + maxDepth
+                    + ") exceeded.");
+        }
+        if (maxChildren >= 0 && childCount.get() >= maxChildren) {
+            throw exceeded("Maximum number of nested documents per "
+                    + "document (" + maxChildren + ") exceeded.");
+        }
+        if (maxExpandedSize >= 0
+                && totalExpandedSize.get() > maxExpandedSize) {
+            throw exceeded("Maximum expanded size of nested documents ("
+                    + maxExpandedSize + " bytes) exceeded.");
+        }
+    }
+    /**
+     * Counts a new nested document extracted from this guard document.
+     * @throws NestedDocumentLimitException if it exceeds a limit
+     */
+    public void addChild() {
+        checkNewChild();
+        if (maxChildren >= 0 && childCount.incrementAndGet() > maxChildren) {
+            throw exceeded("Maximum number of nested documents per "
+                    + "document (" + maxChildren + ") exceeded.");
+        }
+    }
+
+    /**
+     * Wraps the content of this guard document to count how many bytes
+     * of it were read, for checking the compression ratio.
+     * @param documentInput document content
+     * @return the wrapped content
+     */
+    public InputStream newInputStream(InputStream documentInput) {
+        if (maxCompressionRatio <= 0) {
+            return documentInput;
+        }
+        CountingInputStream countingInput =
+                new CountingInputStream(documentInput);
+        input = countingInput;
+        return countingInput;
+    }
+    /**
+     * Wraps the content of a nested document being extracted, to check
+     * the expanded size and compression ratio as it is read.
+     * @param childInput nested document content
+     * @return the wrapped content
+     */
+    public InputStream newChildInputStream(InputStream childInput) {
+        if (maxExpandedSize < 0 && maxCompressionRatio <= 0) {
+            return childInput;
+        }
+        return new GuardedInputStream(childInput);
+    }
+
+    private void addExpanded(long bytes) {
+        long total = totalExpandedSize.addAndGet(bytes);
+        if (maxExpandedSize >= 0 && total > maxExpandedSize) {
+            throw exceeded("Maximum expanded size of nested documents ("
+                    + maxExpandedSize + " bytes) exceeded.");
+        }
+        long expanded = expandedSize.addAndGet(bytes);
+        CountingInputStream countingInput = input;
+        if (maxCompressionRatio > 0 && countingInput != null
+                && expanded > MIN_RATIO_CHECK_SIZE && expanded
+                        > maxCompressionRatio * countingInput.getByteCount()) {
+            throw exceeded("Maximum compression ratio of nested documents ("
+                    + maxCompressionRatio + ") exceeded.");
+        }
+    }
+
+    private void checkNotExceeded() {
+        String message = exceededMessage;
+        if (message != null) {
+            throw new NestedDocumentLimitException(message);
+        }
+    }
+    private NestedDocumentLimitException exceeded(String message) {
+        if (exceededMessage == null) {
+            exceededMessage = message;
+        }
+        return new NestedDocumentLimitException(message);
+    }
+
+    private class GuardedInputStream extends ProxyInputStream {
+        public GuardedInputStream(InputStream in) {
+            super(in);
+        }
+        @Override
+        protected void beforeRead(int n) {
+            checkNotExceeded();
+        }
+        @Override
+        protected void afterRead(int n) {
+            if (n > 0) {
+                addExpanded(n);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.doc;
+
+import com.norconex.importer.ImporterRuntimeException;
+
+/**
+ * Thrown when extracting a nested document (embedded or split document)
+ * would exceed a limit of the {@link NestedDocumentGuard} of its parent.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class NestedDocumentLimitException extends ImporterRuntimeException {
+
+    private static final long serialVersionUID = -3416259837413180532L;
+
+    public NestedDocumentLimitException(String message) {
+        super(message);
+    }
+}
@@ -72,6 +72,7 @@ public abstract class AbstractImporterHandler implements IXMLConfigurable {
     
     private final List<RegexMetadataFilter> restrictions = new ArrayList<>();
     private final String xmltag;
+    private volatile RestrictionGroup restrictionGroup;
     
     public AbstractImporterHandler(String xmltag) {
         super();
@@ -88,11 +89,15 @@ public abstract class AbstractImporterHandler implements IXMLConfigurable {
             String field, String regex, boolean caseSensitive) {
         restrictions.add(new RegexMetadataFilter(
                 field, regex, OnMatch.INCLUDE, caseSensitive));
+        restrictionGroup = null;
     }
 
     /**
      * Class to invoke by subclasses to find out if this handler should be
      * rejected or not based on the metadata restriction provided.
+     * Handlers having identical restrictions share the outcome: 
+     * restrictions are only evaluated again for a document 
+     * when the values of the restricted fields have changed.
      * @param reference document reference
      * @param metadata document metadata.
      * @param parsed if the document was parsed (i.e. imported) already
@@ -105,10 +110,13 @@ public abstract class AbstractImporterHandler implements IXMLConfigurable {
         if (restrictions.isEmpty()) {
             return true;
         }
-        for (RegexMetadataFilter restriction : restrictions) {
-            if (restriction.acceptDocument(reference, null, metadata, parsed)) {
-                return true;
-            }
+        RestrictionGroup group = restrictionGroup;
+        if (group == null) {
+            group = RestrictionGroup.get(restrictions);
+            restrictionGroup = group;
+        }
+        if (group.isApplicable(reference, metadata, parsed)) {
+            return true;
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug(getClass() + " handler does not apply to: " + reference);
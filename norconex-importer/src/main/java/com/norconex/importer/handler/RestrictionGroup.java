@@ -0,0 +1,141 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.handler;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.handler.filter.impl.RegexMetadataFilter;
+
+/**
+ * A set of "restrictTo" rules shared by all handlers having the same ones.
+ * The outcome of the last evaluation is remembered (per thread) along with
+ * the values of the restricted fields.  Other handlers of the same group
+ * re-use that outcome for the same document, as long as those field
+ * values did not change in between.  Groups used by a single handler
+ * have no outcome to share, so they evaluate restrictions every time,
+ * without remembering anything.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+final class RestrictionGroup {
+
+    // Past this number of distinct groups, new ones are no longer shared
+    // (not expected with normal configurations).
+    private static final int MAX_SHARED_GROUPS = 1000;
+    private static final ConcurrentMap<List<RegexMetadataFilter>,
+            RestrictionGroup> GROUPS = new ConcurrentHashMap<>();
+
+    private final List<RegexMetadataFilter> restrictions;
+    private final String[] fields;
+    private final ThreadLocal<Evaluation> lastEvaluation =
+            new ThreadLocal<>();
+    private final AtomicInteger handlerCount = new AtomicInteger();
+
+    private RestrictionGroup(List<RegexMetadataFilter> restrictions) {
+        super();
+        this.restrictions = restrictions;
+        Set<String> uniqueFields = new LinkedHashSet<>();
+        for (RegexMetadataFilter restriction : restrictions) {
+            uniqueFields.add(restriction.getField());
+        }
+        this.fields = uniqueFields.toArray(new String[uniqueFields.size()]);
+    }
+
+    /**
+     * Gets the group for the given restrictions, counting the handler
+     * invoking it as one more handler of that group.
+     * @param restrictions restrictions (copied)
+     * @return restriction group
+     */
+    public static RestrictionGroup get(
+            List<RegexMetadataFilter> restrictions) {
+        List<RegexMetadataFilter> key = Collections.unmodifiableList(
+                new ArrayList<>(restrictions));
+        RestrictionGroup group = GROUPS.get(key);
+        if (group == null) {
+            group = new RestrictionGroup(key);
+            if (GROUPS.size() < MAX_SHARED_GROUPS) {
+                RestrictionGroup existing = GROUPS.putIfAbsent(key, group);
+                if (existing != null) {
+                    group = existing;
+                }
+            }
+        }
+        group.handlerCount.incrementAndGet();
+        return group;
+    }
+
+    public boolean isApplicable(
+            String reference, ImporterMetadata metadata, boolean parsed)
+            throws ImporterHandlerException {
+        if (handlerCount.get() < 2) {
+            return evaluate(reference, metadata, parsed);
+        }
+        List<List<String>> values = getFieldValues(metadata);
+        Evaluation last = lastEvaluation.get();
+        if (last != null && last.isFor(metadata, values)) {
+            return last.applicable;
+        }
+        boolean applicable = evaluate(reference, metadata, parsed);
+        lastEvaluation.set(new Evaluation(metadata, values, applicable));
+        return applicable;
+    }
+
+    private boolean evaluate(
+            String reference, ImporterMetadata metadata, boolean parsed)
+            throws ImporterHandlerException {
+        for (RegexMetadataFilter restriction : restrictions) {
+            if (restriction.acceptDocument(reference, null, metadata, parsed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<List<String>> getFieldValues(ImporterMetadata metadata) {
+        List<List<String>> values = new ArrayList<>(fields.length);
+        for (String field : fields) {
+            values.add(new ArrayList<>(metadata.getStrings(field)));
+        }
+        return values;
+    }
+
+    private static class Evaluation {
+        private final WeakReference<ImporterMetadata> metadata;
+        private final List<List<String>> values;
+        private final boolean applicable;
+        public Evaluation(ImporterMetadata metadata,
+                List<List<String>> values, boolean applicable) {
+            super();
+            this.metadata = new WeakReference<>(metadata);
+            this.values = values;
+            this.applicable = applicable;
+        }
+        public boolean isFor(
+                ImporterMetadata metadata, List<List<String>> values) {
+            return this.metadata.get() == metadata
+                    && this.values.equals(values);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
@@ -37,12 +39,27 @@ import com.norconex.importer.handler.filter.OnMatch;
  * using {@link AbstractCharStreamFilter} if this is a concern.
  * 
  * <p>
+ * By default, the regular expression must match the whole content 
+ * (or chunk).  Since 2.1.0, you can set <code>find</code> to 
+ * <code>true</code> to match when the regular expression is found
+ * anywhere in the content instead.  The content is then read in 
+ * windows of <code>windowSize</code> characters, each starting with the 
+ * last <code>windowOverlap</code> characters of the previous one, and 
+ * reading stops as soon as a match is found.  Matches are never missed
+ * at window boundaries as long as they are not longer than the overlap
+ * (which cannot exceed half the window size).  
+ * </p>
+ * 
+ * <p>
  * XML configuration usage:
  * </p>
  * <pre>
  *  &lt;filter class="com.norconex.importer.handler.filter.impl.RegexContentFilter"
  *          onMatch="[include|exclude]" 
- *          caseSensitive="[false|true]" &gt;
+ *          caseSensitive="[false|true]" 
+ *          find="[false|true]"
+ *          windowSize="(find mode window size in characters, default 65536)"
+ *          windowOverlap="(find mode window overlap, default 1000)" &gt;
  *      (regular expression of value to match)
  *  &lt;/filter&gt;
  * </pre>
@@ -52,9 +69,17 @@ import com.norconex.importer.handler.filter.OnMatch;
  */
 public class RegexContentFilter extends AbstractStringFilter {
 
+    /** Default find mode window size, in characters. */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+    /** Default find mode window overlap, in characters. */
+    public static final int DEFAULT_WINDOW_OVERLAP = 1000;
+    
     private boolean caseSensitive;
     private String regex;
     private Pattern pattern;
+    private boolean find;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    private int windowOverlap = DEFAULT_WINDOW_OVERLAP;
 
     
     public RegexContentFilter() {
@@ -82,6 +107,7 @@ public class RegexContentFilter extends AbstractStringFilter {
     }
     public void setCaseSensitive(boolean caseSensitive) {
         this.caseSensitive = caseSensitive;
+        setRegex(regex);
     }
     public final void setRegex(String regex) {
         this.regex = regex;
@@ -95,6 +121,74 @@ public class RegexContentFilter extends AbstractStringFilter {
             this.pattern = Pattern.compile(".*");
         }
     }
+    /**
+     * Whether the regular expression can match any part of the content
+     * instead of the whole content.
+     * @return <code>true</code> if finding the regular expression
+     * @since 2.1.0
+     */
+    public boolean isFind() {
+        return find;
+    }
+    /**
+     * Sets whether the regular expression can match any part of the 
+     * content instead of the whole content.
+     * @param find <code>true</code> to find the regular expression
+     * @since 2.1.0
+     */
+    public void setFind(boolean find) {
+        this.find = find;
+    }
+    /**
+     * Gets the number of characters read at once in find mode.
+     * @return window size
+     * @since 2.1.0
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+    /**
+     * Sets the number of characters read at once in find mode.
+     * @param windowSize window size
+     * @since 2.1.0
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+    /**
+     * Gets the number of characters repeated from one window to the
+     * next in find mode.
+     * @return window overlap
+     * @since 2.1.0
+     */
+    public int getWindowOverlap() {
+        return windowOverlap;
+    }
+    /**
+     * Sets the number of characters repeated from one window to the
+     * next in find mode.  Should be at least the length of the longest
+     * expected match.
+     * @param windowOverlap window overlap
+     * @since 2.1.0
+     */
+    public void setWindowOverlap(int windowOverlap) {
+        this.windowOverlap = windowOverlap;
+    }
+
+    @Override
+    protected int getMaxChunkSize() {
+        if (find) {
+            return windowSize;
+        }
+        return super.getMaxChunkSize();
+    }
+    @Override
+    protected int getChunkOverlap() {
+        if (find) {
+            return windowOverlap;
+        }
+        return super.getChunkOverlap();
+    }
     
     @Override
     protected boolean isStringContentMatching(String reference,
@@ -104,28 +198,70 @@ public class RegexContentFilter extends AbstractStringFilter {
         if (StringUtils.isBlank(regex)) {
             return true;
         }
-        if (pattern.matcher(content).matches()) {
-            return true;
+        if (find) {
+            return pattern.matcher(content).find();
         }
-        return false;
+        return pattern.matcher(content).matches();
     }
     @Override
     protected void saveFilterToXML(EnhancedXMLStreamWriter writer)
             throws XMLStreamException {
         writer.writeAttribute("caseSensitive", 
                 Boolean.toString(caseSensitive));
+        writer.writeAttribute("find", Boolean.toString(find));
+        writer.writeAttribute("windowSize", Integer.toString(windowSize));
+        writer.writeAttribute(
+                "windowOverlap", Integer.toString(windowOverlap));
         writer.writeCharacters(regex == null ? "" : regex);
     }
     @Override
     protected void loadFilterFromXML(XMLConfiguration xml) throws IOException {
-        setRegex(xml.getString(""));
+        // case sensitivity first, for the regex to be compiled with it
         setCaseSensitive(xml.getBoolean("[@caseSensitive]", false));
+        setRegex(xml.getString(""));
+        setFind(xml.getBoolean("[@find]", find));
+        setWindowSize(xml.getInt("[@windowSize]", windowSize));
+        setWindowOverlap(xml.getInt("[@windowOverlap]", windowOverlap));
     }
     
     @Override
     public String toString() {
         return new ToStringBuilder(this).append("caseSensitive", caseSensitive)
-                .append("regex", regex).append("pattern", pattern).toString();
+                .append("regex", regex).append("pattern", pattern)
+                .append("find", find).append("windowSize", windowSize)
+                .append("windowOverlap", windowOverlap).toString();
+    }
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+            .appendSuper(super.hashCode())
+            .append(caseSensitive)
+            .append(regex)
+            .append(find)
+            .append(windowSize)
+            .append(windowOverlap)
+            .toHashCode();
+    }
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (!(obj instanceof RegexContentFilter)) {
+            return false;
+        }
+        RegexContentFilter other = (RegexContentFilter) obj;
+        return new EqualsBuilder()
+            .appendSuper(super.equals(obj))
+            .append(caseSensitive, other.caseSensitive)
+            .append(regex, other.regex)
+            .append(find, other.find)
+            .append(windowSize, other.windowSize)
+            .append(windowOverlap, other.windowOverlap)
+            .isEquals();
     }
     
 }
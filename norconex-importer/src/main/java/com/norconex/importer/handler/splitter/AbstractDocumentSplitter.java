@@ -22,6 +22,7 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.io.CachedStreamFactory;
+import com.norconex.importer.doc.IChildDocumentConsumer;
 import com.norconex.importer.doc.ImporterDocument;
 import com.norconex.importer.handler.AbstractImporterHandler;
 import com.norconex.importer.handler.ImporterHandlerException;
@@ -30,6 +31,13 @@ import com.norconex.importer.handler.ImporterHandlerException;
  * Base class for splitters .
  * 
  * <p />
+ * As of 2.1.0, this class implements {@link IStreamingDocumentSplitter}.
+ * By default, child documents are handed to the consumer once 
+ * they have all been created.  Subclasses able to create child documents 
+ * one at a time should override 
+ * {@link #splitApplicableDocument(SplittableDocument, OutputStream, 
+ * CachedStreamFactory, boolean, IChildDocumentConsumer)}.
+ * <p />
  * 
  * Subclasses inherit this {@link IXMLConfigurable} configuration:
  * <pre>
@@ -43,7 +51,7 @@ import com.norconex.importer.handler.ImporterHandlerException;
  * @since 2.0.0
  */
 public abstract class AbstractDocumentSplitter extends AbstractImporterHandler
-            implements IDocumentSplitter {
+            implements IStreamingDocumentSplitter {
 
     public AbstractDocumentSplitter() {
         super("splitter");
@@ -63,11 +71,55 @@ public abstract class AbstractDocumentSplitter extends AbstractImporterHandler
                 doc, docOutput, streamFactory, parsed);
     }
 
+    @Override
+    public final void splitDocument(
+            SplittableDocument doc, 
+            OutputStream docOutput,
+            CachedStreamFactory streamFactory, boolean parsed,
+            IChildDocumentConsumer childConsumer) 
+                    throws ImporterHandlerException {
+        
+        if (!isApplicable(doc.getReference(), doc.getMetadata(), parsed)) {
+            return;
+        }
+        splitApplicableDocument(
+                doc, docOutput, streamFactory, parsed, childConsumer);
+    }
+    
     protected abstract List<ImporterDocument> splitApplicableDocument(
             SplittableDocument doc, OutputStream output, 
             CachedStreamFactory streamFactory, boolean parsed) 
                     throws ImporterHandlerException;
 
+    /**
+     * Splits an applicable document, handing child documents to the 
+     * supplied consumer.  Default implementation hands over the
+     * documents returned by 
+     * {@link #splitApplicableDocument(SplittableDocument, OutputStream, 
+     * CachedStreamFactory, boolean)}.
+     * @param doc the document to split
+     * @param output the parent document output (if modified)
+     * @param streamFactory stream factory for child document content
+     * @param parsed whether the document has been parsed already or not
+     * @param childConsumer consumer of child documents
+     * @throws ImporterHandlerException problem splitting the document
+     * @since 2.1.0
+     */
+    protected void splitApplicableDocument(
+            SplittableDocument doc, OutputStream output, 
+            CachedStreamFactory streamFactory, boolean parsed,
+            IChildDocumentConsumer childConsumer) 
+                    throws ImporterHandlerException {
+        List<ImporterDocument> childDocs = splitApplicableDocument(
+                doc, output, streamFactory, parsed);
+        if (childDocs == null) {
+            return;
+        }
+        for (ImporterDocument childDoc : childDocs) {
+            childConsumer.consumeChildDocument(childDoc);
+        }
+    }
+
     @Override
     public boolean equals(final Object other) {
         if (!(other instanceof AbstractDocumentSplitter)) {
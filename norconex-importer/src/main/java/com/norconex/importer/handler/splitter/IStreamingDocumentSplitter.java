@@ -0,0 +1,53 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.handler.splitter;
+
+import java.io.OutputStream;
+
+import com.norconex.commons.lang.io.CachedStreamFactory;
+import com.norconex.importer.doc.IChildDocumentConsumer;
+import com.norconex.importer.handler.ImporterHandlerException;
+
+/**
+ * Splitter handing each child document to a consumer as soon as it is 
+ * created, instead of returning them all at once.  The importer favors
+ * this method over 
+ * {@link #splitDocument(SplittableDocument, OutputStream, 
+ * CachedStreamFactory, boolean)} when available, so child documents
+ * can be imported before the splitting is over.  This is best 
+ * for documents producing a large number of children.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public interface IStreamingDocumentSplitter extends IDocumentSplitter {
+
+    /**
+     * Splits a document, handing each child document to the supplied 
+     * consumer as soon as it is created.
+     * @param doc the document to split
+     * @param docOutput the parent document output (if modified)
+     * @param streamFactory stream factory for child document content
+     * @param parsed whether the document has been parsed already or not
+     * @param childConsumer consumer of child documents
+     * @throws ImporterHandlerException problem splitting the document
+     */
+    void splitDocument(
+            SplittableDocument doc, 
+            OutputStream docOutput,
+            CachedStreamFactory streamFactory, 
+            boolean parsed,
+            IChildDocumentConsumer childConsumer)
+                    throws ImporterHandlerException;
+}
@@ -16,7 +16,13 @@ package com.norconex.importer.handler.splitter.impl;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -33,8 +39,11 @@ import au.com.bytecode.opencsv.CSVReader;
 import com.norconex.commons.lang.config.ConfigurationException;
 import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.io.CachedInputStream;
+import com.norconex.commons.lang.io.CachedOutputStream;
 import com.norconex.commons.lang.io.CachedStreamFactory;
 import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+import com.norconex.importer.doc.ChildDocumentCollector;
+import com.norconex.importer.doc.IChildDocumentConsumer;
 import com.norconex.importer.doc.ImporterDocument;
 import com.norconex.importer.doc.ImporterMetadata;
 import com.norconex.importer.handler.ImporterHandlerException;
@@ -43,8 +52,22 @@ import com.norconex.importer.handler.splitter.SplittableDocument;
 
 /**
  * Split files with Coma-Separated values (or any other characters, like tab) 
- * into one document per line. 
+ * into one document per line.  Each row is handed to the importer
+ * as soon as it is read (since 2.1.0). 
  * </p>
+ * <p>Since 2.1.0, rows do not copy the parent document metadata, but share
+ * it (see {@link ImporterMetadata#snapshot()}). How each column is used
+ * (field name, reference, content) is resolved once for all rows, and row
+ * content is encoded from a buffer reused for all rows, so memory usage 
+ * does not grow with the number of rows.</p>
+ * <p>Since 2.1.0, large files can be parsed by several threads at once
+ * (see {@link #setParsingThreads(int)}).  The content is then copied to
+ * a temporary file (in the importer temporary directory), in which 
+ * record boundaries are found as it is copied.
+ * Byte ranges between boundaries are memory-mapped and parsed in 
+ * parallel.  Rows are still handed to the importer one at a time, in 
+ * their original order.  This requires the separator, quote and escape 
+ * characters to be ASCII characters (otherwise, one thread is used).</p>
  * <p>Can be used both as a pre-parse (text documents) or post-parse handler
  * documents.</p>
  * <p>
@@ -58,7 +81,8 @@ import com.norconex.importer.handler.splitter.SplittableDocument;
  *          useFirstRowAsFields="(false|true)"
  *          linesToSkip="(integer)"
  *          referenceColumn="(column name or position from 1)"
- *          contentColumns="(csv list of column/position to use as content)" &gt;
+ *          contentColumns="(csv list of column/position to use as content)"
+ *          parsingThreads="(number of threads parsing the content)" &gt;
  *      &lt;restrictTo
  *              caseSensitive="[false|true]" &gt;
  *              field="(name of header/metadata field name to match)"&gt;
@@ -96,88 +120,136 @@ public class CsvSplitter extends AbstractDocumentSplitter
     // These can be either column names or position, starting at 1
     private String referenceColumn;
     private String[] contentColumns;
+    private int parsingThreads = 1;
     
     @Override
     protected List<ImporterDocument> splitApplicableDocument(
             SplittableDocument doc, OutputStream output,
             CachedStreamFactory streamFactory, boolean parsed)
             throws ImporterHandlerException {
+        ChildDocumentCollector rows = new ChildDocumentCollector();
+        splitApplicableDocument(doc, output, streamFactory, parsed, rows);
+        return rows.getChildDocuments();
+    }
+
+    @Override
+    protected void splitApplicableDocument(
+            SplittableDocument doc, OutputStream output,
+            CachedStreamFactory streamFactory, boolean parsed,
+            IChildDocumentConsumer childConsumer)
+            throws ImporterHandlerException {
         try {
-            return doSplitApplicableDocument(doc, streamFactory);
+            doSplitApplicableDocument(doc, streamFactory, childConsumer);
         } catch (IOException e) {
             throw new ImporterHandlerException(
                     "Could not split document: " + doc.getReference(), e);
         }
     }
 
-    private List<ImporterDocument> doSplitApplicableDocument(
-            SplittableDocument doc, CachedStreamFactory streamFactory)
-            throws IOException {
-        
+    private void doSplitApplicableDocument(
+            SplittableDocument doc, CachedStreamFactory streamFactory,
+            IChildDocumentConsumer childConsumer) throws IOException {
         
-        List<ImporterDocument> rows = new ArrayList<>();
-
         //TODO by default (or as an option), try to detect the format of the 
         // file (read first few lines and count number of tabs vs coma, 
         // quotes per line, etc.
+        RowSplitter rows = new RowSplitter(doc, streamFactory, childConsumer);
+        if (parsingThreads > 1 && ParallelCsvReader.isSupported(
+                separatorCharacter, quoteCharacter, escapeCharacter)) {
+            new ParallelCsvReader(separatorCharacter, quoteCharacter, 
+                    escapeCharacter, linesToSkip, parsingThreads, 
+                    ParallelCsvReader.DEFAULT_RANGE_SIZE, 
+                    streamFactory.getCacheDirectory()).read(
+                            doc.getInput(), rows);
+            return;
+        }
         CSVReader cvsreader = new CSVReader(doc.getReader(), separatorCharacter, 
                 quoteCharacter, escapeCharacter, linesToSkip);
-        
-        String [] cols;
-        String[] colNames = null;
-        int count = 0;
-        StringBuilder contentStr = new StringBuilder();
-        while ((cols = cvsreader.readNext()) != null) {
+        try {
+            String [] cols;
+            while ((cols = cvsreader.readNext()) != null) {
+                rows.handleRow(cols);
+            }
+        } finally {
+            IOUtils.closeQuietly(cvsreader);
+        }
+    }
+
+    // Creates a child document for each row, in the order they are read
+    private class RowSplitter implements ParallelCsvReader.RowHandler {
+        private final SplittableDocument doc;
+        private final CachedStreamFactory streamFactory;
+        private final IChildDocumentConsumer childConsumer;
+        // Parent fields are shared by all rows instead of copied to each
+        private final ImporterMetadata.Snapshot parentMeta;
+        private final RowContent content = new RowContent();
+        private Column[] columns = new Column[0];
+        private String[] colNames;
+        private int count;
+        public RowSplitter(SplittableDocument doc, 
+                CachedStreamFactory streamFactory,
+                IChildDocumentConsumer childConsumer) {
+            super();
+            this.doc = doc;
+            this.streamFactory = streamFactory;
+            this.childConsumer = childConsumer;
+            this.parentMeta = doc.getMetadata().snapshot();
+        }
+        @Override
+        public void handleRow(String[] cols) throws IOException {
             count++;
-            ImporterMetadata childMeta = new ImporterMetadata();
-            childMeta.load(doc.getMetadata());
-            String childEmbedRef = "row-" + count;
             if (count == 1 && useFirstRowAsFields) {
                 colNames = cols;
-            } else {
-                for (int i = 0; i < cols.length; i++) {
-                    int colPos = i + 1;
-                    String colName = null;
-                    if (colNames == null || i >= colNames.length) {
-                        colName = "column" + colPos;
-                    } else {
-                        colName = colNames[i];
-                    }
-                    String colValue = cols[i];
+                return;
+            }
+            if (cols.length > columns.length) {
+                columns = resolveColumns(columns, cols.length, colNames);
+            }
+            ImporterMetadata childMeta = new ImporterMetadata(parentMeta);
+            String childEmbedRef = "row-" + count;
+            for (int i = 0; i < cols.length; i++) {
+                Column column = columns[i];
+                String colValue = cols[i];
 
-                    // If a reference column, set reference value 
-                    if (isColumnMatching(colName, colPos, referenceColumn)) {
-                        childEmbedRef = colValue;
-                    }
-                    // If a content column, add it to content
-                    if (isColumnMatching(colName, colPos, contentColumns)) {
-                        if (contentStr.length() > 0) {
-                            contentStr.append(" ");
-                        }
-                        contentStr.append(colValue);
-                    }
-                    childMeta.setString(colName, colValue);
+                // If a reference column, set reference value 
+                if (column.reference) {
+                    childEmbedRef = colValue;
                 }
-                String childDocRef = doc.getReference() + "!" + childEmbedRef;
-                CachedInputStream content = null;
-                if (contentStr.length() > 0) {
-                    content = streamFactory.newInputStream(
-                            contentStr.toString());
-                    contentStr.setLength(0);
-                } else {
-                    content = streamFactory.newInputStream();
+                // If a content column, add it to content
+                if (column.content) {
+                    content.append(colValue);
                 }
-                ImporterDocument childDoc = 
-                        new ImporterDocument(childDocRef, content, childMeta); 
-                childMeta.setReference(childDocRef);
-                childMeta.setEmbeddedReference(childEmbedRef);
-                childMeta.setEmbeddedParentReference(doc.getReference());
-                childMeta.setEmbeddedParentRootReference(doc.getReference());
-                rows.add(childDoc);
+                childMeta.setString(column.name, colValue);
+            }
+            String childDocRef = doc.getReference() + "!" + childEmbedRef;
+            ImporterDocument childDoc = new ImporterDocument(childDocRef, 
+                    content.toInputStream(streamFactory), childMeta); 
+            childMeta.setReference(childDocRef);
+            childMeta.setEmbeddedReference(childEmbedRef);
+            childMeta.setEmbeddedParentReference(doc.getReference());
+            childMeta.setEmbeddedParentRootReference(doc.getReference());
+            childConsumer.consumeChildDocument(childDoc);
+        }
+    }
+
+    // Resolves how columns are used once for all rows, growing the array 
+    // when rows have more columns than previous ones.
+    private Column[] resolveColumns(
+            Column[] columns, int size, String[] colNames) {
+        Column[] resolved = Arrays.copyOf(columns, size);
+        for (int i = columns.length; i < size; i++) {
+            int colPos = i + 1;
+            String colName = null;
+            if (colNames == null || i >= colNames.length) {
+                colName = "column" + colPos;
+            } else {
+                colName = colNames[i];
             }
+            resolved[i] = new Column(colName, 
+                    isColumnMatching(colName, colPos, referenceColumn),
+                    isColumnMatching(colName, colPos, contentColumns));
         }
-        IOUtils.closeQuietly(cvsreader);
-        return rows;
+        return resolved;
     }
 
     private boolean isColumnMatching(
@@ -291,6 +363,27 @@ public class CsvSplitter extends AbstractDocumentSplitter
         this.contentColumns = contentColumns;
     }
 
+    /**
+     * Gets the number of threads parsing the content.
+     * @return number of parsing threads
+     * @since 2.1.0
+     */
+    public int getParsingThreads() {
+        return parsingThreads;
+    }
+    /**
+     * Sets the number of threads parsing the content.  Default is 1.
+     * When greater than 1, the content is copied to a temporary file 
+     * and parsed in parallel (unless the separator, quote or escape 
+     * character is not an ASCII character). Only worth it for very large 
+     * files.
+     * @param parsingThreads number of parsing threads
+     * @since 2.1.0
+     */
+    public void setParsingThreads(int parsingThreads) {
+        this.parsingThreads = parsingThreads;
+    }
+
     
 
     @Override
@@ -299,17 +392,19 @@ public class CsvSplitter extends AbstractDocumentSplitter
                 xml, "[@separatorCharacter]", separatorCharacter));
         setQuoteCharacter(loadCharacter(
                 xml, "[@quoteCharacter]", quoteCharacter));
-        setQuoteCharacter(loadCharacter(
+        setEscapeCharacter(loadCharacter(
                 xml, "[@escapeCharacter]", escapeCharacter));
-        setUseFirstRowAsFields(
-                xml.getBoolean("useFirstRowAsFields", useFirstRowAsFields));
-        setLinesToSkip(xml.getInt("linesToSkip", linesToSkip));
-        setReferenceColumn(xml.getString("referenceColumn", referenceColumn));
+        setUseFirstRowAsFields(xml.getBoolean(
+                "[@useFirstRowAsFields]", useFirstRowAsFields));
+        setLinesToSkip(xml.getInt("[@linesToSkip]", linesToSkip));
+        setReferenceColumn(xml.getString(
+                "[@referenceColumn]", referenceColumn));
 
-        String contentCols = xml.getString("contentColumns", null);
+        String contentCols = xml.getString("[@contentColumns]", null);
         if (StringUtils.isNotBlank(contentCols)) {
             setContentColumns(contentCols.split(","));
         }
+        setParsingThreads(xml.getInt("[@parsingThreads]", parsingThreads));
     }
 
     @Override
@@ -324,6 +419,8 @@ public class CsvSplitter extends AbstractDocumentSplitter
         writer.writeAttribute(
                 "useFirstRowAsFields", String.valueOf(useFirstRowAsFields));
         writer.writeAttribute("linesToSkip", String.valueOf(linesToSkip));
+        writer.writeAttribute(
+                "parsingThreads", String.valueOf(parsingThreads));
 
         if (StringUtils.isNotBlank(referenceColumn)) {
             writer.writeAttribute("referenceColumn", referenceColumn);
@@ -348,4 +445,79 @@ public class CsvSplitter extends AbstractDocumentSplitter
         return character.charAt(0);
     }
 
+    private static class Column {
+        private final String name;
+        private final boolean reference;
+        private final boolean content;
+        public Column(String name, boolean reference, boolean content) {
+            super();
+            this.name = name;
+            this.reference = reference;
+            this.content = content;
+        }
+    }
+
+    // Row content, accumulated and encoded (UTF-8) to cached streams 
+    // using the same buffers for all rows.
+    private static class RowContent {
+        private static final int BYTE_BUFFER_SIZE = 8 * 1024;
+        private final StringBuilder text = new StringBuilder();
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8
+                .newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = 
+                ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+        private char[] chars = new char[BYTE_BUFFER_SIZE];
+
+        public void append(String value) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(value);
+        }
+        // Returns the content accumulated so far and resets it
+        public CachedInputStream toInputStream(
+                CachedStreamFactory streamFactory) throws IOException {
+            if (text.length() == 0) {
+                return streamFactory.newInputStream();
+            }
+            int length = text.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            text.getChars(0, length, chars, 0);
+            text.setLength(0);
+
+            CachedOutputStream out = streamFactory.newOuputStream();
+            try {
+                CharBuffer in = CharBuffer.wrap(chars, 0, length);
+                encoder.reset();
+                bytes.clear();
+                CoderResult result = null;
+                do {
+                    result = encoder.encode(in, bytes, true);
+                    drain(result, out);
+                } while (result.isOverflow());
+                do {
+                    result = encoder.flush(bytes);
+                    drain(result, out);
+                } while (result.isOverflow());
+                out.write(bytes.array(), 0, bytes.position());
+                return out.getInputStream();
+            } finally {
+                IOUtils.closeQuietly(out);
+            }
+        }
+        private void drain(CoderResult result, OutputStream out)
+                throws IOException {
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow()) {
+                out.write(bytes.array(), 0, bytes.position());
+                bytes.clear();
+            }
+        }
+    }
 }
@@ -0,0 +1,362 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.handler.splitter.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Reads UTF-8 CSV content with several threads.  The content is copied
+ * to a temporary file while being scanned for record boundaries
+ * (line breaks outside quoted values), splitting it in byte ranges
+ * of about the same size.  Each range is memory-mapped and parsed by
+ * its own {@link CSVReader} as soon as it is known, while copying
+ * continues.  Rows are handed over in their original order, from the
+ * calling thread.
+ * <p />
+ * Scanning bytes is only possible when the separator, quote and escape
+ * characters are ASCII characters (see {@link #isSupported(char...)}).
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+final class ParallelCsvReader {
+
+    private static final Logger LOG =
+            LogManager.getLogger(ParallelCsvReader.class);
+
+    /** Default approximate size of byte ranges parsed by each thread. */
+    public static final int DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // Largest part of a range mapped at once
+    private static final int MAX_MAP_SIZE = 256 * 1024 * 1024;
+
+    private final char separator;
+    private final char quote;
+    private final char escape;
+    private final int linesToSkip;
+    private final int threads;
+    private final int rangeSize;
+    private final File tempDir;
+
+    /**
+     * Creates a parallel CSV reader.
+     * @param separator separator character
+     * @param quote quote character
+     * @param escape escape character
+     * @param linesToSkip number of lines to skip at the beginning
+     * @param threads number of parsing threads
+     * @param rangeSize approximate size of byte ranges parsed by each
+     *        thread
+     * @param tempDir directory where the content is copied while
+     *        parsed, or <code>null</code> for the system temporary 
+     *        directory
+     */
+    public ParallelCsvReader(char separator, char quote, char escape,
+            int linesToSkip, int threads, int rangeSize, File tempDir) {
+        super();
+        this.separator = separator;
+        this.quote = quote;
+        this.escape = escape;
+        this.linesToSkip = linesToSkip;
+        this.threads = threads;
+        this.rangeSize = rangeSize;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Handles CSV rows, in the order they appear in the content.
+     */
+    public interface RowHandler {
+        void handleRow(String[] row) throws IOException;
+    }
+
+    /**
+     * Whether the given characters can be found by scanning UTF-8 bytes.
+     * @param characters separator, quote and escape characters
+     * @return <code>true</code> if all characters are ASCII and not
+     *         line breaks
+     */
+    public static boolean isSupported(char... characters) {
+        for (char ch : characters) {
+            if (ch >= 0x80 || ch == '\r' || ch == '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads all CSV rows from the given UTF-8 content.
+     * @param input CSV content
+     * @param handler handler of each row
+     * @throws IOException problem reading the content or handling a row
+     */
+    public void read(InputStream input, RowHandler handler)
+            throws IOException {
+        File file = File.createTempFile("csv-split-", ".csv", tempDir);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (FileOutputStream out = new FileOutputStream(file);
+                RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            LinkedList<Future<List<String[]>>> inFlight = new LinkedList<>();
+            BoundaryScanner scanner = new BoundaryScanner();
+            List<Long> boundaries = new ArrayList<>();
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long position = 0;
+            long rangeStart = 0;
+            int read = 0;
+            while ((read = input.read(buffer)) != -1) {
+                // Unbuffered, so what is written is visible to mappings
+                out.write(buffer, 0, read);
+                scanner.scan(buffer, read, position, boundaries);
+                position += read;
+                for (long boundary : boundaries) {
+                    inFlight.add(executor.submit(new RangeParser(
+                            channel, rangeStart, boundary, rangeStart == 0)));
+                    rangeStart = boundary;
+                }
+                boundaries.clear();
+                handleParsedRanges(inFlight, handler, threads * 2);
+            }
+            if (position > rangeStart) {
+                inFlight.add(executor.submit(new RangeParser(
+                        channel, rangeStart, position, rangeStart == 0)));
+            }
+            handleParsedRanges(inFlight, handler, 0);
+        } finally {
+            executor.shutdownNow();
+            // Mapped ranges are released once garbage collected,
+            // which on some systems prevents deleting the file before
+            if (!file.delete()) {
+                LOG.debug("Could not delete temporary file now: " + file);
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    // Hands over rows of ranges parsed so far, in order, waiting for
+    // ranges to be parsed while more than "maxInFlight" are pending.
+    private void handleParsedRanges(
+            LinkedList<Future<List<String[]>>> inFlight,
+            RowHandler handler, int maxInFlight) throws IOException {
+        while (!inFlight.isEmpty() && (inFlight.size() > maxInFlight
+                || inFlight.getFirst().isDone())) {
+            for (String[] row : getRows(inFlight.removeFirst())) {
+                handler.handleRow(row);
+            }
+        }
+    }
+    private List<String[]> getRows(Future<List<String[]>> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while parsing CSV content.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Could not parse CSV content.", cause);
+        }
+    }
+
+    private class RangeParser implements Callable<List<String[]>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final boolean first;
+        public RangeParser(
+                FileChannel channel, long start, long end, boolean first) {
+            super();
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+        }
+        @Override
+        public List<String[]> call() throws IOException {
+            int skip = 0;
+            if (first) {
+                skip = linesToSkip;
+            }
+            List<String[]> rows = new ArrayList<>();
+            CSVReader reader = new CSVReader(new InputStreamReader(
+                    new MappedRangeInputStream(channel, start, end),
+                    StandardCharsets.UTF_8), separator, quote, escape, skip);
+            try {
+                String[] row = null;
+                while ((row = reader.readNext()) != null) {
+                    rows.add(row);
+                }
+            } finally {
+                IOUtils.closeQuietly(reader);
+            }
+            return rows;
+        }
+    }
+
+    // Reads a byte range of a file through memory mappings
+    private static class MappedRangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+        private ByteBuffer buffer;
+        public MappedRangeInputStream(
+                FileChannel channel, long start, long end) {
+            super();
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+        @Override
+        public int read() throws IOException {
+            if (!ensureRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensureRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+        private boolean ensureRemaining() throws IOException {
+            if (buffer != null && buffer.hasRemaining()) {
+                return true;
+            }
+            if (position >= end) {
+                return false;
+            }
+            long size = Math.min(end - position, MAX_MAP_SIZE);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position, size);
+            position += size;
+            return true;
+        }
+    }
+
+    // Finds record ends following the quote handling of the opencsv
+    // parser: line breaks end a record unless within quotes, and
+    // escaped or doubled quotes only count within quotes.  Lines to skip
+    // are physical lines, like CSVReader skips them.
+    private class BoundaryScanner {
+        private int skippedLines;
+        private boolean inQuotes;
+        private boolean quotePending;
+        private boolean escapePending;
+        private boolean afterCR;
+        private boolean recordEndedAtCR;
+        private long lastBoundary;
+
+        public void scan(byte[] bytes, int length, long basePosition,
+                List<Long> boundaries) {
+            for (int i = 0; i < length; i++) {
+                int ch = bytes[i] & 0xFF;
+                if (ch == '\n' && afterCR) {
+                    // second character of a CRLF line break
+                    afterCR = false;
+                    if (recordEndedAtCR) {
+                        recordEndedAtCR = false;
+                        addBoundary(basePosition + i + 1, boundaries);
+                    }
+                    continue;
+                }
+                afterCR = ch == '\r';
+                recordEndedAtCR = false;
+                if (skippedLines < linesToSkip) {
+                    if (ch == '\r' || ch == '\n') {
+                        skippedLines++;
+                    }
+                    continue;
+                }
+                if (quotePending) {
+                    quotePending = false;
+                    if (ch == quote) {
+                        // doubled quote
+                        continue;
+                    }
+                    inQuotes = !inQuotes;
+                } else if (escapePending) {
+                    escapePending = false;
+                    if (ch == quote || ch == escape) {
+                        continue;
+                    }
+                }
+                if (ch == '\r' || ch == '\n') {
+                    if (!inQuotes) {
+                        if (ch == '\n') {
+                            addBoundary(basePosition + i + 1, boundaries);
+                        } else {
+                            recordEndedAtCR = true;
+                        }
+                    }
+                } else if (ch == escape) {
+                    escapePending = inQuotes;
+                } else if (ch == quote) {
+                    if (inQuotes) {
+                        quotePending = true;
+                    } else {
+                        inQuotes = true;
+                    }
+                }
+            }
+        }
+        private void addBoundary(long position, List<Long> boundaries) {
+            if (position - lastBoundary >= rangeSize) {
+                boundaries.add(position);
+                lastBoundary = position;
+            }
+        }
+    }
+}
@@ -17,7 +17,6 @@ package com.norconex.importer.handler.tagger;
 import java.io.IOException;
 import java.io.Reader;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -25,21 +24,22 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
-import com.norconex.commons.lang.MemoryUtil;
 import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.importer.doc.ImporterMetadata;
 import com.norconex.importer.handler.ImporterHandlerException;
-import com.norconex.importer.util.BufferUtil;
+import com.norconex.importer.util.BufferMemoryBudget;
+import com.norconex.importer.util.ChunkedTextReader;
 
 /**
  * <p>Base class to facilitate creating taggers based on text content, loading
  * text into {@link StringBuilder} for memory processing, also giving more 
- * options (like fancy regex).  This class checks for free memory every 10KB of 
- * text read.  If enough memory, it keeps going for another 10KB or until
- * all the content is read, or the buffer size reaches half the available 
- * memory.  In either case, it passes the buffered content so far for 
- * tagging (all of it for small enough content, or in several
- * chunks for large content).
+ * options (like fancy regex).  As of 2.1.0, the buffer grows as the
+ * text is read, as long as the importer buffer memory budget allows it
+ * (see {@link BufferMemoryBudget} and {@link ChunkedTextReader}).  
+ * When the budget is reached, the content buffered so far is passed for 
+ * tagging and the buffer 
+ * is reused for the rest (all of it for small enough content, or in 
+ * several chunks for large content).
  * </p>
  * <p>
  * Implementors should be conscious about memory when dealing with the string
@@ -62,45 +62,26 @@ public abstract class AbstractStringTagger
             extends AbstractCharStreamTagger {
 
     //TODO try to share more with AbstractStringTransformer
-    //TODO maybe: Add to importer config something about max buffer memory.
-    // That way, we can ensure to apply the memory check technique on content of 
-    // the same size (threads should be taken into account), 
-    // as opposed to have one big file take all the memory so other big files
-    // are forced to do smaller chunks at a time.
     
     private static final Logger LOG = 
             LogManager.getLogger(AbstractStringTagger.class);
 
-    private static final int READ_CHUNK_SIZE = 10 * (int) FileUtils.ONE_KB;
-    private static final int STRING_TOTAL_MEMORY_DIVIDER = 4;
-    
     @Override
     protected final void tagTextDocument(
             String reference, Reader input,
             ImporterMetadata metadata, boolean parsed)
             throws ImporterHandlerException {
         
-        try {
-            // Initial size is half free memory, considering chars take 2 bytes
-            StringBuilder b = new StringBuilder(
-                    (int)(MemoryUtil.getFreeMemory() 
-                            / STRING_TOTAL_MEMORY_DIVIDER));
-            int i;
-            while ((i = input.read()) != -1) {
-                char ch = (char) i;
-                b.append(ch);
-                if (b.length() * 2 % READ_CHUNK_SIZE == 0
-                        && isTakingTooMuchMemory(b)) {
-                    tagStringContent(reference, b, metadata, parsed, true);
-                    BufferUtil.flushBuffer(b, null, true);
+        try (ChunkedTextReader reader = new ChunkedTextReader(input, null)) {
+            boolean chunked = false;
+            while (reader.readNext()) {
+                if (reader.isPartial() && !chunked) {
+                    logChunking(reference);
+                    chunked = true;
                 }
+                tagStringContent(reference, reader.getChunk(), 
+                        metadata, parsed, reader.isPartial());
             }
-            if (b.length() > 0) {
-                tagStringContent(reference, b, metadata, parsed, false);
-                BufferUtil.flushBuffer(b, null, false);
-            }
-            b.setLength(0);
-            b = null;
         } catch (IOException e) {
             throw new ImporterHandlerException("Cannot tag text document.", e);
         }
@@ -113,27 +94,19 @@ public abstract class AbstractStringTagger
            boolean parsed, boolean partialContent) 
                    throws ImporterHandlerException;
     
-    // We ensure buffer size never goes beyond half available memory.
-    private boolean isTakingTooMuchMemory(StringBuilder b) {
-        int maxMem = (int) MemoryUtil.getFreeMemory() / 2;
-        int bufMem = b.length() * 2;
-        boolean busted = bufMem > maxMem;
-        if (busted) {
-            LOG.warn("Text document read via tagger is quite big for "
-                + "remaining JVM memory.  It was split in text chunks and "
-                + "tagging will be applied on each chunk.  This "
-                + "may sometimes result in unexpected tagging. "
-                + "To eliminate this risk, increase the JVM maximum heap "
-                + "space to more than double the processed content size "
-                + "by using the -xmx flag to your startup script "
-                + "(e.g. -xmx1024m for 1 Gigabyte).  In addition, "
-                + "reducing the number of threads may help (if applicable). "
-                + "As an alternative, you can also implement a new solution " 
-                + "using AbstractCharSteamTagger instead, which relies "
-                + "on streams (taking very little fixed-size memory when "
-                + "done right).");
-        }
-        return busted;
+    private void logChunking(String reference) {
+        LOG.warn("Text document read via tagger is quite big for "
+            + "the importer buffer memory budget: " + reference + ".  It "
+            + "was split in text chunks and tagging will be applied on each "
+            + "chunk.  This may sometimes result in unexpected tagging. "
+            + "To eliminate this risk, increase the importer "
+            + "\"maxBufferMemory\" (and the JVM maximum heap space "
+            + "accordingly, with the -xmx flag).  In addition, "
+            + "reducing the number of threads may help (if applicable). "
+            + "As an alternative, you can also implement a new solution " 
+            + "using AbstractCharSteamTagger instead, which relies "
+            + "on streams (taking very little fixed-size memory when "
+            + "done right).");
     }
 
     @Override
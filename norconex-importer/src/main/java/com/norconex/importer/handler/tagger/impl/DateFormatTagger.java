@@ -16,11 +16,13 @@ package com.norconex.importer.handler.tagger.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -28,7 +30,7 @@ import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
@@ -45,6 +47,16 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
  * for <code>fromFormat</code> or <code>toFormat</code> when not specified
  * is EPOCH.  
  * <p />
+ * Since 2.1.0, more than one <code>fromFormat</code> can be specified.
+ * They are tried in the order specified until one matches. 
+ * Two special formats are also supported: <code>EPOCH</code> 
+ * (milliseconds since January 1st, 1970) and <code>ISO8601</code>
+ * (e.g. <code>2001-10-10</code>, <code>2001-10-10T11:32:21</code>,
+ * or <code>2001-10-10T11:32:21.123-05:00</code>).  Both are parsed without
+ * going through {@link SimpleDateFormat}. When no time zone is specified
+ * in ISO-8601 values, the default time zone is used. Formats are compiled
+ * once and can safely be used by concurrent threads. 
+ * <p />
  * When omitting the <code>toField</code>, the value will replace the one
  * in the same field.
  * <p />
@@ -62,6 +74,10 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
  *      fromFormat="(date format)" toFormat="(date format)"
  *      keepBadDates="(false|true)" overwrite="[false|true]" &gt
  *      
+ *      &lt;!-- Instead of the "fromFormat" attribute, you can specify 
+ *           multiple formats to try, in order: --&gt;
+ *      &lt;fromFormat&gt;(date format)&lt;/fromFormat&gt;
+ *      
  *      &lt;restrictTo caseSensitive="[false|true]" &gt;
  *              field="(name of header/metadata field name to match)"&gt;
  *          (regular expression of value to match)
@@ -75,15 +91,27 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
  */
 public class DateFormatTagger extends AbstractDocumentTagger {
 
+    /** Milliseconds since January 1st, 1970. */
+    public static final String FORMAT_EPOCH = "EPOCH";
+    /** ISO-8601 date, with optional time and time zone. */
+    public static final String FORMAT_ISO8601 = "ISO8601";
+
     private static final Logger LOG = 
-            LogManager.getLogger(CharacterCaseTagger.class);
-    
+            LogManager.getLogger(DateFormatTagger.class);
+
+    private static final DateParser EPOCH_PARSER = new EpochParser();
+    private static final DateParser ISO8601_PARSER = new ISO8601Parser();
+
     private String fromField;
     private String toField;
-    private String fromFormat;
+    private String[] fromFormats = ArrayUtils.EMPTY_STRING_ARRAY;
     private String toFormat;
     private boolean overwrite;
     private boolean keepBadDates;
+
+    // Compiled on first use
+    private volatile DateParser[] parsers;
+    private volatile FastDateFormat formatter;
     
     /**
      * Constructor.
@@ -128,35 +156,63 @@ public class DateFormatTagger extends AbstractDocumentTagger {
         
         //--- Parse from date ---
         Date date = null;
-        if (StringUtils.isBlank(fromFormat)) {
-            // From date format is EPOCH
-            long millis = NumberUtils.toLong(fromDate, -1);
-            if (millis == -1) {
-                LOG.warn("Invalid date format found in " + fromField
-                        + ". When no \"fromFormat\" is specified, the date "
-                        + "value is expected to be of EPOCH format.");
-                return null;
-            }
-            date = new Date(millis);
-        } else {
-            // From date is custom format
-            try {
-                date = new SimpleDateFormat(fromFormat).parse(fromDate);
-            } catch (ParseException e) {
-                LOG.warn("Invalid date format found in " + fromField + ".", e);
-                return null;
+        for (DateParser parser : getParsers()) {
+            date = parser.parse(fromDate);
+            if (date != null) {
+                break;
             }
         }
+        if (date == null) {
+            LOG.warn("Invalid date format found in " + fromField + ": \""
+                    + fromDate + "\". Expected formats: " 
+                    + StringUtils.join(getParsers(), ", "));
+            return null;
+        }
 
         //--- Format to date ---
-        String toDate = null;
-        if (StringUtils.isBlank(toFormat)) {
-            // To date foramt is EPOCH
-            toDate = Long.toString(date.getTime());
-        } else {
-            toDate = new SimpleDateFormat(toFormat).format(date);
+        FastDateFormat toDateFormat = getFormatter();
+        if (toDateFormat == null) {
+            // To date format is EPOCH
+            return Long.toString(date.getTime());
         }
-        return toDate;
+        return toDateFormat.format(date);
+    }
+
+    private DateParser[] getParsers() {
+        DateParser[] compiled = parsers;
+        if (compiled == null) {
+            if (fromFormats.length == 0) {
+                compiled = new DateParser[] { EPOCH_PARSER };
+            } else {
+                compiled = new DateParser[fromFormats.length];
+                for (int i = 0; i < fromFormats.length; i++) {
+                    compiled[i] = toParser(fromFormats[i]);
+                }
+            }
+            parsers = compiled;
+        }
+        return compiled;
+    }
+    private DateParser toParser(String format) {
+        if (StringUtils.isBlank(format) || FORMAT_EPOCH.equals(format)) {
+            return EPOCH_PARSER;
+        }
+        if (FORMAT_ISO8601.equals(format)) {
+            return ISO8601_PARSER;
+        }
+        return new PatternParser(format);
+    }
+    private FastDateFormat getFormatter() {
+        if (StringUtils.isBlank(toFormat) || FORMAT_EPOCH.equals(toFormat)) {
+            return null;
+        }
+        FastDateFormat compiled = formatter;
+        if (compiled == null) {
+            // FastDateFormat instances are cached and thread-safe
+            compiled = FastDateFormat.getInstance(toFormat);
+            formatter = compiled;
+        }
+        return compiled;
     }
 
     public String getFromField() {
@@ -173,11 +229,49 @@ public class DateFormatTagger extends AbstractDocumentTagger {
         this.toField = toField;
     }
 
+    /**
+     * Gets the first format dates are parsed from.
+     * @return date format, or <code>null</code> if EPOCH
+     */
     public String getFromFormat() {
-        return fromFormat;
+        if (fromFormats.length == 0) {
+            return null;
+        }
+        return fromFormats[0];
     }
+    /**
+     * Sets the format dates are parsed from, replacing any existing ones.
+     * @param fromFormat date format (<code>null</code> for EPOCH)
+     */
     public void setFromFormat(String fromFormat) {
-        this.fromFormat = fromFormat;
+        if (fromFormat == null) {
+            setFromFormats();
+        } else {
+            setFromFormats(fromFormat);
+        }
+    }
+
+    /**
+     * Gets the formats dates are parsed from, in the order they are tried.
+     * @return date formats (empty for EPOCH)
+     * @since 2.1.0
+     */
+    public String[] getFromFormats() {
+        return ArrayUtils.clone(fromFormats);
+    }
+    /**
+     * Sets the formats dates are parsed from, in the order they are tried.
+     * The first one matching a date value is used.
+     * @param fromFormats date formats (none for EPOCH)
+     * @since 2.1.0
+     */
+    public void setFromFormats(String... fromFormats) {
+        if (fromFormats == null) {
+            this.fromFormats = ArrayUtils.EMPTY_STRING_ARRAY;
+        } else {
+            this.fromFormats = ArrayUtils.clone(fromFormats);
+        }
+        this.parsers = null;
     }
 
     public String getToFormat() {
@@ -185,6 +279,7 @@ public class DateFormatTagger extends AbstractDocumentTagger {
     }
     public void setToFormat(String toFormat) {
         this.toFormat = toFormat;
+        this.formatter = null;
     }
     
     public boolean isOverwrite() {
@@ -216,8 +311,13 @@ public class DateFormatTagger extends AbstractDocumentTagger {
     protected void loadHandlerFromXML(XMLConfiguration xml) throws IOException {
         fromField = xml.getString("[@fromField]", fromField);
         toField = xml.getString("[@toField]", toField);
-        fromFormat = xml.getString("[@fromFormat]", fromFormat);
-        toFormat = xml.getString("[@toFormat]", toFormat);
+        String[] formats = xml.getStringArray("fromFormat");
+        if (ArrayUtils.isNotEmpty(formats)) {
+            setFromFormats(formats);
+        } else {
+            setFromFormat(xml.getString("[@fromFormat]", getFromFormat()));
+        }
+        setToFormat(xml.getString("[@toFormat]", toFormat));
         overwrite = xml.getBoolean("[@overwrite]", overwrite);
         keepBadDates = xml.getBoolean("[@keepBadDates]", keepBadDates);
     }
@@ -227,10 +327,19 @@ public class DateFormatTagger extends AbstractDocumentTagger {
             throws XMLStreamException {
         writer.writeAttributeString("fromField", fromField);
         writer.writeAttributeString("toField", toField);
-        writer.writeAttributeString("fromFormat", fromFormat);
+        if (fromFormats.length == 1) {
+            writer.writeAttributeString("fromFormat", fromFormats[0]);
+        }
         writer.writeAttributeString("toFormat", toFormat);
         writer.writeAttributeBoolean("overwrite", overwrite);
         writer.writeAttributeBoolean("keepBadDates", keepBadDates);
+        if (fromFormats.length > 1) {
+            for (String format : fromFormats) {
+                writer.writeStartElement("fromFormat");
+                writer.writeCharacters(format);
+                writer.writeEndElement();
+            }
+        }
     }
 
     
@@ -240,7 +349,7 @@ public class DateFormatTagger extends AbstractDocumentTagger {
         ToStringBuilder builder = new ToStringBuilder(this);
         builder.append("fromField", fromField);
         builder.append("toField", toField);
-        builder.append("fromFormat", fromFormat);
+        builder.append("fromFormats", fromFormats);
         builder.append("toFormat", toFormat);
         builder.append("overwrite", overwrite);
         builder.append("keepBadDates", keepBadDates);
@@ -255,7 +364,7 @@ public class DateFormatTagger extends AbstractDocumentTagger {
         return new EqualsBuilder().appendSuper(super.equals(other))
                 .append(fromField, castOther.fromField)
                 .append(toField, castOther.toField)
-                .append(fromFormat, castOther.fromFormat)
+                .append(fromFormats, castOther.fromFormats)
                 .append(toFormat, castOther.toFormat)
                 .append(overwrite, castOther.overwrite)
                 .append(keepBadDates, castOther.keepBadDates).isEquals();
@@ -264,10 +373,222 @@ public class DateFormatTagger extends AbstractDocumentTagger {
     @Override
     public int hashCode() {
         return new HashCodeBuilder().appendSuper(super.hashCode())
-                .append(fromField).append(toField).append(fromFormat)
+                .append(fromField).append(toField).append(fromFormats)
                 .append(toFormat).append(overwrite).append(keepBadDates)
                 .toHashCode();
     }
-    
-    
+
+    private interface DateParser {
+        // Returns null if the value does not match
+        Date parse(String value);
+    }
+
+    private static class EpochParser implements DateParser {
+        @Override
+        public Date parse(String value) {
+            String trimmed = value.trim();
+            int start = 0;
+            if (trimmed.startsWith("-")) {
+                start = 1;
+            }
+            // checked by hand to avoid exceptions on non-epoch values
+            int length = trimmed.length() - start;
+            if (length == 0 || length > 18) {
+                return null;
+            }
+            long millis = 0;
+            for (int i = start; i < trimmed.length(); i++) {
+                char ch = trimmed.charAt(i);
+                if (ch < '0' || ch > '9') {
+                    return null;
+                }
+                millis = millis * 10 + (ch - '0');
+            }
+            if (start == 1) {
+                millis = -millis;
+            }
+            return new Date(millis);
+        }
+        @Override
+        public String toString() {
+            return FORMAT_EPOCH;
+        }
+    }
+
+    private static class PatternParser implements DateParser {
+        private final String pattern;
+        // SimpleDateFormat is not thread-safe, so each thread gets its own
+        private final ThreadLocal<SimpleDateFormat> dateFormats =
+                new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                return new SimpleDateFormat(pattern);
+            }
+        };
+        public PatternParser(String pattern) {
+            super();
+            this.pattern = pattern;
+            // fail right away on invalid patterns
+            new SimpleDateFormat(pattern);
+        }
+        @Override
+        public Date parse(String value) {
+            // no exception is thrown when not matching
+            String trimmed = StringUtils.trim(value);
+            ParsePosition pos = new ParsePosition(0);
+            Date date = dateFormats.get().parse(trimmed, pos);
+            // only part of the value matched: let the next format try
+            if (pos.getIndex() != trimmed.length()) {
+                return null;
+            }
+            return date;
+        }
+        @Override
+        public String toString() {
+            return pattern;
+        }
+    }
+
+    // Parses yyyy-MM-dd, optionally followed by 'T' and HH:mm, HH:mm:ss 
+    // or HH:mm:ss.S (any number of fraction digits), optionally followed
+    // by a time zone: Z, +HH, +HHmm or +HH:mm (or minus).
+    private static class ISO8601Parser implements DateParser {
+        // Values with a time zone are computed in UTC, then offset
+        private final ThreadLocal<Calendar> utcCalendars =
+                new ThreadLocal<Calendar>() {
+            @Override
+            protected Calendar initialValue() {
+                return newCalendar(TimeZone.getTimeZone("UTC"));
+            }
+        };
+        private final ThreadLocal<Calendar> localCalendars =
+                new ThreadLocal<Calendar>() {
+            @Override
+            protected Calendar initialValue() {
+                return newCalendar(TimeZone.getDefault());
+            }
+        };
+        private static Calendar newCalendar(TimeZone timeZone) {
+            Calendar cal = Calendar.getInstance(timeZone);
+            cal.setLenient(false);
+            return cal;
+        }
+        @Override
+        public Date parse(String value) {
+            String v = value.trim();
+            int len = v.length();
+            if (len < 10 || v.charAt(4) != '-' || v.charAt(7) != '-') {
+                return null;
+            }
+            int year = toInt(v, 0, 4);
+            int month = toInt(v, 5, 7);
+            int day = toInt(v, 8, 10);
+            int hour = 0;
+            int minute = 0;
+            int second = 0;
+            int millis = 0;
+            int offsetMillis = 0;
+            boolean hasZone = false;
+            int i = 10;
+            if (i < len && v.charAt(i) == 'T') {
+                if (len < i + 6 || v.charAt(i + 3) != ':') {
+                    return null;
+                }
+                hour = toInt(v, i + 1, i + 3);
+                minute = toInt(v, i + 4, i + 6);
+                i += 6;
+                if (i < len && v.charAt(i) == ':') {
+                    if (len < i + 3) {
+                        return null;
+                    }
+                    second = toInt(v, i + 1, i + 3);
+                    i += 3;
+                    if (i < len && (v.charAt(i) == '.' 
+                            || v.charAt(i) == ',')) {
+                        i++;
+                        int start = i;
+                        while (i < len && isDigit(v.charAt(i))) {
+                            i++;
+                        }
+                        if (i == start) {
+                            return null;
+                        }
+                        String fraction = v.substring(
+                                start, Math.min(i, start + 3));
+                        millis = toInt(StringUtils.rightPad(
+                                fraction, 3, '0'), 0, 3);
+                    }
+                }
+                if (i < len) {
+                    hasZone = true;
+                    char sign = v.charAt(i);
+                    if (sign == 'Z' && i == len - 1) {
+                        i++;
+                    } else if (sign == '+' || sign == '-') {
+                        int zoneHours = toInt(v, i + 1, i + 3);
+                        int zoneMinutes = 0;
+                        i += 3;
+                        if (i < len && v.charAt(i) == ':') {
+                            i++;
+                        }
+                        if (i < len) {
+                            zoneMinutes = toInt(v, i, i + 2);
+                            i += 2;
+                        }
+                        if (zoneHours < 0 || zoneMinutes < 0) {
+                            return null;
+                        }
+                        offsetMillis = (zoneHours * 60 + zoneMinutes) 
+                                * 60 * 1000;
+                        if (sign == '-') {
+                            offsetMillis = -offsetMillis;
+                        }
+                    } else {
+                        return null;
+                    }
+                }
+            }
+            if (i != len || year < 0 || month < 0 || day < 0 
+                    || hour < 0 || minute < 0 || second < 0) {
+                return null;
+            }
+            Calendar cal = null;
+            if (hasZone) {
+                cal = utcCalendars.get();
+            } else {
+                cal = localCalendars.get();
+            }
+            cal.clear();
+            cal.set(year, month - 1, day, hour, minute, second);
+            cal.set(Calendar.MILLISECOND, millis);
+            try {
+                return new Date(cal.getTimeInMillis() - offsetMillis);
+            } catch (IllegalArgumentException e) {
+                // out of range field (calendar is not lenient)
+                return null;
+            }
+        }
+        // Returns -1 if not only digits or out of bounds
+        private int toInt(String value, int start, int end) {
+            if (end > value.length()) {
+                return -1;
+            }
+            int num = 0;
+            for (int i = start; i < end; i++) {
+                char ch = value.charAt(i);
+                if (!isDigit(ch)) {
+                    return -1;
+                }
+                num = num * 10 + (ch - '0');
+            }
+            return num;
+        }
+        private boolean isDigit(char ch) {
+            return ch >= '0' && ch <= '9';
+        }
+        @Override
+        public String toString() {
+            return FORMAT_ISO8601;
+        }
+    }
 }
@@ -16,6 +16,9 @@ package com.norconex.importer.handler.tagger.impl;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -355,13 +358,34 @@ import com.norconex.language.detector.LanguageDetectorException;
  * behavior is to try match all languages currently supported for your 
  * selected long/short text optimization.
  * <p />
+ * <h3>Sampling:</h3>
+ * Since 2.1.0, you can limit how much text is used for detection, which 
+ * is usually obtained with good accuracy after a few paragraphs. 
+ * Set a sample size (in characters) to only use that many characters
+ * from the beginning of the content ("head" sampling, the default), or 
+ * from evenly spread segments of the content ("spread" sampling). 
+ * Head sampling stops reading once the sample is obtained. Spread 
+ * sampling reads the entire content, but only keeps the sampled segments. 
+ * <p />
+ * You can also set a probability threshold to stop detection early. 
+ * Detection is then first attempted on a small part of the sample, 
+ * doubled in size each time until the most probable language reaches 
+ * that probability (or the sample is exhausted).  Without a sample size,
+ * the sample is then limited to {@link #EARLY_STOP_MAX_SAMPLE_SIZE} 
+ * characters, so it is never re-detected in full for large documents.
+ * <p />
+ * By default, the entire content is used. 
+ * <p />
  * <h3>XML configuration usage:</h3>
  * 
  * <pre>
  *  &lt;tagger class="com.norconex.importer.handler.tagger.impl.LanguageTagger"
  *          shortText="(false|true)"
  *          keepProbabilities="(false|true)"
- *          fallbackLanguage="" &gt;
+ *          fallbackLanguage=""
+ *          sampleSize="(maximum number of characters to use)"
+ *          sampling="(head|spread)"
+ *          earlyStopProbability="(0.0 to 1.0)" &gt;
  *      &lt;languages&gt
  *        (CSV list of language tag candidates. Defaults to the above list.)
  *      &lt;/languages&gt
@@ -386,14 +410,30 @@ public class LanguageTagger extends AbstractCharStreamTagger
     //TODO provide ways to overwrite or specify custom language profiles 
     // in this tagger configuration?
     
+    /** Samples text from the beginning of the content. */
+    public static final String SAMPLING_HEAD = "head";
+    /** Samples text from segments evenly spread across the content. */
+    public static final String SAMPLING_SPREAD = "spread";
+    /** Sample size used when stopping early without a sample size set. */
+    public static final int EARLY_STOP_MAX_SAMPLE_SIZE = 64 * 1024;
+
     private static final Logger LOG = 
             LogManager.getLogger(LanguageTagger.class);
     
-    private LanguageDetector detector;
+    // Number of segments making up a "spread" sample
+    private static final int SPREAD_SEGMENT_COUNT = 8;
+    // Size of the first sample part tried when stopping early is enabled
+    private static final int EARLY_STOP_INITIAL_SIZE = 2 * 1024;
+    private static final int READ_SIZE = 4 * 1024;
+
+    private volatile LanguageDetector detector;
     private boolean shortText;
     private boolean keepProbabilities;
     private String[] languages;
     private String fallbackLanguage;
+    private int sampleSize = -1;
+    private String sampling = SAMPLING_HEAD;
+    private double earlyStopProbability = -1;
     
     @Override
     protected void tagTextDocument(
@@ -405,8 +445,7 @@ public class LanguageTagger extends AbstractCharStreamTagger
         String languageTag = null;
 
         try {
-            LanguageDetector detector = getInitializedDetector();
-            DetectedLanguages langs = detector.detect(input);
+            DetectedLanguages langs = detect(input);
             if (!langs.isEmpty()) {
                 languageTag = langs.getBestLanguage().getTag();
             }
@@ -433,7 +472,92 @@ public class LanguageTagger extends AbstractCharStreamTagger
             if (StringUtils.isNotBlank(fallbackLanguage)) {
                 metadata.setLanguage(fallbackLanguage);
             }
+        } catch (IOException e) {
+            throw new ImporterHandlerException(
+                    "Cannot read document: " + reference, e);
+        }
+    }
+
+    private DetectedLanguages detect(Reader input)
+            throws LanguageDetectorException, IOException {
+        LanguageDetector languageDetector = getInitializedDetector();
+        if (sampleSize < 0 && earlyStopProbability <= 0) {
+            return languageDetector.detect(input);
+        }
+        Reader sampleInput = input;
+        if (sampleSize > 0 && SAMPLING_SPREAD.equals(sampling)) {
+            sampleInput = new StringReader(readSpreadSample(input));
+        }
+        // without a sample size, stopping early is enabled
+        int maxSize = EARLY_STOP_MAX_SAMPLE_SIZE;
+        if (sampleSize >= 0) {
+            maxSize = sampleSize;
+        }
+        int targetSize = maxSize;
+        if (earlyStopProbability > 0) {
+            targetSize = Math.min(EARLY_STOP_INITIAL_SIZE, maxSize);
+        }
+        StringBuilder sample = new StringBuilder();
+        while (true) {
+            boolean eof = read(sampleInput, sample, targetSize);
+            DetectedLanguages langs = languageDetector.detect(
+                    new StringReader(sample.toString()));
+            if (eof || targetSize >= maxSize || (!langs.isEmpty() 
+                    && langs.getBestLanguage().getProbability()
+                            >= earlyStopProbability)) {
+                return langs;
+            }
+            targetSize = (int) Math.min((long) targetSize * 2, maxSize);
+        }
+    }
+
+    // Reads until the text reaches the given size. Returns true when
+    // there is nothing left to read.
+    private boolean read(Reader input, StringBuilder text, int size)
+            throws IOException {
+        char[] buffer = new char[READ_SIZE];
+        while (text.length() < size) {
+            int read = input.read(buffer, 0, 
+                    Math.min(buffer.length, size - text.length()));
+            if (read == -1) {
+                return true;
+            }
+            text.append(buffer, 0, read);
+        }
+        return false;
+    }
+
+    // Keeps evenly spread segments without knowing the content length: 
+    // every time there are too many segments, every other one is dropped
+    // and only segments twice as far apart are kept from then on.
+    private String readSpreadSample(Reader input) throws IOException {
+        int segmentSize = Math.max(1, sampleSize / SPREAD_SEGMENT_COUNT);
+        List<String> segments = new ArrayList<>(SPREAD_SEGMENT_COUNT + 1);
+        StringBuilder segment = new StringBuilder(segmentSize);
+        long stride = 1;
+        long index = 0;
+        boolean eof = false;
+        while (!eof) {
+            segment.setLength(0);
+            eof = read(input, segment, segmentSize);
+            if (segment.length() == 0) {
+                break;
+            }
+            if (index % stride == 0) {
+                segments.add(segment.toString());
+                if (segments.size() > SPREAD_SEGMENT_COUNT) {
+                    List<String> kept = new ArrayList<>(
+                            SPREAD_SEGMENT_COUNT + 1);
+                    for (int i = 0; i < segments.size(); i += 2) {
+                        kept.add(segments.get(i));
+                    }
+                    segments = kept;
+                    stride *= 2;
+                }
+            }
+            index++;
         }
+        return StringUtils.join(segments, '\n');
     }
 
     public boolean isShortText() {
@@ -477,15 +601,86 @@ public class LanguageTagger extends AbstractCharStreamTagger
         this.fallbackLanguage = fallbackLanguage;
     }
 
+    /**
+     * Gets the maximum number of characters used for detection.
+     * @return sample size, or -1 if using the entire content
+     * @since 2.1.0
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+    /**
+     * Sets the maximum number of characters used for detection.
+     * Default is -1 (the entire content).
+     * @param sampleSize sample size, or -1 to use the entire content
+     * @since 2.1.0
+     */
+    public void setSampleSize(int sampleSize) {
+        ensureNotInitialized();
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Gets how text is sampled when a sample size is set.
+     * @return sampling method
+     * @since 2.1.0
+     */
+    public String getSampling() {
+        return sampling;
+    }
+    /**
+     * Sets how text is sampled when a sample size is set, either 
+     * {@link #SAMPLING_HEAD} (default) or {@link #SAMPLING_SPREAD}.
+     * @param sampling sampling method
+     * @since 2.1.0
+     */
+    public void setSampling(String sampling) {
+        ensureNotInitialized();
+        this.sampling = sampling;
+    }
+
+    /**
+     * Gets the probability the most probable language must reach 
+     * to stop detection early.
+     * @return early stop probability, or -1 if disabled
+     * @since 2.1.0
+     */
+    public double getEarlyStopProbability() {
+        return earlyStopProbability;
+    }
+    /**
+     * Sets the probability the most probable language must reach 
+     * to stop detection early, on part of the sample only.
+     * When no sample size is set, the sample is limited to 
+     * {@link #EARLY_STOP_MAX_SAMPLE_SIZE} characters.
+     * Default is -1 (disabled).
+     * @param earlyStopProbability probability between 0 and 1, 
+     *        or -1 to disable
+     * @since 2.1.0
+     */
+    public void setEarlyStopProbability(double earlyStopProbability) {
+        ensureNotInitialized();
+        this.earlyStopProbability = earlyStopProbability;
+    }
+
+    // Created once and shared by all threads
     private LanguageDetector getInitializedDetector() {
-        if (detector == null) {
-            if (ArrayUtils.isEmpty(languages)) {
-                detector = new LanguageDetector(shortText);
-            } else {
-                detector = new LanguageDetector(shortText, languages);
+        LanguageDetector languageDetector = detector;
+        if (languageDetector == null) {
+            synchronized (this) {
+                languageDetector = detector;
+                if (languageDetector == null) {
+                    if (ArrayUtils.isEmpty(languages)) {
+                        languageDetector = new LanguageDetector(shortText);
+                    } else {
+                        languageDetector = 
+                                new LanguageDetector(shortText, languages);
+                    }
+                    detector = languageDetector;
+                }
             }
         }
-        return detector;
+        return languageDetector;
     }
 
     public String[] getLanguages() {
@@ -520,6 +715,10 @@ public class LanguageTagger extends AbstractCharStreamTagger
             String[] langArray = languages.split("[\\s,]+");
             setLanguages(langArray);
         }
+        setSampleSize(xml.getInt("[@sampleSize]", getSampleSize()));
+        setSampling(xml.getString("[@sampling]", getSampling()));
+        setEarlyStopProbability(xml.getDouble(
+                "[@earlyStopProbability]", getEarlyStopProbability()));
     }
 
     @Override
@@ -529,6 +728,10 @@ public class LanguageTagger extends AbstractCharStreamTagger
         writer.writeAttribute(
                 "keepProbabilities", Boolean.toString(keepProbabilities));
         writer.writeAttribute("fallbackLanguage", fallbackLanguage);
+        writer.writeAttribute("sampleSize", Integer.toString(sampleSize));
+        writer.writeAttribute("sampling", sampling);
+        writer.writeAttribute("earlyStopProbability", 
+                Double.toString(earlyStopProbability));
         
         if (ArrayUtils.isNotEmpty(languages)) {
             writer.writeStartElement("languages");
@@ -548,6 +751,9 @@ public class LanguageTagger extends AbstractCharStreamTagger
                 .append(keepProbabilities, castOther.keepProbabilities)
                 .append(languages, castOther.languages)
                 .append(fallbackLanguage, castOther.fallbackLanguage)
+                .append(sampleSize, castOther.sampleSize)
+                .append(sampling, castOther.sampling)
+                .append(earlyStopProbability, castOther.earlyStopProbability)
                 .isEquals();
     }
 
@@ -555,7 +761,9 @@ public class LanguageTagger extends AbstractCharStreamTagger
     public int hashCode() {
         return new HashCodeBuilder().appendSuper(super.hashCode())
                 .append(detector).append(shortText).append(keepProbabilities)
-                .append(languages).append(fallbackLanguage).toHashCode();
+                .append(languages).append(fallbackLanguage)
+                .append(sampleSize).append(sampling)
+                .append(earlyStopProbability).toHashCode();
     }
 
     @Override
@@ -564,6 +772,10 @@ public class LanguageTagger extends AbstractCharStreamTagger
                 .append("detector", detector).append("shortText", shortText)
                 .append("keepProbabilities", keepProbabilities)
                 .append("languages", languages)
-                .append("fallbackLanguage", fallbackLanguage).toString();
+                .append("fallbackLanguage", fallbackLanguage)
+                .append("sampleSize", sampleSize)
+                .append("sampling", sampling)
+                .append("earlyStopProbability", earlyStopProbability)
+                .toString();
     }
 }
@@ -15,8 +15,11 @@
 package com.norconex.importer.handler.tagger.impl;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -31,13 +34,13 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 
 import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
 import com.norconex.importer.doc.ImporterMetadata;
-import com.norconex.importer.handler.tagger.AbstractStringTagger;
+import com.norconex.importer.handler.ImporterHandlerException;
+import com.norconex.importer.handler.tagger.AbstractCharStreamTagger;
+import com.norconex.importer.util.StartEndScanner;
 
 /**
  * <p>Extracts and add values found between a matching start and 
@@ -49,12 +52,27 @@ import com.norconex.importer.handler.tagger.AbstractStringTagger;
  * <p>This class can be used as a pre-parsing  
  * or post-parsing handlers.</p>
  * <p>
+ * As of 2.1.0, content is streamed: it is scanned once for all pairs,
+ * from beginning to end, regardless of its size.  For each pair, the 
+ * next start text is searched after the end text of the previous value,
+ * and values are added in the order they appear in the content.  
+ * Reading stops as soon as no more values can be extracted.  
+ * The number of values per field and the length of each value can be 
+ * limited with <code>maxValues</code> and <code>maxValueLength</code>
+ * (longer values are truncated).  Start and end texts are expected 
+ * to be shorter than 
+ * {@value com.norconex.importer.util.BufferUtil#MAX_CONTENT_FROM_END_TO_CUT}
+ * characters.
+ * </p>
+ * <p>
  * XML configuration usage:
  * </p>
  * <pre>
  *  &lt;tagger class="com.norconex.importer.handler.transformer.impl.TextBetweenTagger"
  *          inclusive="[false|true]" 
- *          caseSensitive="[false|true]" &gt;
+ *          caseSensitive="[false|true]" 
+ *          maxValues="(maximum number of values per field)"
+ *          maxValueLength="(maximum number of characters per value)" &gt;
  *      &lt;contentTypeRegex&gt;
  *          (regex to identify text content-types for pre-import, 
  *           overriding default)
@@ -81,49 +99,49 @@ import com.norconex.importer.handler.tagger.AbstractStringTagger;
  * @author Pascal Essiembre
  */
 public class TextBetweenTagger 
-        extends AbstractStringTagger implements IXMLConfigurable {
+        extends AbstractCharStreamTagger implements IXMLConfigurable {
 
     private Set<TextBetween> betweens = new TreeSet<TextBetween>();
 
     private boolean inclusive;
     private boolean caseSensitive;
+    private int maxValues = -1;
+    private int maxValueLength = -1;
+    // start and end patterns of each pair, compiled on first use
+    private volatile List<Pattern[]> patterns;
 
     @Override
-    protected void tagStringContent(String reference, StringBuilder content,
-            ImporterMetadata metadata, boolean parsed, boolean partialContent) {
-        int flags = Pattern.DOTALL | Pattern.UNICODE_CASE;
-        if (!caseSensitive) {
-            flags = flags | Pattern.CASE_INSENSITIVE;
-        }
+    protected void tagTextDocument(String reference, Reader input,
+            ImporterMetadata metadata, boolean parsed)
+            throws ImporterHandlerException {
+        List<Pattern[]> pairPatterns = getPatterns();
+        List<Extraction> extractions = new ArrayList<>(betweens.size());
+        int i = 0;
         for (TextBetween between : betweens) {
-            List<Pair<Integer, Integer>> matches = 
-                    new ArrayList<Pair<Integer, Integer>>();
-            Pattern leftPattern = Pattern.compile(between.start, flags);
-            Matcher leftMatch = leftPattern.matcher(content);
-            while (leftMatch.find()) {
-                Pattern rightPattern = Pattern.compile(between.end, flags);
-                Matcher rightMatch = rightPattern.matcher(content);
-                if (rightMatch.find(leftMatch.end())) {
-                    if (inclusive) {
-                        matches.add(new ImmutablePair<Integer, Integer>(
-                                leftMatch.start(), rightMatch.end()));
-                    } else {
-                        matches.add(new ImmutablePair<Integer, Integer>(
-                                leftMatch.end(), rightMatch.start()));
-                    }
-                } else {
-                    break;
-                }
-            }
-            for (int i = matches.size() -1; i >= 0; i--) {
-                Pair<Integer, Integer> matchPair = matches.get(i);
-                String value = content.substring(
-                        matchPair.getLeft(), matchPair.getRight());
-                if (value != null) {
-                    metadata.addString(between.name, value);
-                }
+            extractions.add(new Extraction(between.name, 
+                    pairPatterns.get(i)[0], pairPatterns.get(i)[1]));
+            i++;
+        }
+        try {
+            new Extractor(input, metadata, extractions).scan();
+        } catch (IOException e) {
+            throw new ImporterHandlerException(
+                    "Cannot extract text between: " + reference, e);
+        }
+    }
+
+    private List<Pattern[]> getPatterns() {
+        List<Pattern[]> pairPatterns = patterns;
+        if (pairPatterns == null) {
+            pairPatterns = new ArrayList<>(betweens.size());
+            for (TextBetween between : betweens) {
+                pairPatterns.add(new Pattern[] {
+                        StartEndScanner.compile(between.start, caseSensitive),
+                        StartEndScanner.compile(between.end, caseSensitive) });
             }
+            patterns = pairPatterns;
         }
+        return pairPatterns;
     }
     
     public boolean isInclusive() {
@@ -146,6 +164,43 @@ public class TextBetweenTagger
      */
     public void setCaseSensitive(boolean caseSensitive) {
         this.caseSensitive = caseSensitive;
+        patterns = null;
+    }
+    /**
+     * Gets the maximum number of values extracted per field.
+     * @return maximum number of values, or -1 for unlimited
+     * @since 2.1.0
+     */
+    public int getMaxValues() {
+        return maxValues;
+    }
+    /**
+     * Sets the maximum number of values extracted per field.  Once
+     * reached, values are no longer extracted for that field.
+     * @param maxValues maximum number of values, or -1 for unlimited 
+     *        (default)
+     * @since 2.1.0
+     */
+    public void setMaxValues(int maxValues) {
+        this.maxValues = maxValues;
+    }
+    /**
+     * Gets the maximum number of characters per value.
+     * @return maximum value length, or -1 for unlimited
+     * @since 2.1.0
+     */
+    public int getMaxValueLength() {
+        return maxValueLength;
+    }
+    /**
+     * Sets the maximum number of characters per value.  Longer values 
+     * are truncated.
+     * @param maxValueLength maximum value length, or -1 for unlimited
+     *        (default)
+     * @since 2.1.0
+     */
+    public void setMaxValueLength(int maxValueLength) {
+        this.maxValueLength = maxValueLength;
     }
     /**
      * Adds a new pair of end points to match.
@@ -161,12 +216,15 @@ public class TextBetweenTagger
             return;
         }
         betweens.add(new TextBetween(name, fromText, toText));
+        patterns = null;
     }
     
     @Override
     protected void loadHandlerFromXML(XMLConfiguration xml) throws IOException {
         setCaseSensitive(xml.getBoolean("[@caseSensitive]", false));
         setInclusive(xml.getBoolean("[@inclusive]", false));
+        setMaxValues(xml.getInt("[@maxValues]", maxValues));
+        setMaxValueLength(xml.getInt("[@maxValueLength]", maxValueLength));
         List<HierarchicalConfiguration> nodes = 
                 xml.configurationsAt("textBetween");
         for (HierarchicalConfiguration node : nodes) {
@@ -183,6 +241,9 @@ public class TextBetweenTagger
         writer.writeAttribute(
                 "caseSensitive", Boolean.toString(isCaseSensitive()));
         writer.writeAttribute("inclusive", Boolean.toString(isInclusive()));
+        writer.writeAttribute("maxValues", Integer.toString(maxValues));
+        writer.writeAttribute(
+                "maxValueLength", Integer.toString(maxValueLength));
         for (TextBetween between : betweens) {
             writer.writeStartElement("textBetween");
             writer.writeAttribute("name", between.name);
@@ -195,6 +256,197 @@ public class TextBetweenTagger
             writer.writeEndElement();
         }
     }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+            .appendSuper(super.hashCode())
+            .append(betweens)
+            .append(inclusive)
+            .append(caseSensitive)
+            .append(maxValues)
+            .append(maxValueLength)
+            .toHashCode();
+    }
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TextBetweenTagger)) {
+            return false;
+        }
+        TextBetweenTagger other = (TextBetweenTagger) obj;
+        return new EqualsBuilder()
+            .appendSuper(super.equals(obj))
+            .append(betweens, other.betweens)
+            .append(inclusive, other.inclusive)
+            .append(caseSensitive, other.caseSensitive)
+            .append(maxValues, other.maxValues)
+            .append(maxValueLength, other.maxValueLength)
+            .isEquals();
+    }
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+            .appendSuper(super.toString())
+            .append("betweens", betweens)
+            .append("inclusive", inclusive)
+            .append("caseSensitive", caseSensitive)
+            .append("maxValues", maxValues)
+            .append("maxValueLength", maxValueLength)
+            .toString();
+    }
+
+    // Extraction state of one pair
+    private static class Extraction {
+        private final String field;
+        private final Pattern start;
+        private final Pattern end;
+        private boolean done;
+        // where to search next start (when closed) or end (when open)
+        private int pos;
+        private boolean open;
+        private int openStart;
+        private StringBuilder value;
+        public Extraction(String field, Pattern start, Pattern end) {
+            super();
+            this.field = field;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // Scans the content once for all pairs, keeping in a buffer only
+    // what is not yet scanned by all of them.
+    private class Extractor extends StartEndScanner {
+        private final ImporterMetadata metadata;
+        private final List<Extraction> extractions;
+        private final Map<String, Integer> valueCounts = new HashMap<>();
+        private final StringBuilder buffer = getBuffer();
+
+        public Extractor(Reader input, ImporterMetadata metadata,
+                List<Extraction> extractions) {
+            super(input);
+            this.metadata = metadata;
+            this.extractions = extractions;
+        }
+
+        @Override
+        protected boolean process() {
+            boolean active = false;
+            for (Extraction extraction : extractions) {
+                if (!extraction.done) {
+                    process(extraction);
+                }
+                active = active || !extraction.done;
+            }
+            return active;
+        }
+        @Override
+        protected int getScanPosition() {
+            return getKeepPosition();
+        }
+        @Override
+        protected int getKeepPosition() {
+            int keepFrom = buffer.length();
+            for (Extraction extraction : extractions) {
+                if (!extraction.done) {
+                    keepFrom = Math.min(keepFrom, extraction.pos);
+                }
+            }
+            return keepFrom;
+        }
+        @Override
+        protected void shift(int count) {
+            for (Extraction extraction : extractions) {
+                extraction.pos -= count;
+                extraction.openStart -= count;
+            }
+        }
+
+        private void process(Extraction ex) {
+            while (!ex.done) {
+                if (isMaxedOut(ex.field)) {
+                    ex.done = true;
+                } else if (!ex.open) {
+                    Matcher m = ex.start.matcher(buffer);
+                    boolean found = m.find(ex.pos);
+                    if (!found || !isResolved(m)) {
+                        if (found) {
+                            ex.pos = Math.max(ex.pos, m.start());
+                        } else {
+                            ex.pos = Math.max(ex.pos, getSafeEnd());
+                            ex.done = isEof();
+                        }
+                        return;
+                    }
+                    ex.open = true;
+                    ex.openStart = m.start();
+                    ex.value = new StringBuilder();
+                    if (inclusive) {
+                        appendValue(ex, m.start(), m.end());
+                    }
+                    ex.pos = m.end();
+                } else {
+                    Matcher m = ex.end.matcher(buffer);
+                    boolean found = m.find(ex.pos);
+                    if (found && isResolved(m)) {
+                        appendValue(ex, ex.pos, m.start());
+                        if (inclusive) {
+                            appendValue(ex, m.start(), m.end());
+                        }
+                        addValue(ex);
+                        if (m.end() > ex.openStart) {
+                            ex.pos = m.end();
+                        } else if (ex.openStart < buffer.length()) {
+                            // empty start and end, make sure we progress
+                            ex.pos = ex.openStart + 1;
+                        } else {
+                            ex.done = true;
+                        }
+                        continue;
+                    }
+                    // no end yet, keep what was scanned so far
+                    int limit = found ? m.start() : getSafeEnd();
+                    if (limit > ex.pos) {
+                        appendValue(ex, ex.pos, limit);
+                        ex.pos = limit;
+                    }
+                    if (isEof()) {
+                        // no end: no more values for this pair
+                        ex.value = null;
+                        ex.done = true;
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void appendValue(Extraction ex, int from, int to) {
+            int end = to;
+            if (maxValueLength >= 0) {
+                end = Math.min(to, from + maxValueLength - ex.value.length());
+            }
+            if (end > from) {
+                ex.value.append(buffer, from, end);
+            }
+        }
+        private void addValue(Extraction ex) {
+            metadata.addString(ex.field, ex.value.toString());
+            Integer count = valueCounts.get(ex.field);
+            valueCounts.put(ex.field, count == null ? 1 : count + 1);
+            ex.open = false;
+            ex.value = null;
+        }
+        private boolean isMaxedOut(String field) {
+            if (maxValues < 0) {
+                return false;
+            }
+            Integer count = valueCounts.get(field);
+            return (count == null ? 0 : count) >= maxValues;
+        }
+    }
     
     private static class TextBetween implements Comparable<TextBetween> {
         private final String name;
@@ -231,7 +483,7 @@ public class TextBetweenTagger
             return toString;
         }
         public int compareTo(final TextBetween other) {
-            int val = start.length() - end.length();
+            int val = start.length() - other.start.length();
             if (val != 0) {
                 return val;
             }
@@ -18,14 +18,12 @@ import java.io.IOException;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.text.BreakIterator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.text.CharacterIterator;
+import java.util.Arrays;
 
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.configuration.XMLConfiguration;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang3.StringUtils;
 
 import com.norconex.commons.lang.config.IXMLConfigurable;
@@ -95,6 +93,12 @@ import com.norconex.importer.handler.tagger.AbstractCharStreamTagger;
  * names, right after "document.stat.". E.g.:
  * <code>document.stat.myfield.characterCount</code>
  * <p />
+ * Text is read in a single pass.  Paragraphs are non-blank lines, 
+ * characters are counted once leading and trailing spaces are removed
+ * from each line, words are sequences of Unicode letters, digits, or 
+ * connector punctuation, optionally joined by a single hyphen, and 
+ * sentences are found using a {@link BreakIterator}.
+ * <p />
  * Can be used both as a pre-parse (text-only) or post-parse handler.
  * <p>
  * XML configuration usage:
@@ -117,8 +121,8 @@ import com.norconex.importer.handler.tagger.AbstractCharStreamTagger;
 public class TextStatisticsTagger extends AbstractCharStreamTagger 
         implements IXMLConfigurable {
 
-    private static final Pattern PATTERN_WORD = Pattern.compile(
-            "\\w+\\-{0,1}\\w*", Pattern.UNICODE_CHARACTER_CLASS);
+    private static final int READ_SIZE = 8 * 1024;
+    private static final int INITIAL_LINE_SIZE = 1024;
 
     private String fieldName;
     
@@ -126,45 +130,27 @@ public class TextStatisticsTagger extends AbstractCharStreamTagger
     protected void tagTextDocument(String reference, Reader input,
             ImporterMetadata metadata, boolean parsed)
             throws ImporterHandlerException {
-        long charCount = 0;
-        long wordCharCount = 0;
-        long wordCount = 0;
-        long sentenceCount = 0;
-        long sentenceCharCount = 0;
-        long paragraphCount = 0;
-
-        //TODO make this more efficient, by doing all this in one pass.
-        LineIterator it = IOUtils.lineIterator(input);
-        while (it.hasNext()) {
-            String line = it.nextLine().trim();
-            if (StringUtils.isBlank(line)) {
-                continue;
-            }
-            
-            // Paragraph
-            paragraphCount++;
-
-            // Character
-            charCount += line.length();
-
-            // Word
-            Matcher matcher = PATTERN_WORD.matcher(line);
-            while (matcher.find()) {
-                int wordLength = matcher.end() - matcher.start();
-                wordCount++;
-                wordCharCount += wordLength;
-            }
-            
-            // Sentence
-            BreakIterator boundary = BreakIterator.getSentenceInstance();
-            boundary.setText(line);
-            int start = boundary.first();
-            for (int end = boundary.next(); end != BreakIterator.DONE;
-                    start = end, end = boundary.next()) {
-                sentenceCharCount += (end - start); 
-                sentenceCount++;
+        Stats stats = new Stats();
+        char[] readBuffer = new char[READ_SIZE];
+        try {
+            int count;
+            while ((count = input.read(readBuffer)) != -1) {
+                for (int i = 0; i < count; i++) {
+                    stats.add(readBuffer[i]);
+                }
             }
+        } catch (IOException e) {
+            throw new ImporterHandlerException(
+                    "Cannot read document: " + reference, e);
         }
+        stats.endLine();
+        
+        long charCount = stats.charCount;
+        long wordCharCount = stats.wordCharCount;
+        long wordCount = stats.wordCount;
+        long sentenceCount = stats.sentenceCount;
+        long sentenceCharCount = stats.sentenceCharCount;
+        long paragraphCount = stats.paragraphCount;
 
         String field = StringUtils.EMPTY;
         if (StringUtils.isNotBlank(fieldName)) {
@@ -225,4 +211,231 @@ public class TextStatisticsTagger extends AbstractCharStreamTagger
             writer.writeAttribute("fieldName", fieldName);
         }
     }
+
+    // Word matching states
+    private enum WordState { NONE, WORD, HYPHENATED }
+
+    // Counts statistics one character at a time.  Words are counted as 
+    // characters come in, while each line is kept in a reusable buffer 
+    // for sentence detection when complete.
+    private static class Stats {
+        private long charCount;
+        private long wordCharCount;
+        private long wordCount;
+        private long sentenceCount;
+        private long sentenceCharCount;
+        private long paragraphCount;
+
+        private final BreakIterator sentences = 
+                BreakIterator.getSentenceInstance();
+        private final LineIterator lineIterator = new LineIterator();
+        private char[] line = new char[INITIAL_LINE_SIZE];
+        private int lineLength;
+        private boolean lineBlank = true;
+        private boolean afterCarriageReturn;
+        private WordState wordState = WordState.NONE;
+        private int wordLength;
+        private char highSurrogate;
+
+        public void add(char ch) {
+            if (ch == '\n' || ch == '\r') {
+                if (ch == '\r' || !afterCarriageReturn) {
+                    endLine();
+                }
+                afterCarriageReturn = ch == '\r';
+                return;
+            }
+            afterCarriageReturn = false;
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = ch;
+            // blank once trimmed
+            if (lineBlank && ch > ' ' && !Character.isWhitespace(ch)) {
+                lineBlank = false;
+            }
+            
+            // Words, matched by code point
+            if (Character.isHighSurrogate(ch)) {
+                if (highSurrogate != 0) {
+                    addWordCodePoint(highSurrogate, 1);
+                }
+                highSurrogate = ch;
+                return;
+            }
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(ch)) {
+                    addWordCodePoint(Character.toCodePoint(high, ch), 2);
+                    return;
+                }
+                addWordCodePoint(high, 1);
+            }
+            addWordCodePoint(ch, 1);
+        }
+
+        // Same as regex "\w+\-{0,1}\w*" with Unicode character classes
+        private void addWordCodePoint(int codePoint, int length) {
+            boolean wordChar = isWordCodePoint(codePoint);
+            switch (wordState) {
+            case WORD:
+                if (wordChar || codePoint == '-') {
+                    wordLength += length;
+                    if (!wordChar) {
+                        wordState = WordState.HYPHENATED;
+                    }
+                    return;
+                }
+                break;
+            case HYPHENATED:
+                if (wordChar) {
+                    wordLength += length;
+                    return;
+                }
+                break;
+            default:
+                if (wordChar) {
+                    wordState = WordState.WORD;
+                    wordLength = length;
+                }
+                return;
+            }
+            endWord();
+        }
+        private void endWord() {
+            if (wordState != WordState.NONE) {
+                wordCount++;
+                wordCharCount += wordLength;
+                wordState = WordState.NONE;
+                wordLength = 0;
+            }
+        }
+
+        public void endLine() {
+            if (highSurrogate != 0) {
+                addWordCodePoint(highSurrogate, 1);
+                highSurrogate = 0;
+            }
+            endWord();
+            if (!lineBlank) {
+                countLine();
+            }
+            lineLength = 0;
+            lineBlank = true;
+        }
+        private void countLine() {
+            // same trimming as String#trim()
+            int begin = 0;
+            int end = lineLength;
+            while (begin < end && line[begin] <= ' ') {
+                begin++;
+            }
+            while (end > begin && line[end - 1] <= ' ') {
+                end--;
+            }
+            paragraphCount++;
+            charCount += end - begin;
+            if (begin == end) {
+                return;
+            }
+            lineIterator.reset(line, begin, end);
+            sentences.setText(lineIterator);
+            int start = sentences.first();
+            for (int next = sentences.next(); next != BreakIterator.DONE;
+                    start = next, next = sentences.next()) {
+                sentenceCharCount += next - start;
+                sentenceCount++;
+            }
+        }
+
+        private static boolean isWordCodePoint(int codePoint) {
+            if (Character.isAlphabetic(codePoint) 
+                    || Character.isDigit(codePoint)
+                    || codePoint == '\u200C' || codePoint == '\u200D') {
+                return true;
+            }
+            int type = Character.getType(codePoint);
+            return type == Character.NON_SPACING_MARK
+                    || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK
+                    || type == Character.CONNECTOR_PUNCTUATION;
+        }
+    }
+
+    // Character iterator over part of a character array, reused for 
+    // every line.
+    private static class LineIterator implements CharacterIterator {
+        private char[] chars;
+        private int begin;
+        private int end;
+        private int index;
+        public void reset(char[] chars, int begin, int end) {
+            this.chars = chars;
+            this.begin = begin;
+            this.end = end;
+            this.index = begin;
+        }
+        @Override
+        public char first() {
+            index = begin;
+            return current();
+        }
+        @Override
+        public char last() {
+            index = end > begin ? end - 1 : end;
+            return current();
+        }
+        @Override
+        public char current() {
+            if (index >= begin && index < end) {
+                return chars[index];
+            }
+            return DONE;
+        }
+        @Override
+        public char next() {
+            if (index < end) {
+                index++;
+            }
+            return current();
+        }
+        @Override
+        public char previous() {
+            if (index <= begin) {
+                return DONE;
+            }
+            index--;
+            return current();
+        }
+        @Override
+        public char setIndex(int position) {
+            if (position < begin || position > end) {
+                throw new IllegalArgumentException(
+                        "Invalid index: " + position);
+            }
+            index = position;
+            return current();
+        }
+        @Override
+        public int getBeginIndex() {
+            return begin;
+        }
+        @Override
+        public int getEndIndex() {
+            return end;
+        }
+        @Override
+        public int getIndex() {
+            return index;
+        }
+        @Override
+        public Object clone() {
+            try {
+                return super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new InternalError(e.toString());
+            }
+        }
+    }
 }
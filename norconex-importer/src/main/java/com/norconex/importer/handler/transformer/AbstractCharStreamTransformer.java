@@ -76,6 +76,50 @@ public abstract class AbstractCharStreamTransformer
             Writer output, ImporterMetadata metadata, boolean parsed)
             throws IOException;
 
+    /**
+     * Whether this transformer applies to the given document, according
+     * to its restrictions.
+     * @param reference document reference
+     * @param metadata document metadata
+     * @param parsed if the document was parsed (i.e. imported) already
+     * @return <code>true</code> if this transformer applies
+     * @throws ImporterHandlerException problem evaluating restrictions
+     * @since 2.1.0
+     */
+    public final boolean isApplicableDocument(
+            String reference, ImporterMetadata metadata, boolean parsed)
+            throws ImporterHandlerException {
+        return isApplicable(reference, metadata, parsed);
+    }
+
+    /**
+     * Transforms a document already known to be applicable 
+     * (see {@link #isApplicableDocument(String, ImporterMetadata, boolean)}),
+     * reading from and writing to character streams directly.  
+     * This allows the importer to chain character stream transformers 
+     * without encoding and decoding the content between each of them.
+     * The output is flushed but not closed.
+     * @param reference document reference
+     * @param input document content
+     * @param output transformed content
+     * @param metadata document metadata
+     * @param parsed if the document was parsed (i.e. imported) already
+     * @throws ImporterHandlerException problem transforming the document
+     * @since 2.1.0
+     */
+    public final void transformApplicableDocument(
+            String reference, Reader input,
+            Writer output, ImporterMetadata metadata, boolean parsed)
+            throws ImporterHandlerException {
+        try {
+            transformTextDocument(reference, input, output, metadata, parsed);
+            output.flush();
+        } catch (IOException e) {
+            throw new ImporterHandlerException(
+                    "Cannot transform character stream.", e);
+        }
+    }
+
     @Override
     public boolean equals(final Object other) {
         if (!(other instanceof AbstractCharStreamTransformer)) {
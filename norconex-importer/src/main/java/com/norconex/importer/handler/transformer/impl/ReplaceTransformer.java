@@ -15,8 +15,12 @@
 package com.norconex.importer.handler.transformer.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.stream.XMLStreamException;
@@ -31,6 +35,7 @@ import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
 import com.norconex.importer.doc.ImporterMetadata;
 import com.norconex.importer.handler.transformer.AbstractStringTransformer;
+import com.norconex.importer.util.SinglePassReplacer;
 
 /**
  * Replaces every occurrences of the given replacements
@@ -40,11 +45,23 @@ import com.norconex.importer.handler.transformer.AbstractStringTransformer;
  * This class can be used as a pre-parsing (text content-types only) 
  * or post-parsing handlers.
  * <p/>
+ * Since 2.1.0, regular expressions are compiled once only, and 
+ * replacements are only performed when a match is found.  
+ * Setting <code>singlePass</code> to <code>true</code> applies all
+ * replacements at once, in a single pass over the content, which is much
+ * faster with many replacements (see {@link SinglePassReplacer}).  
+ * The result is the same as applying replacements one after the 
+ * other, unless some replacements overlap or match the replacement
+ * values of others.  When they overlap, the one matching first in the
+ * content wins (the first one defined wins when they match at the 
+ * same position).  Replaced text is never matched again.
+ * <p/>
  * XML configuration usage:
  * <p/>
  * <pre>
  *  &lt;transformer class="com.norconex.importer.handler.transformer.impl.ReplaceTransformer"
- *          caseSensitive="[false|true]" &gt;
+ *          caseSensitive="[false|true]" 
+ *          singlePass="[false|true]" &gt;
  *      &lt;replace&gt
  *          &lt;fromValue&gt(regex of value to replace)&lt;/fromValue&gt
  *          &lt;toValue&gt(replacement value)&lt;/toValue&gt
@@ -65,35 +82,53 @@ public class ReplaceTransformer extends AbstractStringTransformer
         implements IXMLConfigurable {
 
     private boolean caseSensitive;
+    private boolean singlePass;
     private final Map<String, String> replacements = 
             new ListOrderedMap<String, String>();
+    // compiled on first use, reset when configuration changes
+    private volatile List<Pattern> patterns;
+    private volatile SinglePassReplacer singlePassReplacer;
 
     @Override
     protected void transformStringContent(String reference,
             StringBuilder content, ImporterMetadata metadata, boolean parsed,
             boolean partialContent) {
 
-        String text = content.toString();
-        content.setLength(0);
-        Pattern pattern = null;
-        
-        for (String from : replacements.keySet()) {
-            String to = replacements.get(from);
-            if (caseSensitive) {
-                pattern = Pattern.compile(from);
-            } else {
-                pattern = Pattern.compile(from, Pattern.CASE_INSENSITIVE);
+        if (singlePass) {
+            getSinglePassReplacer().replace(content);
+            return;
+        }
+
+        List<Pattern> compiledPatterns = getPatterns();
+        List<String> toValues = new ArrayList<>(replacements.values());
+        CharSequence text = content;
+        boolean modified = false;
+        for (int i = 0; i < compiledPatterns.size(); i++) {
+            Matcher matcher = compiledPatterns.get(i).matcher(text);
+            if (matcher.find()) {
+                text = matcher.replaceAll(toValues.get(i));
+                modified = true;
             }
-            text = pattern.matcher(text).replaceAll(to);
         }
-        content.append(text);
+        if (modified) {
+            content.setLength(0);
+            content.append(text);
+        }
     }
      
+    /**
+     * Gets the replacements, in the order they are applied.  
+     * Since 2.1.0, the returned map is an unmodifiable copy. 
+     * Use {@link #addReplacement(String, String)} to add replacements.
+     * @return replacements
+     */
     public Map<String, String> getReplacements() {
-        return ListOrderedMap.listOrderedMap(replacements);
+        return Collections.unmodifiableMap(
+                new LinkedHashMap<String, String>(replacements));
     }
     public void addReplacement(String from, String to) {
         this.replacements.put(from, to);
+        resetCompiled();
     }
 
     public boolean isCaseSensitive() {
@@ -106,16 +141,62 @@ public class ReplaceTransformer extends AbstractStringTransformer
      */
     public void setCaseSensitive(boolean caseSensitive) {
         this.caseSensitive = caseSensitive;
+        resetCompiled();
+    }
+
+    /**
+     * Whether all replacements are applied in a single pass.
+     * @return <code>true</code> if applying replacements in a single pass
+     * @since 2.1.0
+     */
+    public boolean isSinglePass() {
+        return singlePass;
+    }
+    /**
+     * Sets whether to apply all replacements in a single pass over the 
+     * content, instead of one pass per replacement.
+     * @param singlePass <code>true</code> to apply replacements in a 
+     *        single pass
+     * @since 2.1.0
+     */
+    public void setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
+    }
+
+    private List<Pattern> getPatterns() {
+        List<Pattern> compiledPatterns = patterns;
+        if (compiledPatterns == null) {
+            int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE;
+            compiledPatterns = new ArrayList<>(replacements.size());
+            for (String from : replacements.keySet()) {
+                compiledPatterns.add(Pattern.compile(from, flags));
+            }
+            patterns = compiledPatterns;
+        }
+        return compiledPatterns;
+    }
+    private SinglePassReplacer getSinglePassReplacer() {
+        SinglePassReplacer replacer = singlePassReplacer;
+        if (replacer == null) {
+            replacer = new SinglePassReplacer(replacements, caseSensitive);
+            singlePassReplacer = replacer;
+        }
+        return replacer;
+    }
+    private void resetCompiled() {
+        patterns = null;
+        singlePassReplacer = null;
     }
 
     @Override
     protected void loadHandlerFromXML(XMLConfiguration xml) throws IOException {
         setCaseSensitive(xml.getBoolean("[@caseSensitive]", false));
+        setSinglePass(xml.getBoolean("[@singlePass]", singlePass));
 
         List<HierarchicalConfiguration> nodes = 
                 xml.configurationsAt("replace");
         for (HierarchicalConfiguration node : nodes) {
-            replacements.put(
+            addReplacement(
                     node.getString("fromValue"), node.getString("toValue"));
         }
     }
@@ -125,6 +206,7 @@ public class ReplaceTransformer extends AbstractStringTransformer
             throws XMLStreamException {
         writer.writeAttribute(
                 "caseSensitive", Boolean.toString(isCaseSensitive()));
+        writer.writeAttribute("singlePass", Boolean.toString(singlePass));
         for (String from : replacements.keySet()) {
             String to = replacements.get(from);
             writer.writeStartElement("replace");
@@ -143,6 +225,7 @@ public class ReplaceTransformer extends AbstractStringTransformer
         return new HashCodeBuilder()
             .appendSuper(super.hashCode())
             .append(caseSensitive)
+            .append(singlePass)
             .append(replacements)
             .toHashCode();
     }
@@ -162,6 +245,9 @@ public class ReplaceTransformer extends AbstractStringTransformer
         if (caseSensitive != other.caseSensitive) {
             return false;
         }
+        if (singlePass != other.singlePass) {
+            return false;
+        }
         if (replacements == null) {
             if (other.replacements != null) {
                 return false;
@@ -177,6 +263,7 @@ public class ReplaceTransformer extends AbstractStringTransformer
         return new ToStringBuilder(this)
                 .appendSuper(super.toString())
                 .append("caseSensitive", caseSensitive)
+                .append("singlePass", singlePass)
                 .append("replacements", replacements).toString();
     }
 }
@@ -15,7 +15,10 @@
 package com.norconex.importer.handler.transformer.impl;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -27,7 +30,9 @@ import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.tuple.ImmutablePair;
@@ -36,7 +41,8 @@ import org.apache.commons.lang3.tuple.Pair;
 import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
 import com.norconex.importer.doc.ImporterMetadata;
-import com.norconex.importer.handler.transformer.AbstractStringTransformer;
+import com.norconex.importer.handler.transformer.AbstractCharStreamTransformer;
+import com.norconex.importer.util.StartEndScanner;
 
 /**
  * <p>Strips any content found between a matching start and end strings.  The
@@ -46,12 +52,30 @@ import com.norconex.importer.handler.transformer.AbstractStringTransformer;
  * <p>This class can be used as a pre-parsing (text content-types only) 
  * or post-parsing handlers.</p>
  * <p>
+ * As of 2.1.0, content is streamed: it is scanned once, from beginning 
+ * to end, and text not stripped is written as soon as it is known to 
+ * be kept. The first start text found in the content opens a section 
+ * to strip, regardless of the other pairs, and the section ends with the
+ * first matching end text found after it.  When several start texts are
+ * found at the same position, the shortest pair start expression wins.  
+ * A start text without a matching end text is kept as is.  So is a
+ * start text when its matching end text starts more than 
+ * <code>maxSectionLength</code> characters after it (default is
+ * {@value #DEFAULT_MAX_SECTION_LENGTH}), so the text held in memory
+ * while looking for an end text is bounded.  Start and end texts are 
+ * expected to be shorter than 
+ * {@value com.norconex.importer.util.BufferUtil#MAX_CONTENT_FROM_END_TO_CUT}
+ * characters.
+ * </p>
+ * <p>
  * XML configuration usage:
  * </p>
  * <pre>
  *  &lt;transformer class="com.norconex.importer.handler.transformer.impl.StripBetweenTransformer"
  *          inclusive="[false|true]" 
- *          caseSensitive="[false|true]" &gt;
+ *          caseSensitive="[false|true]"
+ *          maxSectionLength="(maximum number of characters to strip
+ *                             between a start and end text)" &gt;
  *      &lt;stripBetween&gt
  *          &lt;start&gt(regex)&lt;/start&gt
  *          &lt;end&gt(regex)&lt;/end&gt
@@ -67,53 +91,57 @@ import com.norconex.importer.handler.transformer.AbstractStringTransformer;
  * </pre>
  * @author Pascal Essiembre
  */
-public class StripBetweenTransformer extends AbstractStringTransformer
+public class StripBetweenTransformer extends AbstractCharStreamTransformer
         implements IXMLConfigurable {
 
+    /** Default maximum number of characters between a start and end 
+     *  text for them to match.
+     *  @since 2.1.0 */
+    public static final int DEFAULT_MAX_SECTION_LENGTH = 1024 * 1024;
+
     private Set<Pair<String, String>> stripPairs = 
             new TreeSet<Pair<String,String>>(
                     new Comparator<Pair<String,String>>() {
         @Override
         public int compare(Pair<String,String> o1, Pair<String,String> o2) {
-            return o1.getLeft().length() - o2.getLeft().length();
+            return new CompareToBuilder()
+                    .append(o1.getLeft().length(), o2.getLeft().length())
+                    .append(o1.getLeft(), o2.getLeft())
+                    .append(o1.getRight(), o2.getRight())
+                    .toComparison();
         }
     });
     private boolean inclusive;
     private boolean caseSensitive;
+    private int maxSectionLength = DEFAULT_MAX_SECTION_LENGTH;
+    // start and end patterns of each pair, compiled on first use
+    private volatile List<Pattern[]> patterns;
 
     @Override
-    protected void transformStringContent(String reference,
-            StringBuilder content, ImporterMetadata metadata, boolean parsed,
-            boolean partialContent) {
-        int flags = Pattern.DOTALL | Pattern.UNICODE_CASE;
-        if (!caseSensitive) {
-            flags = flags | Pattern.CASE_INSENSITIVE;
+    protected void transformTextDocument(String reference, Reader input,
+            Writer output, ImporterMetadata metadata, boolean parsed)
+            throws IOException {
+        List<Pattern[]> pairPatterns = getPatterns();
+        if (pairPatterns.isEmpty()) {
+            IOUtils.copy(input, output);
+            return;
         }
-        for (Pair<String, String> pair : stripPairs) {
-            List<Pair<Integer, Integer>> matches = 
-                    new ArrayList<Pair<Integer, Integer>>();
-            Pattern leftPattern = Pattern.compile(pair.getLeft(), flags);
-            Matcher leftMatch = leftPattern.matcher(content);
-            while (leftMatch.find()) {
-                Pattern rightPattern = Pattern.compile(pair.getRight(), flags);
-                Matcher rightMatch = rightPattern.matcher(content);
-                if (rightMatch.find(leftMatch.end())) {
-                    if (inclusive) {
-                        matches.add(new ImmutablePair<Integer, Integer>(
-                                leftMatch.start(), rightMatch.end()));
-                    } else {
-                        matches.add(new ImmutablePair<Integer, Integer>(
-                                leftMatch.end(), rightMatch.start()));
-                    }
-                } else {
-                    break;
-                }
-            }
-            for (int i = matches.size() -1; i >= 0; i--) {
-                Pair<Integer, Integer> matchPair = matches.get(i);
-                content.delete(matchPair.getLeft(), matchPair.getRight());
+        new Stripper(input, output, pairPatterns).scan();
+    }
+
+    private List<Pattern[]> getPatterns() {
+        List<Pattern[]> pairPatterns = patterns;
+        if (pairPatterns == null) {
+            pairPatterns = new ArrayList<>(stripPairs.size());
+            for (Pair<String, String> pair : stripPairs) {
+                pairPatterns.add(new Pattern[] {
+                        StartEndScanner.compile(pair.getLeft(), caseSensitive),
+                        StartEndScanner.compile(
+                                pair.getRight(), caseSensitive) });
             }
+            patterns = pairPatterns;
         }
+        return pairPatterns;
     }
 
         
@@ -137,6 +165,30 @@ public class StripBetweenTransformer extends AbstractStringTransformer
      */
     public void setCaseSensitive(boolean caseSensitive) {
         this.caseSensitive = caseSensitive;
+        patterns = null;
+    }
+
+    /**
+     * Gets the maximum number of characters between a start and end text
+     * for them to match.
+     * @return maximum section length, or -1 for unlimited
+     * @since 2.1.0
+     */
+    public int getMaxSectionLength() {
+        return maxSectionLength;
+    }
+    /**
+     * Sets the maximum number of characters between a start and end text
+     * for them to match (excluding the start and end texts).  A start
+     * text with no matching end text within that many characters is
+     * kept as is.  Content between start and end texts is held in memory
+     * until the end text is found, so an unlimited length should only
+     * be used with trusted content.
+     * @param maxSectionLength maximum section length, or -1 for unlimited
+     * @since 2.1.0
+     */
+    public void setMaxSectionLength(int maxSectionLength) {
+        this.maxSectionLength = maxSectionLength;
     }
 
     public void addStripEndpoints(String fromText, String toText) {
@@ -144,6 +196,7 @@ public class StripBetweenTransformer extends AbstractStringTransformer
             return;
         }
         stripPairs.add(new ImmutablePair<String, String>(fromText, toText));
+        patterns = null;
     }
     public List<Pair<String, String>> getStripEndpoints() {
         return new ArrayList<Pair<String,String>>(stripPairs);
@@ -153,6 +206,8 @@ public class StripBetweenTransformer extends AbstractStringTransformer
     protected void loadHandlerFromXML(XMLConfiguration xml) throws IOException {
         setCaseSensitive(xml.getBoolean("[@caseSensitive]", false));
         setInclusive(xml.getBoolean("[@inclusive]", false));
+        setMaxSectionLength(
+                xml.getInt("[@maxSectionLength]", maxSectionLength));
         List<HierarchicalConfiguration> nodes = 
                 xml.configurationsAt("stripBetween");
         for (HierarchicalConfiguration node : nodes) {
@@ -167,6 +222,8 @@ public class StripBetweenTransformer extends AbstractStringTransformer
         writer.writeAttribute(
                 "caseSensitive", Boolean.toString(isCaseSensitive()));
         writer.writeAttribute("inclusive", Boolean.toString(isInclusive()));
+        writer.writeAttribute(
+                "maxSectionLength", Integer.toString(maxSectionLength));
         for (Pair<String, String> pair : stripPairs) {
             writer.writeStartElement("stripBetween");
             writer.writeStartElement("start");
@@ -184,6 +241,7 @@ public class StripBetweenTransformer extends AbstractStringTransformer
         return new HashCodeBuilder()
             .append(caseSensitive)
             .append(inclusive)
+            .append(maxSectionLength)
             .append(stripPairs)
             .toHashCode();
     }
@@ -206,6 +264,9 @@ public class StripBetweenTransformer extends AbstractStringTransformer
         if (inclusive != other.inclusive) {
             return false;
         }
+        if (maxSectionLength != other.maxSectionLength) {
+            return false;
+        }
         if (stripPairs == null) {
             if (other.stripPairs != null) {
                 return false;
@@ -221,7 +282,179 @@ public class StripBetweenTransformer extends AbstractStringTransformer
         return new ToStringBuilder(this).appendSuper(super.toString())
                 .append("stripPairs", stripPairs)
                 .append("inclusive", inclusive)
-                .append("caseSensitive", caseSensitive).toString();
+                .append("caseSensitive", caseSensitive)
+                .append("maxSectionLength", maxSectionLength).toString();
     }
 
+    // Scanning state of one document.  The buffer holds what is not yet
+    // known to be kept or stripped (plus, while a section is open, what
+    // is needed to restore it if it never ends).
+    private class Stripper extends StartEndScanner {
+        private final Writer output;
+        private final List<Pattern[]> pairPatterns;
+        private final StringBuilder buffer = getBuffer();
+        // pairs with a start found, but no end after it
+        private final boolean[] unterminated;
+        // next start match of each pair (-2 when unknown, -1 for none)
+        private final int[] nextStarts;
+        private final int[] nextStartEnds;
+        // position before which no end match of each pair starts
+        private final int[] endFloors;
+        private int pos;
+        // open section state
+        private int openPair = -1;
+        private int openStart;
+        private int contentStart;
+        private int endSearchFrom;
+
+        public Stripper(Reader input, Writer output, 
+                List<Pattern[]> pairPatterns) {
+            super(input);
+            this.output = output;
+            this.pairPatterns = pairPatterns;
+            this.unterminated = new boolean[pairPatterns.size()];
+            this.nextStarts = new int[pairPatterns.size()];
+            this.nextStartEnds = new int[pairPatterns.size()];
+            this.endFloors = new int[pairPatterns.size()];
+        }
+
+        @Override
+        protected int getScanPosition() {
+            // While a section is open, scanning goes on from the end search.
+            return openPair == -1 ? pos : endSearchFrom;
+        }
+        @Override
+        protected int getKeepPosition() {
+            return openPair == -1 ? pos : openStart;
+        }
+        @Override
+        protected void shift(int count) {
+            pos -= count;
+            openStart -= count;
+            contentStart -= count;
+            endSearchFrom -= count;
+            for (int i = 0; i < endFloors.length; i++) {
+                endFloors[i] -= count;
+            }
+        }
+        
+        @Override
+        protected boolean process() throws IOException {
+            Arrays.fill(nextStarts, -2);
+            while (true) {
+                if (openPair == -1) {
+                    int pair = findStart();
+                    if (pair == -1 || !isEof() 
+                            && nextStartEnds[pair] > getSafeEnd()) {
+                        int limit = getSafeEnd();
+                        if (pair != -1) {
+                            limit = Math.min(nextStarts[pair], limit);
+                        }
+                        if (limit > pos) {
+                            output.append(buffer, pos, limit);
+                            pos = limit;
+                        }
+                        return true;
+                    }
+                    openStart = nextStarts[pair];
+                    contentStart = nextStartEnds[pair];
+                    output.append(buffer, pos, 
+                            inclusive ? openStart : contentStart);
+                    openPair = pair;
+                    pos = contentStart;
+                    // ends already searched for by a previous start
+                    // of this pair are not searched again
+                    endSearchFrom = Math.max(contentStart, endFloors[pair]);
+                } else if (!findEnd()) {
+                    return true;
+                }
+            }
+        }
+
+        // Returns the pair starting first, if any
+        private int findStart() {
+            int first = -1;
+            for (int i = 0; i < pairPatterns.size(); i++) {
+                if (unterminated[i]) {
+                    continue;
+                }
+                if (nextStarts[i] == -2 || nextStarts[i] >= 0 
+                        && nextStarts[i] < pos) {
+                    Matcher m = pairPatterns.get(i)[0].matcher(buffer);
+                    if (m.find(pos)) {
+                        nextStarts[i] = m.start();
+                        nextStartEnds[i] = m.end();
+                    } else {
+                        nextStarts[i] = -1;
+                    }
+                }
+                if (nextStarts[i] >= 0 && (first == -1 
+                        || nextStarts[i] < nextStarts[first])) {
+                    first = i;
+                }
+            }
+            return first;
+        }
+
+        // Returns true if the open section was closed
+        private boolean findEnd() throws IOException {
+            Matcher m = pairPatterns.get(openPair)[1].matcher(buffer);
+            boolean found = m.find(endSearchFrom);
+            int maxStart = Integer.MAX_VALUE;
+            if (maxSectionLength >= 0) {
+                maxStart = contentStart + maxSectionLength;
+            }
+            // ends not found yet can only start after safe end
+            boolean tooFar = found ? m.start() > maxStart : !isEof();
+            if (tooFar && (isEof() || getSafeEnd() > maxStart)) {
+                // no end close enough: the start is kept as is, 
+                // remembering where the end search stopped
+                int floor = found ? m.start() : getSafeEnd();
+                if (!isEof()) {
+                    floor = Math.min(floor, getSafeEnd());
+                }
+                endFloors[openPair] = Math.max(endFloors[openPair], floor);
+                keepStart();
+                if (pos == openStart) {
+                    // empty start, make sure we progress
+                    output.append(buffer.charAt(pos));
+                    pos++;
+                }
+                return true;
+            }
+            if (found && isResolved(m)) {
+                if (!inclusive) {
+                    output.append(buffer, m.start(), m.end());
+                }
+                pos = m.end();
+                openPair = -1;
+                if (pos == openStart) {
+                    // empty start and end, make sure we progress
+                    if (pos == buffer.length()) {
+                        return false;
+                    }
+                    output.append(buffer.charAt(pos));
+                    pos++;
+                }
+                return true;
+            }
+            endSearchFrom = Math.max(
+                    endSearchFrom, found ? m.start() : getSafeEnd());
+            if (isEof()) {
+                // no end: the start is kept as is
+                unterminated[openPair] = true;
+                keepStart();
+                return true;
+            }
+            return false;
+        }
+        
+        private void keepStart() throws IOException {
+            openPair = -1;
+            if (inclusive) {
+                output.append(buffer, openStart, contentStart);
+            }
+            pos = contentStart;
+        }
+    }
 }
@@ -0,0 +1,196 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe statistics for one component of the import process
+ * (a handler, a parser, or an import phase): number of invocations,
+ * time spent, bytes read and written, and number of rejected documents.
+ * <p />
+ * Execution times are also aggregated in a histogram where each bucket
+ * holds twice the time of the previous one
+ * (bucket 0: under 2 microseconds, bucket 1: under 4,
+ * bucket 2: under 8, etc.).
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class ComponentMetrics {
+
+    /** Number of buckets in the latency histogram. */
+    public static final int HISTOGRAM_BUCKETS = 40;
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLongArray histogram =
+            new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    public ComponentMetrics(String name) {
+        super();
+        this.name = name;
+    }
+
+    /**
+     * Records one invocation of this component.
+     * @param nanos execution time, in nanoseconds
+     * @param bytesRead number of bytes read (0 if unknown)
+     * @param bytesWritten number of bytes written (0 if none or unknown)
+     * @param rejected whether the document was rejected
+     */
+    public void record(long nanos,
+            long bytesRead, long bytesWritten, boolean rejected) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+        histogram.incrementAndGet(getBucket(nanos));
+        if (bytesRead > 0) {
+            bytesIn.addAndGet(bytesRead);
+        }
+        if (bytesWritten > 0) {
+            bytesOut.addAndGet(bytesWritten);
+        }
+        if (rejected) {
+            rejectedCount.incrementAndGet();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+    public long getCount() {
+        return count.get();
+    }
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+    /**
+     * Gets the total execution time.
+     * @return time in milliseconds
+     */
+    public long getTotalTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+    }
+    /**
+     * Gets the longest execution time.
+     * @return time in milliseconds
+     */
+    public long getMaxTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+    /**
+     * Gets the average execution time.
+     * @return time in milliseconds
+     */
+    public double getAverageTime() {
+        long c = count.get();
+        if (c == 0) {
+            return 0;
+        }
+        return totalNanos.get() / (double) c / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+    /**
+     * Gets an approximation of the execution time under which the given
+     * percentage of invocations completed, based on the histogram
+     * (the upper bound of the matching bucket).
+     * @param percentile a value between 0 and 100
+     * @return time in milliseconds
+     */
+    public double getPercentileTime(double percentile) {
+        long[] buckets = getHistogram();
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile / 100d);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= threshold) {
+                return getBucketUpperBound(i) / 1000d;
+            }
+        }
+        return getBucketUpperBound(buckets.length - 1) / 1000d;
+    }
+    /**
+     * Gets a copy of the execution time histogram.
+     * @return number of invocations for each bucket
+     */
+    public long[] getHistogram() {
+        long[] buckets = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = histogram.get(i);
+        }
+        return buckets;
+    }
+    /**
+     * Gets the execution time under which invocations fall in a
+     * given histogram bucket.
+     * @param bucket histogram bucket index
+     * @return time in microseconds
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return 2L << bucket;
+    }
+
+    /**
+     * Resets all statistics.
+     */
+    public void reset() {
+        count.set(0);
+        rejectedCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    private static int getBucket(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = 63 - Long.numberOfLeadingZeros(Math.max(micros, 1));
+        return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d, rejected=%d, avg=%.3fms, "
+                + "p95=%.3fms, max=%dms, total=%dms, in=%d bytes, "
+                + "out=%d bytes", name, getCount(), getRejectedCount(),
+                getAverageTime(), getPercentileTime(95), getMaxTime(),
+                getTotalTime(), getBytesIn(), getBytesOut());
+    }
+}
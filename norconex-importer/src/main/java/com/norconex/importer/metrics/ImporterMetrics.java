@@ -0,0 +1,253 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Execution statistics gathered by an importer, per import phase,
+ * per handler and per parser.  Handlers are named after the chain they
+ * belong to, their position in it, and their class name
+ * (e.g. "postParse.3.ReplaceTransformer").  Parsers are named after
+ * their class name. The following phases are recorded:
+ * <ul>
+ *   <li><b>document</b>: whole import of a top-level document, including
+ *       its nested documents.  Bytes in are the document original size.
+ *       </li>
+ *   <li><b>nestedDocument</b>: import of a nested document (embedded or
+ *       split document), excluding its own nested documents.</li>
+ *   <li><b>detection</b>: content type detection.</li>
+ *   <li><b>preParse</b>: pre-parse handlers execution.</li>
+ *   <li><b>parse</b>: document parsing.</li>
+ *   <li><b>postParse</b>: post-parse handlers execution.</li>
+ * </ul>
+ * Child documents are imported as they are extracted. The time spent
+ * importing them is not part of the phase, splitter, or parser times
+ * of their parent document, so each nested document is only
+ * accounted for once.
+ * <p />
+ * Metrics can be registered as a JMX MBean, under the
+ * "com.norconex.importer" domain.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class ImporterMetrics implements ImporterMetricsMBean {
+
+    private static final Logger LOG =
+            LogManager.getLogger(ImporterMetrics.class);
+
+    public static final String PHASE_DOCUMENT = "document";
+    public static final String PHASE_NESTED_DOCUMENT = "nestedDocument";
+    public static final String PHASE_DETECTION = "detection";
+    public static final String PHASE_PRE_PARSE = "preParse";
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_POST_PARSE = "postParse";
+
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    private final ConcurrentMap<String, ComponentMetrics> phases =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ComponentMetrics> handlers =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ComponentMetrics> parsers =
+            new ConcurrentHashMap<>();
+    private final String id = "importer-" + INSTANCE_COUNT.incrementAndGet();
+    private ObjectName objectName;
+
+    /**
+     * Gets the metrics for an import phase, created if not existing.
+     * @param name phase name
+     * @return phase metrics
+     */
+    public ComponentMetrics getPhaseMetrics(String name) {
+        return getOrCreate(phases, name);
+    }
+    /**
+     * Gets the metrics for a handler, created if not existing.
+     * @param name handler name
+     * @return handler metrics
+     */
+    public ComponentMetrics getHandlerMetrics(String name) {
+        return getOrCreate(handlers, name);
+    }
+    /**
+     * Gets the metrics for a parser, created if not existing.
+     * @param name parser name
+     * @return parser metrics
+     */
+    public ComponentMetrics getParserMetrics(String name) {
+        return getOrCreate(parsers, name);
+    }
+
+    /**
+     * Gets the metrics of all recorded phases, sorted by name.
+     * @return phase metrics
+     */
+    public Map<String, ComponentMetrics> getAllPhaseMetrics() {
+        return sorted(phases);
+    }
+    /**
+     * Gets the metrics of all recorded handlers, sorted by name.
+     * @return handler metrics
+     */
+    public Map<String, ComponentMetrics> getAllHandlerMetrics() {
+        return sorted(handlers);
+    }
+    /**
+     * Gets the metrics of all recorded parsers, sorted by name.
+     * @return parser metrics
+     */
+    public Map<String, ComponentMetrics> getAllParserMetrics() {
+        return sorted(parsers);
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return getPhaseMetrics(PHASE_DOCUMENT).getCount();
+    }
+    @Override
+    public long getRejectedDocumentCount() {
+        return getPhaseMetrics(PHASE_DOCUMENT).getRejectedCount();
+    }
+    @Override
+    public double getAverageDocumentTime() {
+        return getPhaseMetrics(PHASE_DOCUMENT).getAverageTime();
+    }
+    @Override
+    public double getPercentile95DocumentTime() {
+        return getPhaseMetrics(PHASE_DOCUMENT).getPercentileTime(95);
+    }
+    @Override
+    public long getBytesImported() {
+        return getPhaseMetrics(PHASE_DOCUMENT).getBytesIn();
+    }
+    @Override
+    public String[] getPhaseSummaries() {
+        return summaries(phases);
+    }
+    @Override
+    public String[] getHandlerSummaries() {
+        return summaries(handlers);
+    }
+    @Override
+    public String[] getParserSummaries() {
+        return summaries(parsers);
+    }
+
+    @Override
+    public void reset() {
+        for (ComponentMetrics m : phases.values()) {
+            m.reset();
+        }
+        for (ComponentMetrics m : handlers.values()) {
+            m.reset();
+        }
+        for (ComponentMetrics m : parsers.values()) {
+            m.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     * Failing to do so is logged and otherwise ignored.
+     */
+    public synchronized void registerMBean() {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(
+                    "com.norconex.importer:type=ImporterMetrics,name=" + id);
+            getMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            LOG.error("Could not register importer metrics MBean.", e);
+        }
+    }
+    /**
+     * Unregisters these metrics from the platform MBean server,
+     * if registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            getMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOG.error("Could not unregister importer metrics MBean.", e);
+        }
+        objectName = null;
+    }
+
+    private MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    private ComponentMetrics getOrCreate(
+            ConcurrentMap<String, ComponentMetrics> metrics, String name) {
+        ComponentMetrics m = metrics.get(name);
+        if (m == null) {
+            m = new ComponentMetrics(name);
+            ComponentMetrics existing = metrics.putIfAbsent(name, m);
+            if (existing != null) {
+                m = existing;
+            }
+        }
+        return m;
+    }
+    private Map<String, ComponentMetrics> sorted(
+            Map<String, ComponentMetrics> metrics) {
+        return Collections.unmodifiableMap(
+                new TreeMap<String, ComponentMetrics>(metrics));
+    }
+    private String[] summaries(Map<String, ComponentMetrics> metrics) {
+        Map<String, ComponentMetrics> sortedMetrics = sorted(metrics);
+        String[] summaries = new String[sortedMetrics.size()];
+        int i = 0;
+        for (ComponentMetrics m : sortedMetrics.values()) {
+            summaries[i++] = m.toString();
+        }
+        return summaries;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("ImporterMetrics[" + id + "]");
+        for (String summary : getPhaseSummaries()) {
+            b.append("\n  ").append(summary);
+        }
+        for (String summary : getParserSummaries()) {
+            b.append("\n  ").append(summary);
+        }
+        for (String summary : getHandlerSummaries()) {
+            b.append("\n  ").append(summary);
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,232 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.parser;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * Rules deciding which embedded documents are extracted by parsers,
+ * based only on what is known about them before reading their content:
+ * their content type, name, and size (when provided by the parent
+ * document format).  Rejected embedded documents are skipped
+ * without being read, cached, or parsed.
+ * <p />
+ * Regular expressions must match the entire value.  Unknown names
+ * are matched as empty strings.  Embedded documents of unknown size are
+ * never rejected based on their size.  By default, all embedded
+ * documents are selected.
+ * <p />
+ * Regular expressions are compiled when set, so a selector can be used
+ * by several threads once configured.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class EmbeddedDocumentSelector implements Serializable {
+
+    private static final long serialVersionUID = -4165813870356215812L;
+
+    private String includedContentTypesRegex;
+    private String excludedContentTypesRegex;
+    private String includedNamesRegex;
+    private String excludedNamesRegex;
+    private long maxSize = -1;
+
+    private transient volatile Pattern includedContentTypes;
+    private transient volatile Pattern excludedContentTypes;
+    private transient volatile Pattern includedNames;
+    private transient volatile Pattern excludedNames;
+
+    public String getIncludedContentTypesRegex() {
+        return includedContentTypesRegex;
+    }
+    /**
+     * Sets a regular expression matching content types of embedded
+     * documents to extract.
+     * @param includedContentTypesRegex regular expression, or
+     *        <code>null</code> to include all content types
+     */
+    public void setIncludedContentTypesRegex(
+            String includedContentTypesRegex) {
+        this.includedContentTypesRegex = includedContentTypesRegex;
+        this.includedContentTypes = compile(includedContentTypesRegex);
+    }
+
+    public String getExcludedContentTypesRegex() {
+        return excludedContentTypesRegex;
+    }
+    /**
+     * Sets a regular expression matching content types of embedded
+     * documents to skip (e.g. "image/.*" for pictures in office files).
+     * @param excludedContentTypesRegex regular expression, or
+     *        <code>null</code> to exclude none
+     */
+    public void setExcludedContentTypesRegex(
+            String excludedContentTypesRegex) {
+        this.excludedContentTypesRegex = excludedContentTypesRegex;
+        this.excludedContentTypes = compile(excludedContentTypesRegex);
+    }
+
+    public String getIncludedNamesRegex() {
+        return includedNamesRegex;
+    }
+    /**
+     * Sets a regular expression matching names of embedded documents
+     * to extract (e.g. file paths within a zip file).
+     * @param includedNamesRegex regular expression, or <code>null</code>
+     *        to include all names
+     */
+    public void setIncludedNamesRegex(String includedNamesRegex) {
+        this.includedNamesRegex = includedNamesRegex;
+        this.includedNames = compile(includedNamesRegex);
+    }
+
+    public String getExcludedNamesRegex() {
+        return excludedNamesRegex;
+    }
+    /**
+     * Sets a regular expression matching names of embedded documents
+     * to skip.
+     * @param excludedNamesRegex regular expression, or <code>null</code>
+     *        to exclude none
+     */
+    public void setExcludedNamesRegex(String excludedNamesRegex) {
+        this.excludedNamesRegex = excludedNamesRegex;
+        this.excludedNames = compile(excludedNamesRegex);
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+    /**
+     * Sets the maximum size of embedded documents to extract, when their
+     * size is known before extraction.
+     * @param maxSize maximum size in bytes, or -1 for no maximum (default)
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Whether content type rules are set, in which case the content
+     * type of embedded documents should be provided (detected if need be).
+     * @return <code>true</code> if content types are included or excluded
+     */
+    public boolean hasContentTypeRules() {
+        return StringUtils.isNotBlank(includedContentTypesRegex)
+                || StringUtils.isNotBlank(excludedContentTypesRegex);
+    }
+
+    /**
+     * Whether an embedded document should be extracted.
+     * @param contentType content type, or <code>null</code> if unknown
+     * @param name embedded document name, or <code>null</code> if unknown
+     * @param size embedded document size in bytes, or -1 if unknown
+     * @return <code>true</code> if selected for extraction
+     */
+    public boolean isSelected(String contentType, String name, long size) {
+        if (maxSize >= 0 && size > maxSize) {
+            return false;
+        }
+        Pattern pattern = includedContentTypes;
+        if (pattern != null && !matches(pattern, contentType)) {
+            return false;
+        }
+        pattern = excludedContentTypes;
+        if (pattern != null && matches(pattern, contentType)) {
+            return false;
+        }
+        pattern = includedNames;
+        if (pattern != null && !matches(pattern, name)) {
+            return false;
+        }
+        pattern = excludedNames;
+        if (pattern != null && matches(pattern, name)) {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean matches(Pattern pattern, String value) {
+        return pattern.matcher(StringUtils.defaultString(value)).matches();
+    }
+
+    private static Pattern compile(String regex) {
+        if (StringUtils.isBlank(regex)) {
+            return null;
+        }
+        return Pattern.compile(regex);
+    }
+
+    // Patterns are not serialized: compile them again
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        includedContentTypes = compile(includedContentTypesRegex);
+        excludedContentTypes = compile(excludedContentTypesRegex);
+        includedNames = compile(includedNamesRegex);
+        excludedNames = compile(excludedNamesRegex);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof EmbeddedDocumentSelector)) {
+            return false;
+        }
+        EmbeddedDocumentSelector castOther =
+                (EmbeddedDocumentSelector) other;
+        return new EqualsBuilder()
+                .append(includedContentTypesRegex,
+                        castOther.includedContentTypesRegex)
+                .append(excludedContentTypesRegex,
+                        castOther.excludedContentTypesRegex)
+                .append(includedNamesRegex, castOther.includedNamesRegex)
+                .append(excludedNamesRegex, castOther.excludedNamesRegex)
+                .append(maxSize, castOther.maxSize)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(includedContentTypesRegex)
+                .append(excludedContentTypesRegex)
+                .append(includedNamesRegex)
+                .append(excludedNamesRegex)
+                .append(maxSize)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("includedContentTypesRegex",
+                        includedContentTypesRegex)
+                .append("excludedContentTypesRegex",
+                        excludedContentTypesRegex)
+                .append("includedNamesRegex", includedNamesRegex)
+                .append("excludedNamesRegex", excludedNamesRegex)
+                .append("maxSize", maxSize)
+                .toString();
+    }
+}
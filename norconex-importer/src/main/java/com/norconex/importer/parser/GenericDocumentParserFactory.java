@@ -18,12 +18,14 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.lang3.StringUtils;
 
@@ -31,6 +33,7 @@ import com.norconex.commons.lang.config.ConfigurationException;
 import com.norconex.commons.lang.config.ConfigurationUtil;
 import com.norconex.commons.lang.config.IXMLConfigurable;
 import com.norconex.commons.lang.file.ContentType;
+import com.norconex.importer.parser.impl.AbstractTikaParser;
 import com.norconex.importer.parser.impl.FallbackParser;
 import com.norconex.importer.parser.impl.HTMLParser;
 import com.norconex.importer.parser.impl.PDFParser;
@@ -62,6 +65,13 @@ import com.norconex.importer.response.ImporterResponse;
  * {@link ImporterResponse} should then contain nested documents, which in turn,
  * might contain some (tree-like structure). 
  * <p />
+ * <h3>Selecting embedded documents:</h3>
+ * As of version 2.1.0, you can restrict which embedded documents are
+ * extracted, based on their content type, name, or size (see 
+ * {@link EmbeddedDocumentSelector}).  Embedded documents not selected
+ * are skipped before their content is read (e.g. pictures in office 
+ * documents), whether they are split or merged.
+ * <p />
  * <h3>XML configuration usage:</h3>
  * (Not required since used by default)
  * <p />
@@ -73,6 +83,12 @@ import com.norconex.importer.response.ImporterResponse;
  *          (optional regex matching content types to ignore for parsing, 
  *           i.e., not parsed.)
  *      &lt;/ignoredContentTypes&gt;
+ *      &lt;embeddedSelector maxSize="(maximum size in bytes)"&gt;
+ *          &lt;includedContentTypes&gt;(regex)&lt;/includedContentTypes&gt;
+ *          &lt;excludedContentTypes&gt;(regex)&lt;/excludedContentTypes&gt;
+ *          &lt;includedNames&gt;(regex)&lt;/includedNames&gt;
+ *          &lt;excludedNames&gt;(regex)&lt;/excludedNames&gt;
+ *      &lt;/embeddedSelector&gt;
  *  &lt;/documentParserFactory&gt;
  * </pre>
  * @author Pascal Essiembre
@@ -87,6 +103,7 @@ public class GenericDocumentParserFactory
 
     private String ignoredContentTypesRegex;
     private boolean splitEmbedded;
+    private EmbeddedDocumentSelector embeddedSelector;
     private boolean parsersAllSet = false;
     
     /**
@@ -132,6 +149,21 @@ public class GenericDocumentParserFactory
     }
     public void setSplitEmbedded(boolean splitEmbedded) {
         this.splitEmbedded = splitEmbedded;
+        this.parsersAllSet = false;
+    }
+
+    public EmbeddedDocumentSelector getEmbeddedSelector() {
+        return embeddedSelector;
+    }
+    /**
+     * Sets which embedded documents are extracted by parsers.
+     * @param embeddedSelector embedded document selector, or 
+     *        <code>null</code> to extract all of them (default)
+     * @since 2.1.0
+     */
+    public void setEmbeddedSelector(EmbeddedDocumentSelector embeddedSelector) {
+        this.embeddedSelector = embeddedSelector;
+        this.parsersAllSet = false;
     }
 
     protected final void registerNamedParser(
@@ -171,18 +203,22 @@ public class GenericDocumentParserFactory
     private void ensureParsersAllSet() {
         if (!parsersAllSet) {
             for (IDocumentParser parser : namedParsers.values()) {
-                if (parser instanceof IDocumentSplittableEmbeddedParser) {
-                    ((IDocumentSplittableEmbeddedParser) parser)
-                            .setSplitEmbedded(splitEmbedded);
-                }
-            }
-            if (fallbackParser instanceof IDocumentSplittableEmbeddedParser) {
-                ((IDocumentSplittableEmbeddedParser) fallbackParser)
-                        .setSplitEmbedded(splitEmbedded);
+                configureParser(parser);
             }
+            configureParser(fallbackParser);
             parsersAllSet = true;
         }
     }
+    private void configureParser(IDocumentParser parser) {
+        if (parser instanceof IDocumentSplittableEmbeddedParser) {
+            ((IDocumentSplittableEmbeddedParser) parser)
+                    .setSplitEmbedded(splitEmbedded);
+        }
+        if (parser instanceof AbstractTikaParser) {
+            ((AbstractTikaParser) parser).setEmbeddedSelector(
+                    embeddedSelector);
+        }
+    }
     
     
     @Override
@@ -193,6 +229,23 @@ public class GenericDocumentParserFactory
                     "ignoredContentTypes", getIgnoredContentTypesRegex()));
             setSplitEmbedded(xml.getBoolean(
                     "[@splitEmbedded]", isSplitEmbedded()));
+            List<HierarchicalConfiguration> nodes = 
+                    xml.configurationsAt("embeddedSelector");
+            if (!nodes.isEmpty()) {
+                HierarchicalConfiguration node = nodes.get(0);
+                EmbeddedDocumentSelector selector = 
+                        new EmbeddedDocumentSelector();
+                selector.setIncludedContentTypesRegex(
+                        node.getString("includedContentTypes", null));
+                selector.setExcludedContentTypesRegex(
+                        node.getString("excludedContentTypes", null));
+                selector.setIncludedNamesRegex(
+                        node.getString("includedNames", null));
+                selector.setExcludedNamesRegex(
+                        node.getString("excludedNames", null));
+                selector.setMaxSize(node.getLong("[@maxSize]", -1));
+                setEmbeddedSelector(selector);
+            }
         } catch (ConfigurationException e) {
             throw new IOException("Cannot load XML.", e);
         }
@@ -212,6 +265,9 @@ public class GenericDocumentParserFactory
                 writer.writeCharacters(ignoredContentTypesRegex);
                 writer.writeEndElement();
             }
+            if (embeddedSelector != null) {
+                saveEmbeddedSelector(writer);
+            }
             writer.writeEndElement();
             writer.flush();
             writer.close();
@@ -219,5 +275,28 @@ public class GenericDocumentParserFactory
             throw new IOException("Cannot save as XML.", e);
         }
     }
+    private void saveEmbeddedSelector(XMLStreamWriter writer) 
+            throws XMLStreamException {
+        writer.writeStartElement("embeddedSelector");
+        writer.writeAttribute("maxSize", 
+                Long.toString(embeddedSelector.getMaxSize()));
+        writeElement(writer, "includedContentTypes", 
+                embeddedSelector.getIncludedContentTypesRegex());
+        writeElement(writer, "excludedContentTypes", 
+                embeddedSelector.getExcludedContentTypesRegex());
+        writeElement(writer, "includedNames", 
+                embeddedSelector.getIncludedNamesRegex());
+        writeElement(writer, "excludedNames", 
+                embeddedSelector.getExcludedNamesRegex());
+        writer.writeEndElement();
+    }
+    private void writeElement(XMLStreamWriter writer, String name, 
+            String value) throws XMLStreamException {
+        if (value != null) {
+            writer.writeStartElement(name);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
 
 }
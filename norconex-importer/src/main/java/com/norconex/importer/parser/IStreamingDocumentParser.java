@@ -0,0 +1,45 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.parser;
+
+import java.io.Writer;
+
+import com.norconex.importer.doc.IChildDocumentConsumer;
+import com.norconex.importer.doc.ImporterDocument;
+
+/**
+ * Parser handing each embedded document to a consumer as soon as it is
+ * extracted, instead of returning them all once parsing is over.  The 
+ * importer favors this method over 
+ * {@link #parseDocument(ImporterDocument, Writer)} when available.
+ * @author Pascal Essiembre
+ * @see IDocumentParserFactory
+ * @since 2.1.0
+ */
+public interface IStreamingDocumentParser extends IDocumentParser {
+
+    /**
+     * Parses a document, handing each first-level embedded document 
+     * (if any) to the supplied consumer as soon as it is extracted.
+     * @param doc importer document to parse
+     * @param output where to store extracted or modified content of the 
+     *        supplied document
+     * @param childConsumer consumer of embedded documents
+     * @throws DocumentParserException problem parsing the document
+     */
+    void parseDocument(ImporterDocument doc, Writer output, 
+            IChildDocumentConsumer childConsumer) 
+                    throws DocumentParserException;
+}
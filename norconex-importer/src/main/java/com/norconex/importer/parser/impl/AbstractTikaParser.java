@@ -17,11 +17,17 @@ package com.norconex.importer.parser.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.metadata.HttpHeaders;
 import org.apache.tika.metadata.Metadata;
@@ -37,19 +43,40 @@ import com.norconex.commons.lang.file.ContentType;
 import com.norconex.commons.lang.io.CachedInputStream;
 import com.norconex.commons.lang.io.CachedOutputStream;
 import com.norconex.commons.lang.io.CachedStreamFactory;
+import com.norconex.importer.doc.ChildDocumentCollector;
+import com.norconex.importer.doc.IChildDocumentConsumer;
 import com.norconex.importer.doc.ImporterDocument;
 import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.doc.NestedDocumentGuard;
 import com.norconex.importer.parser.DocumentParserException;
+import com.norconex.importer.parser.EmbeddedDocumentSelector;
 import com.norconex.importer.parser.IDocumentSplittableEmbeddedParser;
+import com.norconex.importer.parser.IStreamingDocumentParser;
 
 /**
  * Base class wrapping Apache Tika parser for use by the importer.
+ * When splitting embedded documents, each embedded document is handed 
+ * over as soon as it is extracted (see {@link IStreamingDocumentParser}).
+ * Embedded documents rejected by the {@link EmbeddedDocumentSelector} 
+ * (if any) are skipped without being read, whether split or merged.
+ * Embedded documents are read within the limits of the current
+ * {@link NestedDocumentGuard}.
  * @author Pascal Essiembre
  */
-public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
+public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser,
+        IStreamingDocumentParser {
 
+    private static final Logger LOG = 
+            LogManager.getLogger(AbstractTikaParser.class);
+
+    // Only used to select embedded documents by content type when
+    // their parent document format does not provide it
+    private static final Detector EMBEDDED_DETECTOR = new DefaultDetector();
+    
     private final Parser parser;
+    private final boolean legacyRecursiveParser;
     private boolean splitEmbedded;
+    private EmbeddedDocumentSelector embeddedSelector;
 
     /**
      * Creates a new Tika-based parser.
@@ -58,13 +85,13 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
     public AbstractTikaParser(Parser parser) {
         super();
         this.parser = parser;
+        this.legacyRecursiveParser = overridesLegacyRecursiveParser();
     }
     
     //TODO distinguish between archives and other embedded docs and offer
     //     a flag for each whether to split them (as opposed to the generic
     //     splitEmbedded variable). Detected based whether there is a name for 
     //     the item.
-    //TODO have a maximum recursivity setting somewhere???
     //TODO have a flag that says whether to process archive/package files only
     //     or also embedded objects in documents (e.g. image in MS-word).
     
@@ -73,7 +100,33 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
     public final List<ImporterDocument> parseDocument(
             ImporterDocument doc, Writer output)
             throws DocumentParserException {
-
+        RecursiveParser recursiveParser = createRecursiveParser(
+                doc.getReference(), output, doc.getMetadata(), 
+                doc.getContent().getStreamFactory());
+        parse(doc, output, recursiveParser);
+        return recursiveParser.getEmbeddedDocuments();
+    }
+    
+    @Override
+    public final void parseDocument(ImporterDocument doc, Writer output,
+            IChildDocumentConsumer childConsumer)
+            throws DocumentParserException {
+        if (legacyRecursiveParser) {
+            List<ImporterDocument> embeddedDocs = parseDocument(doc, output);
+            if (embeddedDocs != null) {
+                for (ImporterDocument embeddedDoc : embeddedDocs) {
+                    childConsumer.consumeChildDocument(embeddedDoc);
+                }
+            }
+            return;
+        }
+        parse(doc, output, createRecursiveParser(
+                doc.getReference(), output, doc.getMetadata(), 
+                doc.getContent().getStreamFactory(), childConsumer));
+    }
+    
+    private void parse(ImporterDocument doc, Writer output, 
+            Parser recursiveParser) throws DocumentParserException {
         Metadata tikaMetadata = new Metadata();
         tikaMetadata.set(HttpHeaders.CONTENT_TYPE, 
                 doc.getContentType().toString());
@@ -82,16 +135,12 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
         tikaMetadata.set(Metadata.CONTENT_ENCODING, doc.getContentEncoding());
         
         try {
-            RecursiveParser recursiveParser = createRecursiveParser(
-                    doc.getReference(), output, doc.getMetadata(), 
-                    doc.getContent().getStreamFactory());
-            
             ParseContext context = new ParseContext();
             context.set(Parser.class, recursiveParser);
             ContentHandler handler = new BodyContentHandler(output);
-            recursiveParser.parse(doc.getContent(), 
-                    handler, tikaMetadata, context);
-            return recursiveParser.getEmbeddedDocuments();
+            InputStream content = NestedDocumentGuard.getCurrent()
+                    .newInputStream(doc.getContent());
+            recursiveParser.parse(content, handler, tikaMetadata, context);
         } catch (Exception e) {
             throw new DocumentParserException(e);
         }
@@ -105,6 +154,28 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
         this.splitEmbedded = splitEmbedded;
     }
 
+    public EmbeddedDocumentSelector getEmbeddedSelector() {
+        return embeddedSelector;
+    }
+    /**
+     * Sets which embedded documents are extracted.
+     * @param embeddedSelector embedded document selector, or 
+     *        <code>null</code> to extract all of them (default)
+     * @since 2.1.0
+     */
+    public void setEmbeddedSelector(EmbeddedDocumentSelector embeddedSelector) {
+        this.embeddedSelector = embeddedSelector;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+            .append("parser", parser.getClass().getName())
+            .append("splitEmbedded", splitEmbedded)
+            .append("embeddedSelector", embeddedSelector)
+            .toString();
+    }
+
     protected void addTikaMetadata(
             Metadata tikaMeta, ImporterMetadata metadata) {
         String[]  names = tikaMeta.names();
@@ -123,6 +194,67 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
         }
     }
 
+    /**
+     * Whether an embedded document should be extracted, based on the 
+     * embedded document selector and the metadata obtained from its parent
+     * document.  When content type rules apply and the content type is
+     * not provided, it is detected from the embedded document name and 
+     * first bytes (the stream is reset).
+     * @param stream embedded document content
+     * @param tikaMeta embedded document metadata
+     * @return <code>true</code> if the embedded document should be 
+     *         extracted
+     * @throws IOException problem detecting the content type
+     * @since 2.1.0
+     */
+    protected boolean isEmbeddedSelected(
+            InputStream stream, Metadata tikaMeta) throws IOException {
+        EmbeddedDocumentSelector selector = embeddedSelector;
+        if (selector == null) {
+            return true;
+        }
+        String name = tikaMeta.get(Metadata.RESOURCE_NAME_KEY);
+        if (StringUtils.isBlank(name)) {
+            name = tikaMeta.get(Metadata.EMBEDDED_RELATIONSHIP_ID);
+        }
+        String contentType = tikaMeta.get(Metadata.CONTENT_TYPE);
+        if (StringUtils.isBlank(contentType) 
+                && selector.hasContentTypeRules()) {
+            InputStream detectStream = null;
+            if (stream.markSupported()) {
+                detectStream = stream;
+            }
+            contentType = EMBEDDED_DETECTOR.detect(
+                    detectStream, tikaMeta).toString();
+        }
+        long size = NumberUtils.toLong(
+                tikaMeta.get(Metadata.CONTENT_LENGTH), -1);
+        if (selector.isSelected(contentType, name, size)) {
+            return true;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Embedded document not extracted: name=" + name
+                    + "; contentType=" + contentType + "; size=" + size);
+        }
+        return false;
+    }
+    
+    /**
+     * Creates the parser invoked for the document and each of its 
+     * embedded documents, collecting split embedded documents in a list.
+     * @param reference document reference
+     * @param writer where to write parsed content
+     * @param metadata document metadata
+     * @param streamFactory stream factory for embedded document content
+     * @return recursive parser
+     * @deprecated Since 2.1.0, override {@link #createRecursiveParser(
+     *       String, Writer, ImporterMetadata, CachedStreamFactory, 
+     *       IChildDocumentConsumer)} instead, so embedded documents are 
+     *       handed over as soon as they are extracted.  Subclasses still
+     *       overriding this method have embedded documents handed over 
+     *       once parsing is complete.
+     */
+    @Deprecated
     protected RecursiveParser createRecursiveParser(
             String reference, Writer writer, 
             ImporterMetadata metadata, CachedStreamFactory streamFactory) {
@@ -133,22 +265,111 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
             return new MergeEmbeddedParser(this.parser, writer, metadata);
         }
     }
+    /**
+     * Creates the parser invoked for the document and each of its 
+     * embedded documents, handing over split embedded documents as soon 
+     * as they are extracted.
+     * @param reference document reference
+     * @param writer where to write parsed content
+     * @param metadata document metadata
+     * @param streamFactory stream factory for embedded document content
+     * @param childConsumer consumer of split embedded documents
+     * @return recursive parser
+     * @since 2.1.0
+     */
+    protected Parser createRecursiveParser(
+            String reference, Writer writer, 
+            ImporterMetadata metadata, CachedStreamFactory streamFactory,
+            IChildDocumentConsumer childConsumer) {
+        if (splitEmbedded) {
+            return new SplitEmbbededParser(reference, this.parser, 
+                    metadata, streamFactory, childConsumer);
+        } else {
+            return new MergeEmbeddedParser(this.parser, writer, metadata);
+        }
+    }
+    
+    // Whether a subclass overrides the list-based createRecursiveParser,
+    // in which case it is always used
+    private boolean overridesLegacyRecursiveParser() {
+        for (Class<?> c = getClass(); 
+                c != AbstractTikaParser.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("createRecursiveParser", String.class,
+                        Writer.class, ImporterMetadata.class, 
+                        CachedStreamFactory.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not overridden at this level, check parent class
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Parser returning the split embedded documents once parsing is 
+     * complete.
+     * @deprecated Since 2.1.0, split embedded documents are handed to an
+     *       {@link IChildDocumentConsumer}.
+     */
+    @Deprecated
+    protected interface RecursiveParser extends Parser {
+        List<ImporterDocument> getEmbeddedDocuments();
+    }
     
+    @SuppressWarnings("deprecation")
     protected class SplitEmbbededParser 
             extends ParserDecorator implements RecursiveParser {
         private static final long serialVersionUID = -5011890258694908887L;
         private final String reference;
         private final ImporterMetadata metadata;
         private final CachedStreamFactory streamFactory;
+        private final transient IChildDocumentConsumer childConsumer;
+        private final transient ChildDocumentCollector collector;
         private boolean isMasterDoc = true;
         private int embedCount;
-        private List<ImporterDocument> embeddedDocs;
+        /**
+         * Creates a parser collecting embedded documents in a list.
+         * @param reference document reference
+         * @param parser parser to decorate
+         * @param metadata document metadata
+         * @param streamFactory stream factory for embedded content
+         * @deprecated Since 2.1.0, use the constructor taking an 
+         *       {@link IChildDocumentConsumer}.
+         */
+        @Deprecated
         public SplitEmbbededParser(String reference, Parser parser, 
                 ImporterMetadata metadata, CachedStreamFactory streamFactory) {
+            this(reference, parser, metadata, streamFactory, 
+                    new ChildDocumentCollector());
+        }
+        public SplitEmbbededParser(String reference, Parser parser, 
+                ImporterMetadata metadata, CachedStreamFactory streamFactory,
+                IChildDocumentConsumer childConsumer) {
             super(parser);
             this.streamFactory = streamFactory;
             this.reference = reference;
             this.metadata = metadata;
+            this.childConsumer = childConsumer;
+            if (childConsumer instanceof ChildDocumentCollector) {
+                this.collector = (ChildDocumentCollector) childConsumer;
+            } else {
+                this.collector = null;
+            }
+        }
+        /**
+         * Gets the embedded documents collected, when created without
+         * a child document consumer.
+         * @return embedded documents, or <code>null</code> if none were 
+         *         collected
+         */
+        @Override
+        public List<ImporterDocument> getEmbeddedDocuments() {
+            if (collector == null 
+                    || collector.getChildDocuments().isEmpty()) {
+                return null;
+            }
+            return collector.getChildDocuments();
         }
         @Override
         public void parse(InputStream stream, ContentHandler handler,
@@ -161,9 +382,11 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
                 addTikaMetadata(tikaMeta, metadata);
             } else {
                 embedCount++;
-                if (embeddedDocs == null) {
-                    embeddedDocs = new ArrayList<>();
+                if (!isEmbeddedSelected(stream, tikaMeta)) {
+                    return;
                 }
+                NestedDocumentGuard guard = NestedDocumentGuard.getCurrent();
+                guard.checkNewChild();
 
                 ImporterMetadata embedMeta = new ImporterMetadata();
 
@@ -173,9 +396,14 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
                 // Read the steam into cache for reuse since Tika will
                 // close the original stream on us causing exceptions later.
                 CachedOutputStream embedOutput = streamFactory.newOuputStream();
-                IOUtils.copy(stream, embedOutput);
-                CachedInputStream embedInput = embedOutput.getInputStream();
-                embedOutput.close();
+                CachedInputStream embedInput = null;
+                try {
+                    IOUtils.copy(guard.newChildInputStream(stream), 
+                            embedOutput);
+                    embedInput = embedOutput.getInputStream();
+                } finally {
+                    embedOutput.close();
+                }
                 
                 ImporterDocument embedDoc = new ImporterDocument(
                         embedRef, embedInput, embedMeta); 
@@ -188,13 +416,9 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
                 }
                 embedMeta.setEmbeddedParentRootReference(rootRef);
                 
-                embeddedDocs.add(embedDoc);
+                childConsumer.consumeChildDocument(embedDoc);
             }
         }
-        
-        public List<ImporterDocument> getEmbeddedDocuments() {
-            return embeddedDocs;
-        }
     }
     
     private String resolveEmbeddedResourceName(
@@ -235,11 +459,13 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
         return "embedded-" + embedCount + ".unknown";
     }
     
+    @SuppressWarnings("deprecation")
     protected class MergeEmbeddedParser 
-            extends ParserDecorator implements RecursiveParser  {
+            extends ParserDecorator implements RecursiveParser {
         private static final long serialVersionUID = -5011890258694908887L;
         private final Writer writer;
         private final ImporterMetadata metadata;
+        private boolean isMasterDoc = true;
         public MergeEmbeddedParser(Parser parser, 
                 Writer writer, ImporterMetadata metadata) {
             super(parser);
@@ -250,8 +476,17 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
         public void parse(InputStream stream, ContentHandler handler,
                 Metadata tikaMeta, ParseContext context)
                 throws IOException, SAXException, TikaException {
+            InputStream input = stream;
+            if (isMasterDoc) {
+                isMasterDoc = false;
+            } else if (!isEmbeddedSelected(stream, tikaMeta)) {
+                return;
+            } else {
+                input = NestedDocumentGuard.getCurrent()
+                        .newChildInputStream(stream);
+            }
             ContentHandler content = new BodyContentHandler(writer);
-            super.parse(stream, content, tikaMeta, context);
+            super.parse(input, content, tikaMeta, context);
             addTikaMetadata(tikaMeta, metadata);
         }
         @Override
@@ -259,8 +494,4 @@ public class AbstractTikaParser implements IDocumentSplittableEmbeddedParser {
             return null;
         }
     }
-    
-    protected interface RecursiveParser extends Parser {
-        List<ImporterDocument> getEmbeddedDocuments();
-    }
 }
@@ -0,0 +1,188 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import com.norconex.commons.lang.unit.DataUnit;
+
+/**
+ * Memory budget shared by handlers loading document content in memory
+ * (e.g. string-based taggers, transformers and filters).  Each document
+ * being processed obtains a {@link Quota} it grows as its buffer grows.
+ * When growing is refused, the handler is expected to process the
+ * content buffered so far and reuse its buffer for the rest (i.e.,
+ * process the content in chunks).
+ * <p />
+ * A quota cannot grow beyond an equal share of the budget among all
+ * documents currently holding one, so one very large document does not
+ * prevent others from being processed in full.  Every quota can grow up
+ * to {@link #MIN_QUOTA_SIZE} regardless of the budget, so processing
+ * always progresses.
+ * <p />
+ * The budget used by handlers is the one bound to the current thread
+ * (the importer binds its own for each document imported), or a default
+ * JVM-wide budget of a quarter of the maximum heap size.
+ * This class is thread-safe.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class BufferMemoryBudget {
+
+    /** Size under which a quota can always grow, in bytes. */
+    public static final long MIN_QUOTA_SIZE = DataUnit.KB.toBytes(256);
+
+    private static final BufferMemoryBudget DEFAULT_BUDGET =
+            new BufferMemoryBudget(getDefaultMaxSize());
+    private static final ThreadLocal<BufferMemoryBudget> CURRENT =
+            new ThreadLocal<>();
+
+    private final long maxSize;
+    private long reservedSize;
+    private int quotaCount;
+
+    /**
+     * Creates a memory budget.
+     * @param maxSize maximum number of bytes all quotas can hold together
+     */
+    public BufferMemoryBudget(long maxSize) {
+        super();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the default budget size: a quarter of the JVM maximum heap.
+     * @return default budget size, in bytes
+     */
+    public static long getDefaultMaxSize() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Gets the budget bound to the current thread, or the default one
+     * if none is bound.
+     * @return memory budget
+     */
+    public static BufferMemoryBudget getCurrent() {
+        BufferMemoryBudget budget = CURRENT.get();
+        if (budget == null) {
+            return DEFAULT_BUDGET;
+        }
+        return budget;
+    }
+
+    /**
+     * Binds a budget to the current thread.  Invoke again with the
+     * returned budget when done, to restore the previous one.
+     * @param budget the budget to bind (<code>null</code> to unbind)
+     * @return the budget previously bound, or <code>null</code>
+     */
+    public static BufferMemoryBudget bind(BufferMemoryBudget budget) {
+        BufferMemoryBudget previous = CURRENT.get();
+        if (budget == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(budget);
+        }
+        return previous;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+    /**
+     * Gets the number of bytes currently held by all quotas.
+     * @return reserved bytes
+     */
+    public synchronized long getReservedSize() {
+        return reservedSize;
+    }
+
+    /**
+     * Creates a new quota, initially empty.  Quotas must be released
+     * when done.
+     * @return a new quota
+     */
+    public synchronized Quota newQuota() {
+        quotaCount++;
+        return new Quota();
+    }
+
+    private synchronized boolean grow(Quota quota, long size) {
+        long extra = size - quota.size;
+        if (extra <= 0) {
+            return true;
+        }
+        if (size > MIN_QUOTA_SIZE && (reservedSize + extra > maxSize
+                || size > maxSize / Math.max(1, quotaCount))) {
+            return false;
+        }
+        reservedSize += extra;
+        quota.size = size;
+        return true;
+    }
+    private synchronized void release(Quota quota) {
+        if (quota.released) {
+            return;
+        }
+        reservedSize -= quota.size;
+        quota.size = 0;
+        quota.released = true;
+        quotaCount--;
+    }
+
+    /**
+     * Memory reserved for buffering the content of one document.
+     * A quota is meant to be used by a single thread.
+     */
+    public class Quota {
+        private long size;
+        private boolean released;
+        private Quota() {
+            super();
+        }
+        /**
+         * Tries to grow this quota to the given size.  Always succeeds
+         * when the quota already holds that size or more.
+         * @param size number of bytes needed in total
+         * @return <code>true</code> if the quota now holds at least
+         *         that size
+         */
+        public boolean ensureSize(long size) {
+            return grow(this, size);
+        }
+        /**
+         * Tries to grow this quota so the given buffer can increase its
+         * capacity (which a {@link StringBuilder} doubles when full).
+         * @param buffer buffer about to grow
+         * @return <code>true</code> if the buffer can grow
+         */
+        public boolean ensureGrowable(StringBuilder buffer) {
+            // chars take 2 bytes
+            return ensureSize((buffer.capacity() * 2L + 2) * 2);
+        }
+        /**
+         * Gets the number of bytes held by this quota.
+         * @return quota size
+         */
+        public long getSize() {
+            return size;
+        }
+        /**
+         * Gives back all memory held by this quota to the budget.
+         */
+        public void release() {
+            BufferMemoryBudget.this.release(this);
+        }
+    }
+}
@@ -46,41 +46,63 @@ public final class BufferUtil {
     public static void flushBuffer(
             StringBuilder buffer, Writer out, boolean cutWisely)
             throws IOException {
-        String remainingText = null;
+        int maxContentToKeep = 0;
         if (cutWisely) {
-            int index = -1;
-            int fromIndex = 0;
-            if (buffer.length() > MAX_CONTENT_FROM_END_TO_CUT) {
-                fromIndex = buffer.length() - MAX_CONTENT_FROM_END_TO_CUT;
-            }
-            index = buffer.lastIndexOf("\n", fromIndex);
-            if (index == -1) {
-                index = buffer.lastIndexOf("\r", fromIndex);
-            }
-            if (index == -1) {
-                index = buffer.lastIndexOf(". ", fromIndex);
-            }
-            if (index == -1) {
-                index = buffer.lastIndexOf(" ", fromIndex);
-            }
+            maxContentToKeep = MAX_CONTENT_FROM_END_TO_CUT;
+        }
+        flushBuffer(buffer, out, maxContentToKeep);
+    }
+
+    /**
+     * Flushes the buffer to output stream, keeping in the buffer the 
+     * content after the last line break, dot, or space found within the
+     * given number of characters from the end (if any).  
+     * If the output writer is null, it will simply truncate the buffer
+     * content without writing it anywhere.
+     * The buffer is truncated only once, so flushing is done in linear time
+     * regardless of the buffer size.
+     * @param buffer the buffer to flush
+     * @param out where to write the buffer content
+     * @param maxContentToKeep maximum number of characters to keep in 
+     *        the buffer (0 to flush everything)
+     * @throws IOException when there is a problem flushing the buffer
+     * @since 2.1.0
+     */
+    public static void flushBuffer(StringBuilder buffer, Writer out, 
+            int maxContentToKeep) throws IOException {
+        int cutIndex = buffer.length();
+        if (maxContentToKeep > 0) {
+            int index = findCutIndex(buffer, maxContentToKeep);
             if (index > -1) {
-                remainingText = buffer.substring(index);
-                buffer.delete(index, buffer.length());
+                cutIndex = index;
             }
         }
-        while (buffer.length() != 0) {
-            int writeChunkSize = 
-                    Math.min(buffer.length(), MAX_CONTENT_FROM_END_TO_CUT);
-            if (out != null) {
-                char[] chars = new char[writeChunkSize];
-                buffer.getChars(0, writeChunkSize, chars, 0);
-                out.write(chars);
-                chars = null;
+        if (out != null) {
+            char[] chars = new char[
+                    Math.min(cutIndex, MAX_CONTENT_FROM_END_TO_CUT)];
+            int start = 0;
+            while (start < cutIndex) {
+                int end = Math.min(cutIndex, start + chars.length);
+                buffer.getChars(start, end, chars, 0);
+                out.write(chars, 0, end - start);
+                start = end;
             }
-            buffer.delete(0, writeChunkSize);
         }
-        if (remainingText != null) {
-            buffer.append(remainingText);
+        if (cutIndex == buffer.length()) {
+            buffer.setLength(0);
+        } else {
+            buffer.delete(0, cutIndex);
+        }
+    }
+
+    private static int findCutIndex(StringBuilder buffer, int maxDistance) {
+        int fromIndex = Math.max(0, buffer.length() - maxDistance);
+        for (String separator : new String[] { "\n", "\r", ". ", " " }) {
+            int index = buffer.lastIndexOf(separator);
+            if (index >= fromIndex) {
+                return index;
+            }
         }
+        return -1;
     }
 }
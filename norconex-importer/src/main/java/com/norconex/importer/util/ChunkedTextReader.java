@@ -0,0 +1,217 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Reads text into a {@link StringBuilder} in as few chunks as the
+ * current {@link BufferMemoryBudget} allows.  Content is read in bulk,
+ * through a fixed-size buffer reused by each thread.  Typical usage:
+ * <pre>
+ * try (ChunkedTextReader reader = new ChunkedTextReader(input, output)) {
+ *     while (reader.readNext()) {
+ *         process(reader.getChunk(), reader.isPartial());
+ *     }
+ * }
+ * </pre>
+ * Each chunk is the buffer itself (no copy is made), which can be
+ * modified in place.  Before reading more, the current chunk is written
+ * to the output writer (if any) and removed from the buffer.  For partial
+ * chunks, the text after the last line break, dot, or space found within
+ * the overlap window (if any) is kept in the buffer and becomes the
+ * beginning of the next chunk.
+ * <p />
+ * Chunks can also be limited to a maximum size, to process text in 
+ * fixed-size windows (e.g. to stop reading as soon as a pattern is found).
+ * Windows then overlap by exactly the overlap size, so that matches 
+ * no longer than the overlap are never missed at window boundaries.
+ * <p />
+ * This class is not thread-safe.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class ChunkedTextReader implements Closeable {
+
+    /** Default maximum number of characters carried to the next chunk. */
+    public static final int DEFAULT_OVERLAP =
+            BufferUtil.MAX_CONTENT_FROM_END_TO_CUT;
+
+    private static final int READ_BUFFER_SIZE = 8 * (int) FileUtils.ONE_KB;
+    private static final int INITIAL_CHUNK_SIZE =
+            10 * (int) FileUtils.ONE_KB;
+    private static final ThreadLocal<char[]> READ_BUFFERS =
+            new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[READ_BUFFER_SIZE];
+        }
+    };
+
+    private final Reader input;
+    private final Writer output;
+    private final int overlap;
+    private final BufferMemoryBudget.Quota quota;
+    private final StringBuilder chunk = new StringBuilder(INITIAL_CHUNK_SIZE);
+    private boolean pending;
+    private boolean partial;
+    private boolean eof;
+    private int maxChunkSize = -1;
+
+    /**
+     * Creates a chunked text reader with the default overlap.
+     * @param input text to read
+     * @param output where to write each chunk once processed
+     *        (<code>null</code> to simply discard them)
+     */
+    public ChunkedTextReader(Reader input, Writer output) {
+        this(input, output, DEFAULT_OVERLAP);
+    }
+    /**
+     * Creates a chunked text reader.
+     * @param input text to read
+     * @param output where to write each chunk once processed
+     *        (<code>null</code> to simply discard them)
+     * @param overlap maximum number of characters from the end of a
+     *        partial chunk to carry over to the next chunk
+     */
+    public ChunkedTextReader(Reader input, Writer output, int overlap) {
+        super();
+        this.input = input;
+        this.output = output;
+        this.overlap = overlap;
+        this.quota = BufferMemoryBudget.getCurrent().newQuota();
+    }
+
+    /**
+     * Gets the maximum chunk size.
+     * @return maximum number of characters per chunk, or -1 if only 
+     *         limited by the memory budget
+     */
+    public int getMaxChunkSize() {
+        return maxChunkSize;
+    }
+    /**
+     * Sets the maximum chunk size.  When set, partial chunks overlap by
+     * exactly the overlap size instead of being cut at a line break, 
+     * dot, or space.
+     * @param maxChunkSize maximum number of characters per chunk, or -1 
+     *        to only be limited by the memory budget (default)
+     */
+    public void setMaxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * Flushes the current chunk (if any) and reads the next one.
+     * @return <code>true</code> if a chunk was read
+     * @throws IOException problem reading or writing text
+     */
+    public boolean readNext() throws IOException {
+        if (pending) {
+            flush();
+        }
+        if (eof) {
+            return false;
+        }
+        char[] readBuffer = READ_BUFFERS.get();
+        while (true) {
+            if (maxChunkSize > 0 && chunk.length() >= maxChunkSize) {
+                partial = true;
+                pending = true;
+                return true;
+            }
+            int room = chunk.capacity() - chunk.length();
+            if (maxChunkSize > 0) {
+                room = Math.min(room, maxChunkSize - chunk.length());
+            }
+            if (room == 0) {
+                if (!quota.ensureGrowable(chunk)) {
+                    partial = true;
+                    pending = true;
+                    return true;
+                }
+                room = readBuffer.length;
+            }
+            int read = input.read(
+                    readBuffer, 0, Math.min(readBuffer.length, room));
+            if (read == -1) {
+                eof = true;
+                partial = false;
+                pending = chunk.length() > 0;
+                return pending;
+            }
+            chunk.append(readBuffer, 0, read);
+        }
+    }
+
+    /**
+     * Gets the current chunk.  It can be modified.
+     * @return current chunk
+     */
+    public StringBuilder getChunk() {
+        return chunk;
+    }
+
+    /**
+     * Whether the current chunk is only part of the remaining text
+     * (i.e., the text did not fit in the memory budget).
+     * @return <code>true</code> if partial
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Flushes the current chunk, if not already done, and gives back
+     * the memory held by this reader to the budget.  The input and output
+     * are not closed.
+     * @throws IOException problem writing text
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (pending) {
+                flush();
+            }
+        } finally {
+            quota.release();
+        }
+    }
+
+    private void flush() throws IOException {
+        int keep = 0;
+        if (partial) {
+            // never keep so much that the next chunk cannot progress
+            keep = Math.min(overlap, chunk.length() / 2);
+        }
+        if (maxChunkSize > 0 && keep > 0) {
+            int cutIndex = chunk.length() - keep;
+            if (output != null) {
+                BufferUtil.flushBuffer(new StringBuilder(
+                        chunk.subSequence(0, cutIndex)), output, 0);
+            }
+            chunk.delete(0, cutIndex);
+        } else {
+            BufferUtil.flushBuffer(chunk, output, keep);
+        }
+        pending = false;
+    }
+}
@@ -0,0 +1,517 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies many replacements in a single pass over text.  Replacements
+ * are compiled once: literal search values (without regular expression
+ * special characters) go in an Aho-Corasick automaton while other ones
+ * are combined in a single regular expression alternation.
+ * <p />
+ * Text is scanned from left to right.  The match starting first wins,
+ * and when more than one replacement matches at the same position, the
+ * first one added wins (like a regular expression alternation).
+ * Replaced text is never matched again.  This gives the same result as
+ * applying each replacement one after the other, as long as replacements
+ * do not overlap or match the result of previous ones.
+ * <p />
+ * Replacement values support the same group references (e.g.
+ * <code>$1</code>) and escaping as {@link Matcher#replaceAll(String)}.
+ * Like {@link Pattern#CASE_INSENSITIVE}, case-insensitive matching only
+ * considers US-ASCII characters.  Named groups must be unique across
+ * all search values.
+ * <p />
+ * This class is thread-safe.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public class SinglePassReplacer {
+
+    private static final String REGEX_CHARS = "\\[](){}.*+?^$|";
+
+    private final LiteralMatcher literals;
+    private final Pattern regex;
+    // index in regex of the group wrapping each rule, by rule index
+    private final int[] regexGroups;
+    private final Replacement[] replacements;
+
+    /**
+     * Creates a single-pass replacer.
+     * @param replacements replacement values keyed by regular expression
+     *        to replace, in order of precedence
+     * @param caseSensitive whether matching is case sensitive
+     * @throws java.util.regex.PatternSyntaxException invalid regular
+     *         expression
+     * @throws IllegalArgumentException invalid replacement value
+     */
+    public SinglePassReplacer(
+            Map<String, String> replacements, boolean caseSensitive) {
+        super();
+        int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE;
+        this.replacements = new Replacement[replacements.size()];
+        this.regexGroups = new int[replacements.size()];
+        LiteralMatcher literalMatcher = new LiteralMatcher(caseSensitive);
+        StringBuilder alternation = new StringBuilder();
+        int groupCount = 0;
+        int rule = 0;
+        for (Entry<String, String> en : replacements.entrySet()) {
+            String from = en.getKey();
+            int ruleGroupCount = 0;
+            if (isLiteral(from)) {
+                literalMatcher.add(from, rule);
+                regexGroups[rule] = -1;
+            } else {
+                ruleGroupCount = Pattern.compile(
+                        from, flags).matcher("").groupCount();
+                if (alternation.length() > 0) {
+                    alternation.append('|');
+                }
+                int base = groupCount + 1;
+                alternation.append('(').append(
+                        shiftBackReferences(from, base)).append(')');
+                regexGroups[rule] = base;
+                groupCount = base + ruleGroupCount;
+            }
+            this.replacements[rule] = new Replacement(
+                    en.getValue(), ruleGroupCount, regexGroups[rule] != -1);
+            rule++;
+        }
+        if (literalMatcher.isEmpty()) {
+            this.literals = null;
+        } else {
+            literalMatcher.build();
+            this.literals = literalMatcher;
+        }
+        if (alternation.length() == 0) {
+            this.regex = null;
+        } else {
+            this.regex = Pattern.compile(alternation.toString(), flags);
+        }
+    }
+
+    /**
+     * Replaces all matches in the given text, in place.
+     * @param text the text to modify
+     * @return <code>true</code> if at least one replacement was made
+     */
+    public boolean replace(StringBuilder text) {
+        int length = text.length();
+        Matcher matcher = null;
+        if (regex != null) {
+            matcher = regex.matcher(text);
+        }
+        StringBuilder result = null;
+        int copied = 0;
+        int from = 0;
+        Match literalMatch = null;
+        Match regexMatch = null;
+        while (from <= length) {
+            // previous matches are kept as long as they are still ahead
+            if (literals != null && (literalMatch == null
+                    || literalMatch != Match.NONE
+                            && literalMatch.start < from)) {
+                literalMatch = literals.find(text, from);
+            }
+            if (matcher != null && (regexMatch == null
+                    || regexMatch != Match.NONE
+                            && regexMatch.start < from)) {
+                regexMatch = findRegex(matcher, from);
+            }
+            Match match = first(literalMatch, regexMatch);
+            if (match == null) {
+                break;
+            }
+            if (result == null) {
+                result = new StringBuilder(length + length / 8);
+            }
+            result.append(text, copied, match.start);
+            Replacement replacement = replacements[match.rule];
+            if (match.group == -1) {
+                replacement.appendTo(result, text.subSequence(
+                        match.start, match.end));
+            } else {
+                replacement.appendTo(result, matcher, match.group);
+            }
+            copied = match.end;
+            // like Matcher#find(), never match empty text twice in a row
+            if (match.end == match.start) {
+                from = match.end + 1;
+            } else {
+                from = match.end;
+            }
+        }
+        if (result == null) {
+            return false;
+        }
+        result.append(text, copied, length);
+        text.setLength(0);
+        text.append(result);
+        return true;
+    }
+
+    private Match findRegex(Matcher matcher, int from) {
+        if (!matcher.find(from)) {
+            return Match.NONE;
+        }
+        for (int rule = 0; rule < regexGroups.length; rule++) {
+            int group = regexGroups[rule];
+            if (group != -1 && matcher.start(group) != -1) {
+                return new Match(
+                        matcher.start(), matcher.end(), rule, group);
+            }
+        }
+        throw new IllegalStateException("No rule matched.");
+    }
+
+    private Match first(Match literalMatch, Match regexMatch) {
+        Match m1 = literalMatch == Match.NONE ? null : literalMatch;
+        Match m2 = regexMatch == Match.NONE ? null : regexMatch;
+        if (m1 == null) {
+            return m2;
+        }
+        if (m2 == null || m1.start < m2.start
+                || m1.start == m2.start && m1.rule < m2.rule) {
+            return m1;
+        }
+        return m2;
+    }
+
+    private static boolean isLiteral(String from) {
+        if (from.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < from.length(); i++) {
+            if (REGEX_CHARS.indexOf(from.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Once combined with other regular expressions, the groups of a
+    // rule start at the given base index. Numbered back references are
+    // renumbered accordingly.
+    private static String shiftBackReferences(String regex, int base) {
+        StringBuilder b = new StringBuilder(regex.length() + 16);
+        int groupCount = 0;
+        boolean inClass = false;
+        boolean inQuote = false;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (inQuote) {
+                if (regex.startsWith("\\E", i)) {
+                    inQuote = false;
+                    b.append("\\E");
+                    i += 2;
+                } else {
+                    b.append(c);
+                    i++;
+                }
+                continue;
+            }
+            if (c == '\\' && i + 1 < regex.length()) {
+                char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    inQuote = true;
+                } else if (!inClass && next >= '1' && next <= '9') {
+                    // same greedy parsing as java.util.regex.Pattern
+                    int ref = next - '0';
+                    int j = i + 2;
+                    while (j < regex.length()
+                            && Character.isDigit(regex.charAt(j))) {
+                        int newRef = ref * 10 + regex.charAt(j) - '0';
+                        if (groupCount < newRef) {
+                            break;
+                        }
+                        ref = newRef;
+                        j++;
+                    }
+                    // wrapped so following digits are not taken as part
+                    // of the new number
+                    b.append("(?:\\").append(base + ref).append(')');
+                    i = j;
+                    continue;
+                }
+                b.append(c).append(next);
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '(' && !inClass && isCapturingGroup(regex, i)) {
+                groupCount++;
+            }
+            b.append(c);
+            i++;
+        }
+        return b.toString();
+    }
+    private static boolean isCapturingGroup(String regex, int index) {
+        if (!regex.startsWith("(?", index)) {
+            return true;
+        }
+        // named group, but not a look-behind
+        return regex.startsWith("(?<", index)
+                && !regex.startsWith("(?<=", index)
+                && !regex.startsWith("(?<!", index);
+    }
+
+    private static final class Match {
+        private static final Match NONE = new Match(-1, -1, -1, -1);
+        private final int start;
+        private final int end;
+        private final int rule;
+        // regex group wrapping the rule, -1 for literals
+        private final int group;
+        public Match(int start, int end, int rule, int group) {
+            super();
+            this.start = start;
+            this.end = end;
+            this.rule = rule;
+            this.group = group;
+        }
+    }
+
+    // Replacement value parsed once into literal text (String), group
+    // numbers (Integer) and group names (GroupName), following
+    // Matcher#appendReplacement(StringBuffer, String) syntax.
+    private static final class Replacement {
+        private final List<Object> parts = new ArrayList<>();
+        public Replacement(String value, int groupCount, boolean regex) {
+            super();
+            StringBuilder text = new StringBuilder();
+            int i = 0;
+            while (i < value.length()) {
+                char c = value.charAt(i);
+                if (c == '\\') {
+                    i++;
+                    if (i == value.length()) {
+                        throw new IllegalArgumentException(
+                                "Character to be escaped is missing: "
+                                        + value);
+                    }
+                    text.append(value.charAt(i));
+                    i++;
+                } else if (c == '$') {
+                    i++;
+                    if (i == value.length()) {
+                        throw new IllegalArgumentException(
+                                "Illegal group reference: " + value);
+                    }
+                    addText(text);
+                    if (value.charAt(i) == '{') {
+                        int end = value.indexOf('}', i);
+                        if (end == -1) {
+                            throw new IllegalArgumentException(
+                                    "Named group is missing trailing '}': "
+                                            + value);
+                        }
+                        if (!regex) {
+                            throw new IllegalArgumentException(
+                                    "No named group in literal: " + value);
+                        }
+                        parts.add(new GroupName(value.substring(i + 1, end)));
+                        i = end + 1;
+                        continue;
+                    }
+                    int ref = value.charAt(i) - '0';
+                    if (ref < 0 || ref > 9) {
+                        throw new IllegalArgumentException(
+                                "Illegal group reference: " + value);
+                    }
+                    i++;
+                    while (i < value.length()) {
+                        int digit = value.charAt(i) - '0';
+                        if (digit < 0 || digit > 9
+                                || ref * 10 + digit > groupCount) {
+                            break;
+                        }
+                        ref = ref * 10 + digit;
+                        i++;
+                    }
+                    if (ref > groupCount) {
+                        throw new IllegalArgumentException(
+                                "No group " + ref + ": " + value);
+                    }
+                    parts.add(ref);
+                } else {
+                    text.append(c);
+                    i++;
+                }
+            }
+            addText(text);
+        }
+        private void addText(StringBuilder text) {
+            if (text.length() > 0) {
+                parts.add(text.toString());
+                text.setLength(0);
+            }
+        }
+        // literal match (group zero only)
+        public void appendTo(StringBuilder b, CharSequence match) {
+            for (Object part : parts) {
+                if (part instanceof Integer) {
+                    b.append(match);
+                } else {
+                    b.append((String) part);
+                }
+            }
+        }
+        public void appendTo(StringBuilder b, Matcher matcher, int base) {
+            for (Object part : parts) {
+                String value = null;
+                if (part instanceof Integer) {
+                    value = matcher.group(base + (Integer) part);
+                } else if (part instanceof GroupName) {
+                    value = matcher.group(((GroupName) part).name);
+                } else {
+                    value = (String) part;
+                }
+                if (value != null) {
+                    b.append(value);
+                }
+            }
+        }
+    }
+    private static final class GroupName {
+        private final String name;
+        public GroupName(String name) {
+            super();
+            this.name = name;
+        }
+    }
+
+    // Aho-Corasick automaton finding the leftmost literal match.
+    private static final class LiteralMatcher {
+        private final boolean caseSensitive;
+        private final Node root = new Node(0);
+        private int maxLength;
+        public LiteralMatcher(boolean caseSensitive) {
+            super();
+            this.caseSensitive = caseSensitive;
+        }
+        public boolean isEmpty() {
+            return maxLength == 0;
+        }
+        public void add(String literal, int rule) {
+            Node node = root;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = fold(literal.charAt(i));
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node(node.depth + 1);
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            // the first rule added wins over duplicates
+            if (node.rule == -1) {
+                node.rule = rule;
+            }
+            maxLength = Math.max(maxLength, literal.length());
+        }
+        // Sets failure and output links, breadth first
+        public void build() {
+            Queue<Node> queue = new ArrayDeque<>();
+            for (Node child : root.children.values()) {
+                child.failure = root;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+                for (Entry<Character, Node> en : node.children.entrySet()) {
+                    char c = en.getKey();
+                    Node child = en.getValue();
+                    Node failure = node.failure;
+                    while (failure != root
+                            && !failure.children.containsKey(c)) {
+                        failure = failure.failure;
+                    }
+                    Node target = failure.children.get(c);
+                    if (target == null || target == child) {
+                        target = root;
+                    }
+                    child.failure = target;
+                    if (target.rule != -1) {
+                        child.output = target;
+                    } else {
+                        child.output = target.output;
+                    }
+                    queue.add(child);
+                }
+            }
+        }
+        public Match find(CharSequence text, int from) {
+            Node node = root;
+            Match best = Match.NONE;
+            for (int i = from; i < text.length(); i++) {
+                char c = fold(text.charAt(i));
+                Node next = node.children.get(c);
+                while (next == null && node != root) {
+                    node = node.failure;
+                    next = node.children.get(c);
+                }
+                node = next == null ? root : next;
+                // the longest literal ending here starts first
+                Node out = node.rule == -1 ? node.output : node;
+                if (out != null) {
+                    int start = i - out.depth + 1;
+                    // on a same start, the first rule added wins
+                    if (best == Match.NONE || start < best.start
+                            || (start == best.start && out.rule < best.rule)) {
+                        best = new Match(start, i + 1, out.rule, -1);
+                    }
+                }
+                // no literal can start sooner (or end later when starting
+                // at the same position) past this point
+                if (best != Match.NONE && i - maxLength + 1 >= best.start) {
+                    break;
+                }
+            }
+            return best;
+        }
+        private char fold(char c) {
+            if (!caseSensitive && c >= 'A' && c <= 'Z') {
+                return (char) (c + ('a' - 'A'));
+            }
+            return c;
+        }
+    }
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final int depth;
+        private int rule = -1;
+        private Node failure;
+        // closest node on the failure chain matching a literal
+        private Node output;
+        public Node(int depth) {
+            super();
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams text looking for sections delimited by start and end regular
+ * expressions.  Text is read in a buffer that subclasses scan as it
+ * fills up.  Text before the position subclasses still need is removed
+ * from the buffer before reading more, so only what is not yet scanned
+ * (or still needed) is held in memory, regardless of the content size.
+ * <p />
+ * A match ending within {@link #LOOKAHEAD} characters from the end of
+ * what was read so far could change with more content.  Such a match is
+ * only reliable once the end of content is reached (see
+ * {@link #isResolved(Matcher)}).  Start and end texts are therefore
+ * expected to be shorter than {@link #LOOKAHEAD} characters.
+ * <p />
+ * This class is not thread-safe.
+ * @author Pascal Essiembre
+ * @since 2.1.0
+ */
+public abstract class StartEndScanner {
+
+    /** Number of characters from the end of what was read so far
+     *  within which matches are not reliable. */
+    public static final int LOOKAHEAD =
+            BufferUtil.MAX_CONTENT_FROM_END_TO_CUT;
+
+    private static final int READ_SIZE = 16 * 1024;
+
+    private final Reader input;
+    private final char[] readBuffer = new char[READ_SIZE];
+    private final StringBuilder buffer = new StringBuilder();
+    private boolean eof;
+    private int safeEnd;
+
+    /**
+     * Creates a scanner reading the given text.
+     * @param input text to scan
+     */
+    public StartEndScanner(Reader input) {
+        super();
+        this.input = input;
+    }
+
+    /**
+     * Compiles a start or end regular expression, matching line breaks
+     * with dots.
+     * @param regex regular expression
+     * @param caseSensitive <code>true</code> to consider character case
+     * @return compiled pattern
+     */
+    public static Pattern compile(String regex, boolean caseSensitive) {
+        int flags = Pattern.DOTALL | Pattern.UNICODE_CASE;
+        if (!caseSensitive) {
+            flags = flags | Pattern.CASE_INSENSITIVE;
+        }
+        return Pattern.compile(regex, flags);
+    }
+
+    /**
+     * Reads and scans the text until the end of content, or until
+     * {@link #process()} returns <code>false</code>.
+     * @throws IOException problem reading or processing the text
+     */
+    public void scan() throws IOException {
+        while (true) {
+            fill();
+            safeEnd = eof
+                    ? buffer.length()
+                    : Math.max(0, buffer.length() - LOOKAHEAD);
+            if (!process() || eof) {
+                return;
+            }
+            compact();
+        }
+    }
+
+    /**
+     * Scans the text read so far, up to the safe end when not at the
+     * end of content.
+     * @return <code>true</code> if more text should be read
+     * @throws IOException problem processing the text
+     */
+    protected abstract boolean process() throws IOException;
+    /**
+     * Gets the buffer position scanning resumes from, from which enough
+     * text is read before scanning again.
+     * @return scan position
+     */
+    protected abstract int getScanPosition();
+    /**
+     * Gets the buffer position before which text is no longer needed.
+     * @return keep position
+     */
+    protected abstract int getKeepPosition();
+    /**
+     * Invoked when text was removed from the beginning of the buffer,
+     * to move back buffer positions by the same number of characters.
+     * @param count number of characters removed
+     */
+    protected abstract void shift(int count);
+
+    /**
+     * Gets the text read and not yet removed.
+     * @return text buffer
+     */
+    protected final StringBuilder getBuffer() {
+        return buffer;
+    }
+    /**
+     * Whether all the text was read.
+     * @return <code>true</code> if the end of content is reached
+     */
+    protected final boolean isEof() {
+        return eof;
+    }
+    /**
+     * Gets the buffer position up to which matches are reliable.
+     * @return the buffer length when at the end of content, else the
+     *         buffer length minus {@link #LOOKAHEAD}
+     */
+    protected final int getSafeEnd() {
+        return safeEnd;
+    }
+    /**
+     * Whether a match is reliable, i.e. can no longer change with more
+     * content.
+     * @param matcher matcher having found a match
+     * @return <code>true</code> if resolved
+     */
+    protected final boolean isResolved(Matcher matcher) {
+        return eof || matcher.end() <= safeEnd;
+    }
+
+    private void fill() throws IOException {
+        // Always read some, in case a match was too long to be resolved.
+        int scanPos = getScanPosition();
+        boolean read = false;
+        while (!eof && (!read
+                || buffer.length() - scanPos < READ_SIZE + LOOKAHEAD)) {
+            read = true;
+            int count = input.read(readBuffer);
+            if (count == -1) {
+                eof = true;
+            } else {
+                buffer.append(readBuffer, 0, count);
+            }
+        }
+    }
+
+    private void compact() {
+        int keepFrom = getKeepPosition();
+        if (keepFrom <= 0) {
+            return;
+        }
+        buffer.delete(0, keepFrom);
+        shift(keepFrom);
+    }
+}
@@ -14,13 +14,29 @@
  */
 package com.norconex.importer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -31,12 +47,24 @@ import org.junit.Test;
 
 import com.norconex.commons.lang.file.ContentType;
 import com.norconex.commons.lang.map.Properties;
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
 import com.norconex.importer.doc.ImporterDocument;
 import com.norconex.importer.doc.ImporterMetadata;
 import com.norconex.importer.handler.ImporterHandlerException;
 import com.norconex.importer.handler.filter.OnMatch;
 import com.norconex.importer.handler.filter.impl.RegexMetadataFilter;
+import com.norconex.importer.handler.splitter.impl.CsvSplitter;
+import com.norconex.importer.handler.tagger.impl.ConstantTagger;
+import com.norconex.importer.handler.transformer.AbstractCharStreamTransformer;
 import com.norconex.importer.handler.transformer.IDocumentTransformer;
+import com.norconex.importer.handler.transformer.impl.ReduceConsecutivesTransformer;
+import com.norconex.importer.handler.transformer.impl.ReplaceTransformer;
+import com.norconex.importer.metrics.ComponentMetrics;
+import com.norconex.importer.metrics.ImporterMetrics;
+import com.norconex.importer.parser.DocumentParserException;
+import com.norconex.importer.parser.GenericDocumentParserFactory;
+import com.norconex.importer.parser.IDocumentParser;
+import com.norconex.importer.parser.IDocumentParserFactory;
 import com.norconex.importer.response.ImporterResponse;
 
 public class ImporterTest {
@@ -132,6 +160,410 @@ public class ImporterTest {
                         "RegexMetadataFilter"));
     }
     
+    @Test
+    public void testImportDocuments() throws IOException, ImporterException {
+        List<ImportRequest> requests = new ArrayList<>();
+        requests.add(new ImportRequest(
+                TestUtil.getAliceDocxFile(), new Properties()));
+        requests.add(new ImportRequest(
+                TestUtil.getAlicePdfFile(), new Properties()));
+        requests.add(new ImportRequest(
+                TestUtil.getAliceHtmlFile(), new Properties()));
+        requests.add(new ImportRequest(
+                new File("doesNotExist.txt"), new Properties()));
+        
+        Iterator<ImporterResponse> it = importer.importDocuments(requests);
+        int success = 0;
+        int errors = 0;
+        while (it.hasNext()) {
+            ImporterResponse response = it.next();
+            if (response.isSuccess()) {
+                success++;
+            } else if (response.getImporterStatus().isError()) {
+                errors++;
+            }
+        }
+        importer.shutdown();
+        Assert.assertEquals("Wrong number of imported documents.", 3, success);
+        Assert.assertEquals("Wrong number of failed documents.", 1, errors);
+    }
+    
+    @Test
+    public void testImportDocumentAsync() 
+            throws InterruptedException, ExecutionException {
+        Future<ImporterResponse> pdf = importer.importDocumentAsync(
+                TestUtil.getAlicePdfFile(), new Properties());
+        Future<ImporterResponse> html = importer.importDocumentAsync(
+                TestUtil.getAliceHtmlFile(), new Properties());
+        Assert.assertTrue("PDF was not imported.", pdf.get().isSuccess());
+        Assert.assertTrue("HTML was not imported.", html.get().isSuccess());
+        importer.shutdown();
+    }
+    
+    @Test
+    public void testParallelNestedImportOrder() {
+        CsvSplitter splitter = new CsvSplitter();
+        splitter.setUseFirstRowAsFields(true);
+        splitter.setReferenceColumn("clientId");
+        ImporterConfig config = new ImporterConfig();
+        config.setPreParseHandlers(splitter);
+        config.setMaxNestedImportThreads(4);
+        Importer parallelImporter = new Importer(config);
+
+        InputStream is = getClass().getResourceAsStream(
+                "handler/splitter/impl/CsvSplitterTest.csv");
+        ImporterResponse response = parallelImporter.importDocument(
+                is, ContentType.valueOf("text/csv"), null, 
+                new ImporterMetadata(), "test.csv");
+        IOUtils.closeQuietly(is);
+        parallelImporter.shutdown();
+        
+        ImporterResponse[] nested = response.getNestedResponses();
+        Assert.assertEquals("Wrong number of rows.", 4, nested.length);
+        String[] expectedIds = new String[] { "123", "321", "654", "456" };
+        for (int i = 0; i < expectedIds.length; i++) {
+            Assert.assertEquals("Nested responses out of order.", 
+                    "test.csv!" + expectedIds[i], nested[i].getReference());
+        }
+    }
+    
+    @Test
+    public void testRestrictionsReevaluatedOnChange() 
+            throws ImporterException {
+        ConstantTagger before = new ConstantTagger();
+        before.addRestriction("flag", "yes", false);
+        before.addConstant("before", "tagged");
+        ConstantTagger flagger = new ConstantTagger();
+        flagger.addConstant("flag", "yes");
+        ConstantTagger after = new ConstantTagger();
+        after.addRestriction("flag", "yes", false);
+        after.addConstant("after", "tagged");
+        ImporterConfig config = new ImporterConfig();
+        config.setPreParseHandlers(before, flagger, after);
+        
+        ImporterMetadata meta = new Importer(config).importDocument(
+                TestUtil.getAliceHtmlFile(), new Properties())
+                        .getDocument().getMetadata();
+        Assert.assertNull("Restriction should not have matched.", 
+                meta.getString("before"));
+        Assert.assertEquals("Restriction should have matched.", 
+                "tagged", meta.getString("after"));
+    }
+    
+    @Test
+    public void testMetrics() throws ImporterException {
+        importer.importDocument(TestUtil.getAliceHtmlFile(), new Properties());
+        ImporterMetrics metrics = importer.getMetrics();
+        Assert.assertEquals("Wrong document count.", 
+                1, metrics.getDocumentCount());
+        Assert.assertTrue("Document bytes not recorded.", 
+                metrics.getBytesImported() > 0);
+        Assert.assertEquals("Wrong parse count.", 1, metrics.getPhaseMetrics(
+                ImporterMetrics.PHASE_PARSE).getCount());
+        Assert.assertFalse("Parser not recorded.", 
+                metrics.getAllParserMetrics().isEmpty());
+        
+        Assert.assertEquals("Wrong number of handlers.", 
+                1, metrics.getAllHandlerMetrics().size());
+        ComponentMetrics transformer = 
+                metrics.getAllHandlerMetrics().values().iterator().next();
+        Assert.assertEquals("Wrong handler count.", 1, transformer.getCount());
+        Assert.assertTrue("Handler bytes in not recorded.", 
+                transformer.getBytesIn() > 0);
+        Assert.assertTrue("Handler bytes out not recorded.", 
+                transformer.getBytesOut() > 0);
+    }
+    
+    @Test
+    public void testNestedDocumentMetrics() throws ImporterException {
+        CsvSplitter splitter = new CsvSplitter();
+        splitter.setUseFirstRowAsFields(true);
+        ImporterConfig config = new ImporterConfig();
+        config.setPreParseHandlers(splitter);
+        Importer csvImporter = new Importer(config);
+        InputStream is = getClass().getResourceAsStream(
+                "handler/splitter/impl/CsvSplitterTest.csv");
+        ImporterResponse response = csvImporter.importDocument(
+                is, ContentType.valueOf("text/csv"), null, 
+                new ImporterMetadata(), "test.csv");
+        IOUtils.closeQuietly(is);
+        ImporterMetrics metrics = csvImporter.getMetrics();
+        Assert.assertEquals("Nested documents counted as documents.", 
+                1, metrics.getDocumentCount());
+        Assert.assertEquals("Wrong nested document count.", 
+                response.getNestedResponses().length, 
+                metrics.getPhaseMetrics(
+                        ImporterMetrics.PHASE_NESTED_DOCUMENT).getCount());
+    }
+    
+    @Test
+    public void testParseCache() throws IOException, ImporterException {
+        File cacheDir = new File(
+                FileUtils.getTempDirectory(), "importer-parse-cache-test");
+        FileUtils.deleteQuietly(cacheDir);
+        try {
+            ImporterConfig config = new ImporterConfig();
+            config.setParseCacheDir(cacheDir);
+            Importer cachingImporter = new Importer(config);
+            
+            ImporterDocument doc1 = cachingImporter.importDocument(
+                    TestUtil.getAliceHtmlFile(), new Properties())
+                            .getDocument();
+            ImporterDocument doc2 = cachingImporter.importDocument(
+                    TestUtil.getAliceHtmlFile(), new Properties())
+                            .getDocument();
+            Assert.assertEquals("Wrong number of cache entries.", 
+                    1, cacheDir.list().length);
+            Assert.assertEquals("Cached content differs.", 
+                    IOUtils.toString(doc1.getContent()), 
+                    IOUtils.toString(doc2.getContent()));
+            Assert.assertEquals("Cached metadata differs.", 
+                    doc1.getMetadata(), doc2.getMetadata());
+            
+            // Same parser configuration in a new importer (e.g. restart)
+            new Importer(config).importDocument(
+                    TestUtil.getAliceHtmlFile(), new Properties());
+            Assert.assertEquals("Cache entry not reused.", 
+                    1, cacheDir.list().length);
+            
+            // Parsers without a stable identity are not cached
+            config.setParserFactory(new IDocumentParserFactory() {
+                @Override
+                public IDocumentParser getParser(
+                        String documentReference, ContentType contentType) {
+                    return new IDocumentParser() {
+                        @Override
+                        public List<ImporterDocument> parseDocument(
+                                ImporterDocument doc, Writer output)
+                                throws DocumentParserException {
+                            try {
+                                output.write("parsed");
+                            } catch (IOException e) {
+                                throw new DocumentParserException(e);
+                            }
+                            return null;
+                        }
+                    };
+                }
+            });
+            new Importer(config).importDocument(
+                    TestUtil.getAliceHtmlFile(), new Properties());
+            Assert.assertEquals("Parser without stable identity cached.", 
+                    1, cacheDir.list().length);
+        } finally {
+            FileUtils.deleteQuietly(cacheDir);
+        }
+    }
+    
+    @Test
+    public void testFusedCharStreamTransformers() 
+            throws IOException, ImporterException {
+        String sequential = importWithTransformers(false);
+        String fused = importWithTransformers(true);
+        Assert.assertTrue("Transformers not applied.", 
+                fused.contains("Carol") && !fused.contains("Alice"));
+        Assert.assertEquals("Fused output differs.", sequential, fused);
+    }
+    private String importWithTransformers(boolean fuse) 
+            throws IOException, ImporterException {
+        ReplaceTransformer toBob = new ReplaceTransformer();
+        toBob.addReplacement("Alice", "Bob");
+        ReduceConsecutivesTransformer reduce = 
+                new ReduceConsecutivesTransformer();
+        reduce.setReductions(" ", "\n");
+        ReplaceTransformer toCarol = new ReplaceTransformer();
+        toCarol.addReplacement("Bob", "Carol");
+        ImporterConfig config = new ImporterConfig();
+        config.setFuseCharStreamTransformers(fuse);
+        config.setPostParseHandlers(new IDocumentTransformer[] {
+                toBob, reduce, toCarol });
+        Importer fusingImporter = new Importer(config);
+        try {
+            ImporterDocument doc = fusingImporter.importDocument(
+                    TestUtil.getAliceHtmlFile(), new Properties())
+                            .getDocument();
+            return IOUtils.toString(doc.getContent());
+        } finally {
+            fusingImporter.shutdown();
+        }
+    }
+    
+    @Test
+    public void testFusedTransformersMetadata() throws ImporterException {
+        ConstantTagger tagger = new ConstantTagger();
+        tagger.addConstant("obsolete", "yes");
+        ImporterConfig config = new ImporterConfig();
+        config.setFuseCharStreamTransformers(true);
+        config.setPreParseHandlers(tagger);
+        config.setPostParseHandlers(new IDocumentTransformer[] {
+                new MetadataTransformer("first", "1"),
+                new MetadataTransformer("second", "2") });
+        Importer fusingImporter = new Importer(config);
+        try {
+            ImporterMetadata meta = fusingImporter.importDocument(
+                    TestUtil.getAliceHtmlFile(), new Properties())
+                            .getDocument().getMetadata();
+            Assert.assertEquals("1", meta.getString("first"));
+            Assert.assertEquals("2", meta.getString("second"));
+            Assert.assertFalse("Field not removed.", 
+                    meta.containsKey("obsolete"));
+        } finally {
+            fusingImporter.shutdown();
+        }
+    }
+    // Copies its input, sets a field, and removes the "obsolete" field.
+    private static class MetadataTransformer 
+            extends AbstractCharStreamTransformer {
+        private final String field;
+        private final String value;
+        public MetadataTransformer(String field, String value) {
+            super();
+            this.field = field;
+            this.value = value;
+        }
+        @Override
+        protected void transformTextDocument(String reference, 
+                Reader input, Writer output, ImporterMetadata metadata,
+                boolean parsed) throws IOException {
+            IOUtils.copy(input, output);
+            metadata.setString(field, value);
+            metadata.remove("obsolete");
+        }
+        @Override
+        protected void loadHandlerFromXML(XMLConfiguration xml) {
+            // not configurable
+        }
+        @Override
+        protected void saveHandlerToXML(EnhancedXMLStreamWriter writer) {
+            // not configurable
+        }
+    }
+
+    @Test
+    public void testFusedTransformersFailure() 
+            throws ImporterHandlerException {
+        StageTransformer first = new StageTransformer(false);
+        List<AbstractCharStreamTransformer> transformers = new ArrayList<>();
+        transformers.add(first);
+        transformers.add(new StageTransformer(true));
+        List<ComponentMetrics> stageMetrics = new ArrayList<>();
+        stageMetrics.add(new ComponentMetrics("first"));
+        stageMetrics.add(new ComponentMetrics("failing"));
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            new CharStreamPipeline(executor).transform("n/a", 
+                    new StringReader(StringUtils.repeat("x", 100000)), 
+                    new StringWriter(), new ImporterMetadata(), true, 
+                    transformers, stageMetrics);
+            Assert.fail("Transformer exception not thrown.");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue("Stage still running after failure.", 
+                    first.done);
+        } finally {
+            executor.shutdown();
+        }
+    }
+    // Copies its input and lingers a bit, or fails right away.
+    private static class StageTransformer 
+            extends AbstractCharStreamTransformer {
+        private final boolean fail;
+        private volatile boolean done;
+        public StageTransformer(boolean fail) {
+            super();
+            this.fail = fail;
+        }
+        @Override
+        protected void transformTextDocument(String reference, 
+                Reader input, Writer output, ImporterMetadata metadata,
+                boolean parsed) throws IOException {
+            if (fail) {
+                throw new IllegalStateException("Failing on purpose.");
+            }
+            IOUtils.copy(input, output);
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done = true;
+        }
+        @Override
+        protected void loadHandlerFromXML(XMLConfiguration xml) {
+            // not configurable
+        }
+        @Override
+        protected void saveHandlerToXML(EnhancedXMLStreamWriter writer) {
+            // not configurable
+        }
+    }
+    
+    @Test
+    public void testNestedDocumentLimits() throws IOException {
+        ImporterConfig config = new ImporterConfig();
+        Assert.assertEquals("Zip without limits should have been split.",
+                4, importZip(config).getNestedResponses().length);
+
+        config = new ImporterConfig();
+        config.setMaxNestedChildren(2);
+        assertRejected(importZip(config), "nested documents per document");
+
+        config = new ImporterConfig();
+        config.setMaxNestedDepth(0);
+        assertRejected(importZip(config), "depth");
+
+        config = new ImporterConfig();
+        config.setMaxNestedExpandedSize(1000);
+        assertRejected(importZip(config), "expanded size");
+
+        config = new ImporterConfig();
+        config.setMaxNestedCompressionRatio(100);
+        assertRejected(importZip(config), "compression ratio");
+
+        // Split documents are limited as well
+        CsvSplitter splitter = new CsvSplitter();
+        splitter.setUseFirstRowAsFields(true);
+        config = new ImporterConfig();
+        config.setPreParseHandlers(splitter);
+        config.setMaxNestedChildren(2);
+        InputStream is = getClass().getResourceAsStream(
+                "handler/splitter/impl/CsvSplitterTest.csv");
+        ImporterResponse response = new Importer(config).importDocument(
+                is, ContentType.valueOf("text/csv"), null, 
+                new ImporterMetadata(), "test.csv");
+        IOUtils.closeQuietly(is);
+        assertRejected(response, "nested documents per document");
+    }
+    private ImporterResponse importZip(ImporterConfig config) 
+            throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(zip)) {
+            for (int i = 1; i <= 3; i++) {
+                out.putNextEntry(new ZipEntry("file" + i + ".txt"));
+                out.write(("Small text file " + i + ".").getBytes("UTF-8"));
+                out.closeEntry();
+            }
+            // highly compressible
+            out.putNextEntry(new ZipEntry("zeros.txt"));
+            out.write(new byte[2 * 1024 * 1024]);
+            out.closeEntry();
+        }
+        GenericDocumentParserFactory factory = 
+                new GenericDocumentParserFactory();
+        factory.setSplitEmbedded(true);
+        config.setParserFactory(factory);
+        return new Importer(config).importDocument(
+                new ByteArrayInputStream(zip.toByteArray()), 
+                ContentType.valueOf("application/zip"), null, 
+                new ImporterMetadata(), "test.zip");
+    }
+    private void assertRejected(ImporterResponse response, String limit) {
+        Assert.assertTrue("Document should have been rejected.",
+                response.getImporterStatus().isRejected());
+        Assert.assertTrue("Wrong rejection cause: " 
+                + response.getImporterStatus().getDescription(),
+                response.getImporterStatus().getDescription().contains(limit));
+    }
+    
     private void writeToFile(ImporterDocument doc, File file)
             throws IOException {
         FileOutputStream out = new FileOutputStream(file);
@@ -0,0 +1,74 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.doc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.norconex.commons.lang.file.ContentType;
+import com.norconex.importer.TestUtil;
+
+public class ContentTypeDetectorTest {
+
+    private static final ContentType HTML = 
+            ContentType.valueOf("text/html");
+    private static final ContentType TEXT = 
+            ContentType.valueOf("text/plain");
+
+    private final ContentTypeDetector detector = new ContentTypeDetector();
+
+    @Test
+    public void testFileDetection() throws IOException {
+        Assert.assertEquals(ContentType.PDF, 
+                detector.detect(TestUtil.getAlicePdfFile()));
+        Assert.assertEquals(HTML, 
+                detector.detect(TestUtil.getAliceHtmlFile()));
+        Assert.assertEquals(ContentType.valueOf("application/"
+                + "vnd.openxmlformats-officedocument.wordprocessingml."
+                + "document"), detector.detect(TestUtil.getAliceDocxFile()));
+        Assert.assertEquals(ContentType.valueOf("application/zip"), 
+                detector.detect(TestUtil.getAliceZipFile()));
+    }
+
+    @Test
+    public void testStreamDetection() throws IOException {
+        Assert.assertEquals(TEXT, 
+                detector.detect(toStream("Plain text."), "test.txt"));
+        Assert.assertEquals(HTML, detector.detect(toStream(
+                "<html><body>test</body></html>"), "test.html"));
+        // Content not matching its extension goes through Tika
+        Assert.assertEquals(HTML, detector.detect(toStream(
+                "<html><body>test</body></html>"), "test.txt"));
+        Assert.assertEquals(ContentType.PDF, 
+                detector.detect(toStream("%PDF-1.4 test")));
+    }
+
+    @Test
+    public void testStreamNotConsumed() throws IOException {
+        InputStream is = toStream("Plain text.");
+        detector.detect(is, "test.txt");
+        Assert.assertEquals('P', is.read());
+    }
+
+    private InputStream toStream(String content) {
+        return new ByteArrayInputStream(
+                content.getBytes(StandardCharsets.UTF_8));
+    }
+}
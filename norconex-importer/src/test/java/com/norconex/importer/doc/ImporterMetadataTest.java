@@ -0,0 +1,59 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.doc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ImporterMetadataTest {
+
+    @Test
+    public void testSnapshotChildren() {
+        ImporterMetadata parent = new ImporterMetadata();
+        parent.setString("title", "Parent title");
+        parent.addString("keywords", "one", "two");
+        parent.setString("author", "John Doe");
+
+        ImporterMetadata.Snapshot snapshot = parent.snapshot();
+        parent.setString("title", "Changed after snapshot");
+
+        ImporterMetadata child1 = new ImporterMetadata(snapshot);
+        ImporterMetadata child2 = new ImporterMetadata(snapshot);
+        Assert.assertEquals("Parent title", child1.getString("title"));
+        Assert.assertEquals(3, child1.size());
+
+        child1.setString("title", "Child title");
+        child1.addString("keywords", "three");
+        child1.remove("author");
+        child1.setString("row", "1");
+
+        Assert.assertEquals("Child title", child1.getString("title"));
+        Assert.assertArrayEquals(new String[] { "one", "two", "three" },
+                child1.getStrings("keywords").toArray());
+        Assert.assertFalse(child1.containsKey("author"));
+        Assert.assertEquals(3, child1.size());
+
+        // Other children and the parent are not affected
+        Assert.assertEquals("Parent title", child2.getString("title"));
+        Assert.assertArrayEquals(new String[] { "one", "two" },
+                child2.getStrings("keywords").toArray());
+        Assert.assertEquals("John Doe", child2.getString("author"));
+        Assert.assertNull(child2.getString("row"));
+        Assert.assertEquals(
+                "Changed after snapshot", parent.getString("title"));
+        Assert.assertArrayEquals(new String[] { "one", "two" },
+                parent.getStrings("keywords").toArray());
+    }
+}
@@ -17,6 +17,7 @@ package com.norconex.importer.handler.filter.impl;
 import java.io.IOException;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -44,12 +45,44 @@ public class RegexContentFilterTest {
                         IOUtils.toInputStream("another one not to match"),
                         null, false));
     }    
+
+    @Test
+    public void testFindAcrossWindows() 
+            throws IOException, ImporterHandlerException {
+        RegexContentFilter filter = new RegexContentFilter();
+        filter.setRegex("needle");
+        filter.setFind(true);
+        filter.setWindowSize(100);
+        filter.setWindowOverlap(20);
+        filter.setOnMatch(OnMatch.INCLUDE);
+
+        // match straddling the first two windows
+        String content = StringUtils.repeat('x', 97) + "NEEDLE"
+                + StringUtils.repeat('x', 500);
+        Assert.assertTrue("Match across windows not found.", 
+                filter.acceptDocument("n/a", 
+                        IOUtils.toInputStream(content), null, false));
+        
+        filter.setCaseSensitive(true);
+        Assert.assertFalse("Case sensitivity not applied.", 
+                filter.acceptDocument("n/a", 
+                        IOUtils.toInputStream(content), null, false));
+        
+        content = StringUtils.repeat('x', 450) + "needle";
+        Assert.assertTrue("Match in last window not found.", 
+                filter.acceptDocument("n/a", 
+                        IOUtils.toInputStream(content), null, false));
+    }
     
     @Test
     public void testWriteRead() throws IOException {
         RegexContentFilter filter = new RegexContentFilter();
         filter.addRestriction("author", "Pascal.*", false);
         filter.setRegex("blah");
+        filter.setCaseSensitive(true);
+        filter.setFind(true);
+        filter.setWindowSize(2048);
+        filter.setWindowOverlap(128);
         filter.setOnMatch(OnMatch.INCLUDE);
         System.out.println("Writing/Reading this: " + filter);
         ConfigurationUtil.assertWriteRead(filter);
@@ -16,6 +16,7 @@ package com.norconex.importer.handler.splitter.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
@@ -27,6 +28,7 @@ import org.junit.Test;
 
 import com.norconex.commons.lang.config.ConfigurationUtil;
 import com.norconex.commons.lang.io.CachedStreamFactory;
+import com.norconex.importer.doc.IChildDocumentConsumer;
 import com.norconex.importer.doc.ImporterDocument;
 import com.norconex.importer.doc.ImporterMetadata;
 import com.norconex.importer.handler.ImporterHandlerException;
@@ -104,6 +106,103 @@ public class CsvSplitterTest {
                 docs.get(2).getMetadata().getString("clientName"));
     }
     
+    @Test
+    public void testStreamingSplit() 
+            throws ImporterHandlerException, IOException {
+        CsvSplitter splitter = new CsvSplitter();
+        splitter.setUseFirstRowAsFields(true);
+        splitter.setReferenceColumn("clientId");
+        SplittableDocument doc = new SplittableDocument(
+                "n/a", input, new ImporterMetadata());
+        final List<String> refs = new ArrayList<>();
+        splitter.splitDocument(doc, new NullOutputStream(), 
+                new CachedStreamFactory(100 * 1024,  100 * 1024), false, 
+                new IChildDocumentConsumer() {
+            @Override
+            public void consumeChildDocument(ImporterDocument childDoc) {
+                refs.add(childDoc.getMetadata().getEmbeddedReference());
+            }
+        });
+        Assert.assertEquals("Invalid number of docs consumed.", 
+                4, refs.size());
+        Assert.assertEquals("Invalid first doc consumed.", "123", refs.get(0));
+    }
+    
+    @Test
+    public void testManyRowsSharingParentMetadata() 
+            throws ImporterHandlerException, IOException {
+        StringBuilder csv = new StringBuilder("id,name,price\n");
+        for (int i = 1; i <= 5000; i++) {
+            csv.append(i).append(",Product é").append(i)
+                    .append(',').append(i * 10).append('\n');
+        }
+        CsvSplitter splitter = new CsvSplitter();
+        splitter.setUseFirstRowAsFields(true);
+        splitter.setReferenceColumn("id");
+        splitter.setContentColumns("name", "3");
+        ImporterMetadata metadata = new ImporterMetadata();
+        metadata.setString("catalog", "spring");
+        SplittableDocument doc = new SplittableDocument("catalog.csv", 
+                IOUtils.toInputStream(csv, "UTF-8"), metadata);
+        final List<ImporterDocument> docs = new ArrayList<>();
+        splitter.splitDocument(doc, new NullOutputStream(), 
+                new CachedStreamFactory(100 * 1024,  100 * 1024), false, 
+                new IChildDocumentConsumer() {
+            @Override
+            public void consumeChildDocument(ImporterDocument childDoc) {
+                docs.add(childDoc);
+            }
+        });
+        Assert.assertEquals(5000, docs.size());
+        ImporterDocument last = docs.get(4999);
+        Assert.assertEquals("catalog.csv!5000", last.getReference());
+        Assert.assertEquals("spring", last.getMetadata().getString("catalog"));
+        Assert.assertEquals("50000", last.getMetadata().getString("price"));
+        Assert.assertEquals("Product é5000 50000", 
+                IOUtils.toString(last.getContent(), "UTF-8"));
+        Assert.assertEquals("Product é1 10", 
+                IOUtils.toString(docs.get(0).getContent(), "UTF-8"));
+    }
+
+    @Test
+    public void testParallelParsing() 
+            throws ImporterHandlerException, IOException {
+        // Large enough to be split in several byte ranges
+        StringBuilder csv = new StringBuilder("skipped line\r\nid,desc\r\n");
+        for (int i = 1; i <= 100000; i++) {
+            csv.append(i).append(",\"Line one, \"\"quoted\"\"\r\n")
+                    .append("line two \\\" ").append(i).append("\"\r\n");
+        }
+        CsvSplitter splitter = new CsvSplitter();
+        splitter.setLinesToSkip(1);
+        splitter.setUseFirstRowAsFields(true);
+        splitter.setReferenceColumn("id");
+        List<String> expected = splitRows(splitter, csv);
+
+        splitter.setParsingThreads(4);
+        List<String> actual = splitRows(splitter, csv);
+        Assert.assertEquals(100000, actual.size());
+        Assert.assertEquals("n/a!100000|Line one, \"quoted\"\n"
+                + "line two \" 100000", actual.get(99999));
+        Assert.assertEquals(expected, actual);
+    }
+    private List<String> splitRows(CsvSplitter splitter, CharSequence csv) 
+            throws ImporterHandlerException, IOException {
+        SplittableDocument doc = new SplittableDocument("n/a", 
+                IOUtils.toInputStream(csv, "UTF-8"), new ImporterMetadata());
+        final List<String> rows = new ArrayList<>();
+        splitter.splitDocument(doc, new NullOutputStream(), 
+                new CachedStreamFactory(100 * 1024,  100 * 1024), false, 
+                new IChildDocumentConsumer() {
+            @Override
+            public void consumeChildDocument(ImporterDocument childDoc) {
+                rows.add(childDoc.getReference() + "|" 
+                        + childDoc.getMetadata().getString("desc"));
+            }
+        });
+        return rows;
+    }
+
     private List<ImporterDocument> split(CsvSplitter splitter) 
             throws IOException, ImporterHandlerException {
         ImporterMetadata metadata = new ImporterMetadata();
@@ -127,6 +226,7 @@ public class CsvSplitterTest {
         splitter.addRestriction("key", "value", true);
         splitter.setSeparatorCharacter('@');
         splitter.setUseFirstRowAsFields(true);
+        splitter.setParsingThreads(4);
         System.out.println("Writing/Reading this: " + splitter);
         ConfigurationUtil.assertWriteRead(splitter);
     }
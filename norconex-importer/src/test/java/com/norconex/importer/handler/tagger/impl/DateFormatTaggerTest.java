@@ -59,6 +59,56 @@ public class DateFormatTaggerTest {
         
     }
     
+    @Test
+    public void testMultipleFromFormats() throws ImporterHandlerException {
+        ImporterMetadata meta = new ImporterMetadata();
+        meta.addString("datefield", 
+                "2001-10-10T11:32:21", 
+                "1002727941000", 
+                "10/10/2001", 
+                "2001-10-10",
+                "bad date");
+
+        DateFormatTagger tagger = new DateFormatTagger();
+        tagger.setFromField("datefield");
+        tagger.setToField("tofield");
+        tagger.setFromFormats(DateFormatTagger.FORMAT_ISO8601, 
+                DateFormatTagger.FORMAT_EPOCH, "MM/dd/yyyy");
+        tagger.setToFormat("yyyy/MM/dd");
+        tagger.tagDocument("n/a", null, meta, true);
+        Assert.assertArrayEquals(new String[] {
+                "2001/10/10", "2001/10/10", "2001/10/10", "2001/10/10" },
+                meta.getStrings("tofield").toArray());
+
+        meta.addString("isofield", 
+                "2001-10-10T11:32:21Z", "2001-10-10T11:32:21.500-05:00");
+        tagger.setFromField("isofield");
+        tagger.setToField("isotofield");
+        tagger.setFromFormats(DateFormatTagger.FORMAT_ISO8601);
+        tagger.setToFormat(null);
+        tagger.tagDocument("n/a", null, meta, true);
+        Assert.assertArrayEquals(new String[] {
+                "1002713541000", "1002731541500" },
+                meta.getStrings("isotofield").toArray());
+    }
+    
+    @Test
+    public void testOverlappingFromFormats() 
+            throws ImporterHandlerException {
+        ImporterMetadata meta = new ImporterMetadata();
+        meta.addString("datefield", "2001-10-10 11:32", "2001-10-10");
+
+        DateFormatTagger tagger = new DateFormatTagger();
+        tagger.setFromField("datefield");
+        tagger.setToField("tofield");
+        tagger.setFromFormats("yyyy-MM-dd", "yyyy-MM-dd HH:mm");
+        tagger.setToFormat("yyyy/MM/dd HH:mm");
+        tagger.tagDocument("n/a", null, meta, true);
+        Assert.assertArrayEquals(new String[] {
+                "2001/10/10 11:32", "2001/10/10 00:00" },
+                meta.getStrings("tofield").toArray());
+    }
+    
     @Test
     public void testWriteRead() throws IOException {
         DateFormatTagger tagger = new DateFormatTagger();
@@ -70,6 +120,10 @@ public class DateFormatTaggerTest {
         tagger.setOverwrite(true);
         System.out.println("Writing/Reading this: " + tagger);
         ConfigurationUtil.assertWriteRead(tagger);
+
+        tagger.setFromFormats("yyyy-MM-dd", "EPOCH", "ISO8601");
+        System.out.println("Writing/Reading this: " + tagger);
+        ConfigurationUtil.assertWriteRead(tagger);
     }
 
 }
@@ -75,6 +75,61 @@ public class LanguageTaggerTest {
         }
     }
     
+    @Test
+    public void testSampling() throws ImporterHandlerException {
+        CachedStreamFactory factory = 
+                new CachedStreamFactory(10 * 1024, 10 * 1024);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("This is just a bit of English text. ");
+        }
+        for (int i = 0; i < 2000; i++) {
+            text.append("Ceci est juste un peu de texte en français. ");
+        }
+
+        LanguageTagger tagger = new LanguageTagger();
+        Assert.assertEquals("fr", detect(factory, tagger, text));
+
+        tagger = new LanguageTagger();
+        tagger.setSampleSize(2000);
+        Assert.assertEquals("en", detect(factory, tagger, text));
+
+        tagger = new LanguageTagger();
+        tagger.setSampleSize(2000);
+        tagger.setSampling(LanguageTagger.SAMPLING_SPREAD);
+        Assert.assertEquals("fr", detect(factory, tagger, text));
+
+        tagger = new LanguageTagger();
+        tagger.setEarlyStopProbability(0.9);
+        Assert.assertEquals("en", detect(factory, tagger, text));
+    }
+
+    @Test
+    public void testEarlyStopMaxSampleSize() throws ImporterHandlerException {
+        CachedStreamFactory factory = 
+                new CachedStreamFactory(10 * 1024, 10 * 1024);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < LanguageTagger.EARLY_STOP_MAX_SAMPLE_SIZE) {
+            text.append("This is just a bit of English text. ");
+        }
+        for (int i = 0; i < 20000; i++) {
+            text.append("Ceci est juste un peu de texte en français. ");
+        }
+        // French text past the maximum sample is never used
+        LanguageTagger tagger = new LanguageTagger();
+        tagger.setEarlyStopProbability(1.0);
+        Assert.assertEquals("en", detect(factory, tagger, text));
+    }
+    private String detect(CachedStreamFactory factory, 
+            LanguageTagger tagger, StringBuilder text) 
+                    throws ImporterHandlerException {
+        ImporterDocument doc = new ImporterDocument(
+                "n/a", factory.newInputStream(text.toString()));
+        tagger.tagDocument(doc.getReference(), 
+                doc.getContent(), doc.getMetadata(), true);
+        return doc.getMetadata().getLanguage();
+    }
+    
     @Test
     public void testWriteRead() throws IOException {
         LanguageTagger tagger = new LanguageTagger();
@@ -86,6 +141,11 @@ public class LanguageTaggerTest {
         
         tagger.setLanguages("it", "br", "en");
         ConfigurationUtil.assertWriteRead(tagger);
+
+        tagger.setSampleSize(5000);
+        tagger.setSampling(LanguageTagger.SAMPLING_SPREAD);
+        tagger.setEarlyStopProbability(0.95);
+        ConfigurationUtil.assertWriteRead(tagger);
     }
 
 }
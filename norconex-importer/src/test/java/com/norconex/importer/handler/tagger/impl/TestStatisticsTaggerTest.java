@@ -75,6 +75,22 @@ public class TestStatisticsTaggerTest {
         Assert.assertEquals("28.8", 
                 meta.getString("document.stat.averageParagraphWordCount"));
     }
+
+    @Test
+    public void testLineEndingsAndHyphens() 
+            throws IOException, ImporterHandlerException {
+        String txt = "  A well-known fact.\r\n \t \r\n"
+                + "It is true.\rRe-re-do it.";
+        TextStatisticsTagger t = new TextStatisticsTagger();
+        ImporterMetadata meta = new ImporterMetadata();
+        t.tagDocument("n/a", IOUtils.toInputStream(txt), meta, false);
+
+        Assert.assertEquals(3, meta.getInt("document.stat.paragraphCount"));
+        Assert.assertEquals(3, meta.getInt("document.stat.sentenceCount"));
+        // "well-known" and "Re-re" are single words, "do" is another one
+        Assert.assertEquals(9, meta.getInt("document.stat.wordCount"));
+        Assert.assertEquals(41, meta.getInt("document.stat.characterCount"));
+    }
     
     @Test
     public void testWriteRead() throws IOException {
@@ -19,6 +19,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -58,12 +60,37 @@ public class TextBetweenTaggerTest {
         Assert.assertTrue("Should have returned 17 <i> and <b> pairs",
                 strong.size() == 17);
     }
+
+    @Test
+    public void testLargeContentAndLimits() 
+            throws IOException, ImporterHandlerException {
+        TextBetweenTagger t = new TextBetweenTagger();
+        t.addTextEndpoints("section", "<section>", "</section>");
+        t.setMaxValues(3);
+        t.setMaxValueLength(100);
+
+        // values larger than what is read at once
+        String value = StringUtils.repeat("text ", 10000);
+        String content = StringUtils.repeat(
+                "<section>" + value + "</section>", 5);
+        
+        ImporterMetadata metadata = new ImporterMetadata();
+        metadata.setString(ImporterMetadata.DOC_CONTENT_TYPE, "text/html");
+        t.tagDocument("n/a", IOUtils.toInputStream(content, "UTF-8"), 
+                metadata, false);
+
+        List<String> sections = metadata.getStrings("section");
+        Assert.assertEquals(3, sections.size());
+        Assert.assertEquals(value.substring(0, 100), sections.get(0));
+    }
     
     @Test
     public void testWriteRead() throws IOException {
         TextBetweenTagger tagger = new TextBetweenTagger();
         tagger.addTextEndpoints("headings", "<h1>", "</h1>");
         tagger.addTextEndpoints("headings", "<h2>", "</h2>");
+        tagger.setMaxValues(10);
+        tagger.setMaxValueLength(1000);
         System.out.println("Writing/Reading this: " + tagger);
         ConfigurationUtil.assertWriteRead(tagger);
     }
@@ -62,6 +62,29 @@ public class ReplaceTransformerTest {
         is.close();
         os.close();
     }
+
+    @Test
+    public void testSinglePass() 
+            throws IOException, ImporterHandlerException {
+        String text = "I like to eat cakes and candies on 2014-10-05.";
+        
+        ReplaceTransformer t = new ReplaceTransformer();
+        Reader reader = new InputStreamReader(IOUtils.toInputStream(xml));
+        t.loadFromXML(reader);
+        reader.close();
+        t.addReplacement("(\\d+)-(\\d+)-(\\d+)", "$3/$2/$1");
+        t.setSinglePass(true);
+        
+        InputStream is = IOUtils.toInputStream(text);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        t.transformDocument("dummyRef", is, os, new ImporterMetadata(), true);
+        
+        Assert.assertEquals(
+                "I like to eat FRUITS and vegetables on 05/10/2014.", 
+                os.toString());
+        is.close();
+        os.close();
+    }
     
     
     @Test
@@ -70,6 +93,7 @@ public class ReplaceTransformerTest {
         Reader reader = new InputStreamReader(IOUtils.toInputStream(xml));
         t.loadFromXML(reader);
         reader.close();
+        t.setSinglePass(true);
         System.out.println("Writing/Reading this: " + t);
         ConfigurationUtil.assertWriteRead(t);
     }
@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -58,12 +60,88 @@ public class StripBetweenTransformerTest {
         is.close();
         os.close();
     }
+
+    @Test
+    public void testLargeStreamedContent() 
+            throws IOException, ImporterHandlerException {
+        StripBetweenTransformer t = new StripBetweenTransformer();
+        t.addStripEndpoints("<nav>", "</nav>");
+        t.setInclusive(true);
+
+        // sections larger than what is read at once, and a start 
+        // without an end (kept)
+        String nav = "<nav>" + StringUtils.repeat("menu ", 10000) + "</nav>";
+        StringBuilder content = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            content.append("text").append(i).append(nav);
+            expected.append("text").append(i);
+        }
+        content.append(" end <nav> not closed");
+        expected.append(" end <nav> not closed");
+        
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        t.transformDocument("n/a", 
+                IOUtils.toInputStream(content.toString(), "UTF-8"), 
+                os, new ImporterMetadata(), true);
+        Assert.assertEquals(expected.toString(), os.toString("UTF-8"));
+    }
+
+    @Test
+    public void testMaxSectionLength() 
+            throws IOException, ImporterHandlerException {
+        StripBetweenTransformer t = new StripBetweenTransformer();
+        t.addStripEndpoints("<nav>", "</nav>");
+        t.setInclusive(true);
+        t.setMaxSectionLength(100);
+
+        // ends too far from their start are not matched, and the 
+        // start is kept
+        String tooLong = "<nav>" + StringUtils.repeat("x", 200000) + "</nav>";
+        Assert.assertEquals("a" + tooLong + "bc", 
+                strip(t, "a" + tooLong + "b<nav>short</nav>c"));
+        String longest = "<nav>" + StringUtils.repeat("x", 100) + "</nav>";
+        Assert.assertEquals("abc", 
+                strip(t, "a" + longest + "b<nav>short</nav>c"));
+    }
+
+    @Test(timeout = 10000)
+    public void testManyUnterminatedStarts() 
+            throws IOException, ImporterHandlerException {
+        StripBetweenTransformer t = new StripBetweenTransformer();
+        t.addStripEndpoints("<nav>", "</nav>");
+        t.setInclusive(true);
+        t.setMaxSectionLength(100000);
+
+        // the end search is not repeated for each start
+        String content = StringUtils.repeat("<nav>x", 50000) 
+                + StringUtils.repeat("y", 200000) + "</nav>";
+        Assert.assertEquals(content, strip(t, content));
+    }
+
+    @Test(timeout = 10000)
+    public void testEmptyMatchesAtEnd() 
+            throws IOException, ImporterHandlerException {
+        StripBetweenTransformer t = new StripBetweenTransformer();
+        t.addStripEndpoints("x*", "y*");
+        Assert.assertEquals("abc", strip(t, "abc"));
+        Assert.assertEquals("", strip(t, ""));
+    }
+
+    private String strip(StripBetweenTransformer t, String content) 
+            throws IOException, ImporterHandlerException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        t.transformDocument("n/a", IOUtils.toInputStream(content, "UTF-8"), 
+                os, new ImporterMetadata(), true);
+        return os.toString("UTF-8");
+    }
     
     
     @Test
     public void testWriteRead() throws IOException {
         StripBetweenTransformer t = new StripBetweenTransformer();
         t.setInclusive(true);
+        t.setMaxSectionLength(5000);
         t.addStripEndpoints("<!-- NO INDEX", "/NOINDEX -->");
         t.addStripEndpoints("<!-- HEADER START", "HEADER END -->");
         System.out.println("Writing/Reading this: " + t);
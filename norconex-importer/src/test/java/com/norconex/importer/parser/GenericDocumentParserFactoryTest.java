@@ -14,8 +14,13 @@
  */
 package com.norconex.importer.parser;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Properties;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -23,12 +28,16 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.norconex.commons.lang.file.ContentType;
+import com.norconex.commons.lang.io.CachedStreamFactory;
 import com.norconex.importer.Importer;
 import com.norconex.importer.ImporterConfig;
 import com.norconex.importer.ImporterException;
 import com.norconex.importer.TestUtil;
+import com.norconex.importer.doc.ChildDocumentCollector;
 import com.norconex.importer.doc.ImporterDocument;
 import com.norconex.importer.doc.ImporterMetadata;
+import com.norconex.importer.parser.impl.FallbackParser;
+import com.norconex.importer.response.ImporterResponse;
 
 public class GenericDocumentParserFactoryTest {
 
@@ -55,4 +64,99 @@ public class GenericDocumentParserFactoryTest {
                     !StringUtils.isAsciiPrintable(output));
         }
     }
+
+    @Test
+    public void testEmbeddedSelector() {
+        EmbeddedDocumentSelector selector = new EmbeddedDocumentSelector();
+        selector.setExcludedNamesRegex(".*\\.rtf");
+        Assert.assertEquals("Excluded embedded document was extracted.",
+                0, importSplitZip(selector).getNestedResponses().length);
+        
+        selector = new EmbeddedDocumentSelector();
+        selector.setIncludedNamesRegex(".*\\.rtf");
+        selector.setExcludedContentTypesRegex("image/.*");
+        ImporterResponse[] nested = 
+                importSplitZip(selector).getNestedResponses();
+        Assert.assertEquals("Included embedded document was not extracted.",
+                1, nested.length);
+        Assert.assertTrue("Embedded document was not imported.",
+                nested[0].isSuccess());
+    }
+    
+    @Test
+    public void testEmbeddedSelectorRules() {
+        EmbeddedDocumentSelector selector = new EmbeddedDocumentSelector();
+        Assert.assertTrue(selector.isSelected(null, null, -1));
+        selector.setExcludedContentTypesRegex("image/.*");
+        selector.setMaxSize(100);
+        Assert.assertFalse(selector.isSelected("image/png", "a.png", 10));
+        Assert.assertFalse(selector.isSelected("text/plain", "a.txt", 101));
+        Assert.assertTrue(selector.isSelected("text/plain", "a.txt", -1));
+        selector.setIncludedNamesRegex(".*\\.txt");
+        Assert.assertFalse(selector.isSelected("text/plain", null, 10));
+        Assert.assertTrue(selector.isSelected("text/plain", "a.txt", 10));
+    }
+    
+    @Test
+    public void testEmbeddedSelectorWriteRead() throws IOException {
+        EmbeddedDocumentSelector selector = new EmbeddedDocumentSelector();
+        selector.setIncludedContentTypesRegex("application/.*");
+        selector.setExcludedNamesRegex(".*\\.exe");
+        selector.setMaxSize(1024);
+        GenericDocumentParserFactory factory = 
+                new GenericDocumentParserFactory();
+        factory.setSplitEmbedded(true);
+        factory.setEmbeddedSelector(selector);
+        
+        StringWriter out = new StringWriter();
+        factory.saveToXML(out);
+        GenericDocumentParserFactory readFactory = 
+                new GenericDocumentParserFactory();
+        readFactory.loadFromXML(new StringReader(out.toString()));
+        Assert.assertTrue(readFactory.isSplitEmbedded());
+        Assert.assertEquals(selector, readFactory.getEmbeddedSelector());
+    }
+    
+    private ImporterResponse importSplitZip(
+            EmbeddedDocumentSelector selector) {
+        GenericDocumentParserFactory factory = 
+                new GenericDocumentParserFactory();
+        factory.setSplitEmbedded(true);
+        factory.setEmbeddedSelector(selector);
+        ImporterConfig config = new ImporterConfig();
+        config.setParserFactory(factory);
+        return new Importer(config).importDocument(
+                TestUtil.getAliceZipFile(), new Properties());
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testLegacyRecursiveParser() 
+            throws IOException, DocumentParserException {
+        final boolean[] invoked = new boolean[1];
+        FallbackParser parser = new FallbackParser() {
+            @Override
+            protected RecursiveParser createRecursiveParser(
+                    String reference, Writer writer, 
+                    ImporterMetadata metadata, 
+                    CachedStreamFactory streamFactory) {
+                invoked[0] = true;
+                return super.createRecursiveParser(
+                        reference, writer, metadata, streamFactory);
+            }
+        };
+        parser.setSplitEmbedded(true);
+        ChildDocumentCollector children = new ChildDocumentCollector();
+        CachedStreamFactory factory = 
+                new CachedStreamFactory(100 * 1024, 100 * 1024);
+        try (InputStream is = new FileInputStream(TestUtil.getAliceZipFile())) {
+            ImporterDocument doc = new ImporterDocument(
+                    "test.zip", factory.newInputStream(is));
+            doc.setContentType(ContentType.valueOf("application/zip"));
+            parser.parseDocument(doc, new StringWriter(), children);
+        }
+        Assert.assertTrue("Overridden method not invoked.", invoked[0]);
+        Assert.assertEquals("Embedded document not handed over.", 
+                1, children.getChildDocuments().size());
+    }
 }
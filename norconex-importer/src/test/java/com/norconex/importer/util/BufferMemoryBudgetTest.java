@@ -0,0 +1,61 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferMemoryBudgetTest {
+
+    private static final long MIN = BufferMemoryBudget.MIN_QUOTA_SIZE;
+
+    @Test
+    public void testFairShare() {
+        BufferMemoryBudget budget = new BufferMemoryBudget(MIN * 8);
+        BufferMemoryBudget.Quota q1 = budget.newQuota();
+        BufferMemoryBudget.Quota q2 = budget.newQuota();
+        Assert.assertTrue(q1.ensureSize(MIN * 4));
+        Assert.assertFalse("Went over fair share.", q1.ensureSize(MIN * 5));
+        Assert.assertTrue(q2.ensureSize(MIN * 4));
+        Assert.assertEquals(MIN * 8, budget.getReservedSize());
+
+        q2.release();
+        Assert.assertEquals(MIN * 4, budget.getReservedSize());
+        Assert.assertTrue("Share not regained.", q1.ensureSize(MIN * 8));
+        q1.release();
+        Assert.assertEquals(0, budget.getReservedSize());
+    }
+
+    @Test
+    public void testMinimumAlwaysGranted() {
+        BufferMemoryBudget budget = new BufferMemoryBudget(0);
+        BufferMemoryBudget.Quota quota = budget.newQuota();
+        Assert.assertTrue(quota.ensureSize(MIN));
+        Assert.assertFalse(quota.ensureSize(MIN + 1));
+        quota.release();
+    }
+
+    @Test
+    public void testBinding() {
+        BufferMemoryBudget budget = new BufferMemoryBudget(MIN);
+        BufferMemoryBudget previous = BufferMemoryBudget.bind(budget);
+        try {
+            Assert.assertSame(budget, BufferMemoryBudget.getCurrent());
+        } finally {
+            BufferMemoryBudget.bind(previous);
+        }
+        Assert.assertNotSame(budget, BufferMemoryBudget.getCurrent());
+    }
+}
@@ -0,0 +1,73 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkedTextReaderTest {
+
+    @Test
+    public void testSingleChunk() throws IOException {
+        StringWriter out = new StringWriter();
+        int chunks = 0;
+        try (ChunkedTextReader reader = new ChunkedTextReader(
+                new StringReader("Small content."), out)) {
+            while (reader.readNext()) {
+                Assert.assertFalse(reader.isPartial());
+                Assert.assertEquals("Small content.", 
+                        reader.getChunk().toString());
+                chunks++;
+            }
+        }
+        Assert.assertEquals(1, chunks);
+        Assert.assertEquals("Small content.", out.toString());
+    }
+
+    @Test
+    public void testPartialChunks() throws IOException {
+        String text = StringUtils.repeat("Some text line.\n", 100000);
+        StringWriter out = new StringWriter();
+        int partialChunks = 0;
+        BufferMemoryBudget previous = 
+                BufferMemoryBudget.bind(new BufferMemoryBudget(0));
+        try (ChunkedTextReader reader = new ChunkedTextReader(
+                new StringReader(text), out)) {
+            while (reader.readNext()) {
+                if (reader.isPartial()) {
+                    partialChunks++;
+                }
+            }
+        } finally {
+            BufferMemoryBudget.bind(previous);
+        }
+        Assert.assertTrue("Expected partial chunks.", partialChunks > 1);
+        Assert.assertEquals("Content was altered.", text, out.toString());
+    }
+
+    @Test
+    public void testFlushBufferKeepsTail() throws IOException {
+        StringBuilder b = new StringBuilder("first line\nsecond line");
+        StringWriter out = new StringWriter();
+        BufferUtil.flushBuffer(b, out, 100);
+        Assert.assertEquals("first line", out.toString());
+        Assert.assertEquals("\nsecond line", b.toString());
+    }
+}
@@ -0,0 +1,94 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SinglePassReplacerTest {
+
+    @Test
+    public void testLiteralsAndRegex() {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("CAKES", "FRUITS");
+        replacements.put("(\\d+)-(\\d+)-(\\d+)", "$3/$2/$1");
+        replacements.put("candies", "vegetables");
+        replacements.put("(l)\\1", "LL");
+        SinglePassReplacer replacer = 
+                new SinglePassReplacer(replacements, false);
+        StringBuilder text = new StringBuilder(
+                "On 2014-10-05, I ate cakes and candies in a hall.");
+        Assert.assertTrue(replacer.replace(text));
+        Assert.assertEquals(
+                "On 05/10/2014, I ate FRUITS and vegetables in a haLL.", 
+                text.toString());
+    }
+
+    @Test
+    public void testPrecedence() {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("he", "HE");
+        replacements.put("she", "SHE");
+        replacements.put("sells", "S");
+        SinglePassReplacer replacer = 
+                new SinglePassReplacer(replacements, true);
+        // first starting match wins, replaced text not matched again
+        StringBuilder text = new StringBuilder("she sells shells");
+        replacer.replace(text);
+        Assert.assertEquals("SHE S SHElls", text.toString());
+    }
+
+    @Test
+    public void testSameStartPrecedence() {
+        // a prefix literal added after a longer one must not win
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("abc", "X");
+        replacements.put("ab", "Y");
+        StringBuilder text = new StringBuilder("abcd");
+        new SinglePassReplacer(replacements, true).replace(text);
+        Assert.assertEquals("Xd", text.toString());
+
+        replacements = new LinkedHashMap<>();
+        replacements.put("ab", "Y");
+        replacements.put("abc", "X");
+        text = new StringBuilder("abcd");
+        new SinglePassReplacer(replacements, true).replace(text);
+        Assert.assertEquals("Ycd", text.toString());
+    }
+
+    @Test
+    public void testCaseAndNoMatch() {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("cat", "dog");
+        replacements.put("c.w", "horse");
+        SinglePassReplacer replacer = 
+                new SinglePassReplacer(replacements, true);
+        StringBuilder text = new StringBuilder("CAT and COW");
+        Assert.assertFalse(replacer.replace(text));
+        Assert.assertEquals("CAT and COW", text.toString());
+    }
+
+    @Test
+    public void testEmptyMatches() {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("b*", "-");
+        StringBuilder text = new StringBuilder("abc");
+        new SinglePassReplacer(replacements, false).replace(text);
+        Assert.assertEquals("abc".replaceAll("b*", "-"), text.toString());
+    }
+}
@@ -0,0 +1,108 @@
+/* Copyright 2014 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.importer.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StartEndScannerTest {
+
+    @Test
+    public void testSectionsAcrossReads() throws IOException {
+        String section = "<b>" + StringUtils.repeat("bold ", 5000) + "</B>";
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append(StringUtils.repeat("text ", 3000)).append(section);
+        }
+        SectionCounter counter = new SectionCounter(
+                new StringReader(content.toString()), false);
+        counter.scan();
+        Assert.assertEquals(20, counter.lengths.size());
+        for (int length : counter.lengths) {
+            Assert.assertEquals(section.length(), length);
+        }
+        // not all content is held at once
+        Assert.assertTrue("Buffer too large: " + counter.maxBufferLength,
+                counter.maxBufferLength < content.length() / 5);
+    }
+
+    @Test
+    public void testCaseSensitive() throws IOException {
+        SectionCounter counter = new SectionCounter(
+                new StringReader("<b>bold</B> <b>bold</b>"), true);
+        counter.scan();
+        Assert.assertEquals(1, counter.lengths.size());
+    }
+
+    // Records the length of each "<b>...</b>" section
+    private static class SectionCounter extends StartEndScanner {
+        private final Pattern start;
+        private final Pattern end;
+        private final List<Integer> lengths = new ArrayList<>();
+        private int pos;
+        private int openStart = -1;
+        private int maxBufferLength;
+        public SectionCounter(Reader input, boolean caseSensitive) {
+            super(input);
+            this.start = compile("<b>", caseSensitive);
+            this.end = compile("</b>", caseSensitive);
+        }
+        @Override
+        protected boolean process() {
+            maxBufferLength = Math.max(
+                    maxBufferLength, getBuffer().length());
+            while (true) {
+                Matcher m = (openStart == -1 ? start : end).matcher(
+                        getBuffer());
+                boolean found = m.find(pos);
+                if (!found || !isResolved(m)) {
+                    pos = Math.max(pos, found ? m.start() : getSafeEnd());
+                    return true;
+                }
+                if (openStart == -1) {
+                    openStart = m.start();
+                } else {
+                    lengths.add(m.end() - openStart);
+                    openStart = -1;
+                }
+                pos = m.end();
+            }
+        }
+        @Override
+        protected int getScanPosition() {
+            return pos;
+        }
+        @Override
+        protected int getKeepPosition() {
+            return openStart == -1 ? pos : openStart;
+        }
+        @Override
+        protected void shift(int count) {
+            pos -= count;
+            if (openStart != -1) {
+                openStart -= count;
+            }
+        }
+    }
+}